@@ -0,0 +1,35 @@
+@echo off
+REM Billing System - Benchmark Script for Windows
+REM Usage: bench.bat <BenchmarkClass> [arguments]
+
+if "%1"=="" (
+    echo Usage: bench.bat ^<BenchmarkClass^> [arguments]
+    echo Available benchmarks:
+    for %%f in (bench\*.java) do echo   %%~nf
+    exit /b 1
+)
+
+REM Check if compiled files exist
+if not exist "bin" (
+    echo Error: Compiled files not found!
+    echo Please run compile.bat first
+    exit /b 1
+)
+
+REM Find MySQL connector jar
+for %%f in (lib\mysql-connector-*.jar) do (
+    set MYSQL_JAR=%%f
+    goto :found
+)
+
+:found
+if not exist "bench-bin" mkdir bench-bin
+
+echo Compiling benchmarks...
+javac -encoding UTF-8 -cp "bin;%MYSQL_JAR%" -d bench-bin bench\*.java
+if %errorlevel% neq 0 (
+    echo Benchmark compilation failed!
+    exit /b 1
+)
+
+java -cp "bench-bin;bin;%MYSQL_JAR%;." %*
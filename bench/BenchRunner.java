@@ -0,0 +1,551 @@
+/**
+ * BenchRunner.java
+ * Repeatable benchmark suite for the billing hot paths, with JSON results
+ * that can be compared across commits
+ * Place this file in: bench/BenchRunner.java
+ *
+ * Usage: bench.bat BenchRunner [options]
+ *        bench.bat BenchRunner compare <base.json> <new.json> [threshold%]
+ * Options:
+ *   --filter text     only benchmarks whose ID contains text
+ *   --no-db           skip benchmarks that need MySQL
+ *   --forks n         fresh JVMs per benchmark (default 1; 0 runs in this JVM)
+ *   --warmup n        warmup iterations (default 3)
+ *   --iterations n    measured iterations (default 5)
+ *   --time ms         length of each iteration (default 1000)
+ *   --out file        results file (default bench-results/<timestamp>.json)
+ *
+ * Each benchmark runs its operation back to back for fixed-length iterations;
+ * the score is the mean time per operation over the measured iterations.
+ * Every benchmark gets its own JVM by default so one benchmark's JIT profile
+ * cannot skew the next. Database benchmarks use the configured database
+ * (override with -Dbilling.config=<file>) and seed their own products and
+ * invoice history; point them at a scratch schema, since saveInvoice adds rows.
+ * compare exits 1 when any benchmark is slower than the threshold (default 10%).
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+public class BenchRunner {
+    private static final int SEED_PRODUCTS = 200;
+    private static final int SEED_INVOICES = 2000;
+    private static final int SEED_BATCH = 100;
+    private static final String[] SEARCH_QUERIES = {"item 1", "bench", "item 19", "zz9", "mark"};
+
+    // Results are folded in here so the JIT cannot drop the measured work
+    private static volatile long sink;
+
+    private interface Op {
+        long run(int i) throws Exception;
+    }
+
+    private interface Fixture {
+        Op create(Env env) throws Exception;
+    }
+
+    private static final class Case {
+        final String name;
+        final Map<String, Integer> params;
+        final boolean needsDb;
+        final Fixture fixture;
+
+        Case(String name, Map<String, Integer> params, boolean needsDb, Fixture fixture) {
+            this.name = name;
+            this.params = params;
+            this.needsDb = needsDb;
+            this.fixture = fixture;
+        }
+
+        String getId() {
+            StringBuilder id = new StringBuilder(name);
+            for (Map.Entry<String, Integer> param : params.entrySet()) {
+                id.append(id.length() == name.length() ? ':' : ',')
+                  .append(param.getKey()).append('=').append(param.getValue());
+            }
+            return id.toString();
+        }
+    }
+
+    // Database and seeded data, created on first use
+    private static final class Env {
+        private DatabaseManager dbManager;
+        private int[] productIds;
+
+        DatabaseManager db() {
+            if (dbManager == null) {
+                dbManager = new DatabaseManager();
+            }
+            return dbManager;
+        }
+
+        int[] products() {
+            if (productIds == null) {
+                productIds = SaveInvoiceBenchmark.seedProducts(db(), SEED_PRODUCTS);
+            }
+            return productIds;
+        }
+
+        void seedInvoices(int count) {
+            int[] ids = products();
+            int missing = count - db().getTotalInvoicesCount();
+            while (missing > 0) {
+                ArrayList<Invoice> batch = new ArrayList<Invoice>();
+                for (int i = 0; i < Math.min(missing, SEED_BATCH); i++) {
+                    batch.add(newInvoice(ids, 10));
+                }
+                if (!db().commitInvoices(batch, false).isSuccess()) {
+                    throw new IllegalStateException("Could not seed invoices");
+                }
+                missing -= batch.size();
+            }
+        }
+
+        void close() {
+            if (dbManager != null) {
+                dbManager.closeConnection();
+            }
+        }
+    }
+
+    private static final class Settings {
+        String filter = "";
+        boolean noDb = false;
+        int forks = 1;
+        int warmup = 3;
+        int iterations = 5;
+        long timeMillis = 1000;
+        String out = null;
+        String child = null;
+    }
+
+    private static List<Case> cases() {
+        ArrayList<Case> cases = new ArrayList<Case>();
+
+        // In-memory paths: the same arithmetic and text the till does per bill
+        for (final int lines : new int[] {10, 100}) {
+            cases.add(new Case("cartTotals", params("lines", lines), false, env -> {
+                final BillItem[] items = randomItems(lines, 1);
+                return i -> {
+                    // Build the bill, then remove a line as the cashier would
+                    Cart cart = new Cart(BillingSystem.TAX_BASIS_POINTS);
+                    for (BillItem item : items) {
+                        cart.add(item.getProductId(), item.getProductName(),
+                                 item.getPriceMinor(), item.getQuantity());
+                    }
+                    cart.remove(i % lines);
+                    return cart.getGrandTotalMinor() + cart.getTaxMinor();
+                };
+            }));
+        }
+        cases.add(new Case("billItemTotal", params("items", 1000), false, env -> {
+            final BillItem[] items = randomItems(1000, 2);
+            return i -> {
+                long total = 0;
+                for (BillItem item : items) {
+                    total += item.getTotalMinor();
+                }
+                return total;
+            };
+        }));
+        for (final int lines : new int[] {10, 60}) {
+            cases.add(new Case("renderInvoice", params("lines", lines), false, env -> {
+                final BillItem[] items = randomItems(lines, 3);
+                final Invoice invoice = newInvoice(items);
+                final ReceiptRenderer renderer = new ReceiptRenderer(BillingSystem.TAX_BASIS_POINTS);
+                return i -> renderer.renderText(invoice).length();
+            }));
+            cases.add(new Case("renderInvoice.escpos", params("lines", lines), false, env -> {
+                final BillItem[] items = randomItems(lines, 3);
+                final Invoice invoice = newInvoice(items);
+                final ReceiptRenderer renderer = new ReceiptRenderer(BillingSystem.TAX_BASIS_POINTS);
+                return i -> renderer.render(invoice, ReceiptRenderer.Format.ESC_POS).length;
+            }));
+        }
+
+        // A scan: barcode to product through the cache's SKU index
+        cases.add(new Case("skuLookup", params("products", 10000), false, env -> {
+            final int count = 10000;
+            final ProductCache cache = new ProductCache(3600);
+            final String[] skus = new String[count];
+            ArrayList<Product> products = new ArrayList<Product>(count);
+            for (int i = 0; i < count; i++) {
+                skus[i] = String.format("4006381%06d", i);
+                products.add(new Product(i + 1, "Benchmark Item " + i, 100, 1000, skus[i]));
+            }
+            cache.replaceAll(products, cache.beginLoad());
+            return i -> cache.getBySku(skus[Math.floorMod(i * 7919, count)]).getId();
+        }));
+
+        // Database paths
+        cases.add(new Case("getAllProducts", params("products", SEED_PRODUCTS), true, env -> {
+            final DatabaseManager db = env.db();
+            env.products();
+            return i -> db.getAllProducts().size();
+        }));
+        cases.add(new Case("getAllProducts.uncached", params("products", SEED_PRODUCTS), true, env -> {
+            final DatabaseManager db = env.db();
+            env.products();
+            return i -> {
+                db.getProductCache().invalidate();
+                return db.getAllProducts().size();
+            };
+        }));
+        cases.add(new Case("searchProducts", params("products", SEED_PRODUCTS), true, env -> {
+            final DatabaseManager db = env.db();
+            env.products();
+            return i -> db.searchProducts(SEARCH_QUERIES[i % SEARCH_QUERIES.length]).size();
+        }));
+        cases.add(new Case("getAllInvoices", params("invoices", SEED_INVOICES), true, env -> {
+            final DatabaseManager db = env.db();
+            env.seedInvoices(SEED_INVOICES);
+            return i -> db.getAllInvoices().size();
+        }));
+        for (final int lines : new int[] {1, 10, 60}) {
+            cases.add(new Case("saveInvoice", params("lines", lines), true, env -> {
+                final DatabaseManager db = env.db();
+                final int[] ids = env.products();
+                return i -> {
+                    SaveResult result = db.saveInvoice(newInvoice(ids, lines));
+                    if (!result.isSuccess()) {
+                        throw new IllegalStateException("Save failed: " + result);
+                    }
+                    return 1;
+                };
+            }));
+        }
+        return cases;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length < 3) {
+                System.out.println("Usage: BenchRunner compare <base.json> <new.json> [threshold%]");
+                System.exit(1);
+            }
+            double threshold = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+            System.exit(compare(args[1], args[2], threshold) ? 0 : 1);
+        }
+
+        Settings settings = parseArgs(args);
+        if (settings.child != null) {
+            runChild(settings);
+            return;
+        }
+
+        ArrayList<String> results = new ArrayList<String>();
+        System.out.println(String.format("%-34s %14s %12s %10s", "BENCHMARK", "SCORE ns/op", "STDEV", "ITERS"));
+        for (Case c : cases()) {
+            if (!c.getId().contains(settings.filter) || (c.needsDb && settings.noDb)) {
+                continue;
+            }
+            String result = settings.forks > 0 ? runForked(c, settings) : runInProcess(c, settings);
+            if (result == null) {
+                System.out.println(String.format("%-34s %14s", c.getId(), "FAILED"));
+                continue;
+            }
+            Map<String, Object> parsed = Json.parseObject(result);
+            System.out.println(String.format("%-34s %14.1f %12.1f %10d", c.getId(),
+                ((Number) parsed.get("score")).doubleValue(),
+                ((Number) parsed.get("stdev")).doubleValue(),
+                ((List<?>) parsed.get("iterations")).size()));
+            results.add(result);
+        }
+
+        String out = settings.out != null ? settings.out : "bench-results" + File.separator +
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json";
+        writeResults(out, settings, results);
+        System.out.println("Results written to " + out);
+    }
+
+    private static Settings parseArgs(String[] args) {
+        Settings settings = new Settings();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter": settings.filter = args[++i]; break;
+                case "--no-db": settings.noDb = true; break;
+                case "--forks": settings.forks = Integer.parseInt(args[++i]); break;
+                case "--warmup": settings.warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": settings.iterations = Integer.parseInt(args[++i]); break;
+                case "--time": settings.timeMillis = Long.parseLong(args[++i]); break;
+                case "--out": settings.out = args[++i]; break;
+                case "--child": settings.child = args[++i]; break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return settings;
+    }
+
+    // Forking
+
+    private static String runForked(Case c, Settings settings) throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (System.getProperty("billing.config") != null) {
+            command.add("-Dbilling.config=" + System.getProperty("billing.config"));
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "BenchRunner",
+            "--child", c.getId(), "--warmup", String.valueOf(settings.warmup),
+            "--iterations", String.valueOf(settings.iterations),
+            "--time", String.valueOf(settings.timeMillis)));
+
+        // Whatever the application logs on stdout is dropped; errors still show
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String result = null;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = line.substring("RESULT ".length());
+                }
+            }
+        }
+        return process.waitFor() == 0 ? result : null;
+    }
+
+    private static void runChild(Settings settings) {
+        for (Case c : cases()) {
+            if (c.getId().equals(settings.child)) {
+                String result = runInProcess(c, settings);
+                if (result == null) {
+                    System.exit(1);
+                }
+                System.out.println("RESULT " + result);
+                System.exit(0);
+            }
+        }
+        System.err.println("No benchmark " + settings.child);
+        System.exit(1);
+    }
+
+    // Measurement
+
+    private static String runInProcess(Case c, Settings settings) {
+        Env env = new Env();
+        try {
+            Op op = c.fixture.create(env);
+            int next = 0;
+            for (int w = 0; w < settings.warmup; w++) {
+                next = iterate(op, next, settings.timeMillis, null);
+            }
+            double[] nanosPerOp = new double[settings.iterations];
+            long[] ops = new long[1];
+            long totalOps = 0;
+            for (int m = 0; m < settings.iterations; m++) {
+                long start = System.nanoTime();
+                next = iterate(op, next, settings.timeMillis, ops);
+                nanosPerOp[m] = (System.nanoTime() - start) / (double) ops[0];
+                totalOps += ops[0];
+            }
+            return toJson(c, nanosPerOp, totalOps);
+        } catch (Exception e) {
+            System.err.println("Benchmark " + c.getId() + " failed");
+            e.printStackTrace();
+            return null;
+        } finally {
+            env.close();
+        }
+    }
+
+    // Runs at least one operation, then more until the iteration time is up
+    private static int iterate(Op op, int next, long timeMillis, long[] ops) throws Exception {
+        long deadline = System.nanoTime() + timeMillis * 1000000L;
+        long count = 0;
+        long acc = 0;
+        do {
+            acc += op.run(next++ & Integer.MAX_VALUE);
+            count++;
+        } while (System.nanoTime() < deadline);
+        sink += acc;
+        if (ops != null) {
+            ops[0] = count;
+        }
+        return next;
+    }
+
+    private static String toJson(Case c, double[] nanosPerOp, long totalOps) {
+        double mean = 0;
+        for (double v : nanosPerOp) {
+            mean += v;
+        }
+        mean /= nanosPerOp.length;
+        double variance = 0;
+        for (double v : nanosPerOp) {
+            variance += (v - mean) * (v - mean);
+        }
+        double stdev = nanosPerOp.length > 1 ? Math.sqrt(variance / (nanosPerOp.length - 1)) : 0;
+        double[] sorted = nanosPerOp.clone();
+        Arrays.sort(sorted);
+
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendName(sb, "benchmark");
+        Json.appendString(sb, c.getId()).append(',');
+        Json.appendName(sb, "name");
+        Json.appendString(sb, c.name).append(',');
+        Json.appendName(sb, "params").append('{');
+        boolean first = true;
+        for (Map.Entry<String, Integer> param : c.params.entrySet()) {
+            if (!first) sb.append(',');
+            Json.appendName(sb, param.getKey()).append(param.getValue());
+            first = false;
+        }
+        sb.append("},");
+        Json.appendName(sb, "unit").append("\"ns/op\",");
+        Json.appendName(sb, "score").append(round(mean)).append(',');
+        Json.appendName(sb, "stdev").append(round(stdev)).append(',');
+        Json.appendName(sb, "min").append(round(sorted[0])).append(',');
+        Json.appendName(sb, "max").append(round(sorted[sorted.length - 1])).append(',');
+        Json.appendName(sb, "ops").append(totalOps).append(',');
+        Json.appendName(sb, "iterations").append('[');
+        for (int i = 0; i < nanosPerOp.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(round(nanosPerOp[i]));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String round(double value) {
+        return String.format(java.util.Locale.ROOT, "%.3f", value);
+    }
+
+    // Results files
+
+    private static void writeResults(String path, Settings settings, List<String> results) throws IOException {
+        File file = new File(path);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        StringBuilder sb = new StringBuilder("{\n");
+        Json.appendName(sb, "commit");
+        Json.appendString(sb, gitCommit()).append(",\n");
+        Json.appendName(sb, "timestamp");
+        Json.appendString(sb, LocalDateTime.now().toString()).append(",\n");
+        Json.appendName(sb, "jvm");
+        Json.appendString(sb, System.getProperty("java.vm.name") + " " +
+                              System.getProperty("java.version")).append(",\n");
+        Json.appendName(sb, "os");
+        Json.appendString(sb, System.getProperty("os.name") + " " + System.getProperty("os.arch")).append(",\n");
+        Json.appendName(sb, "cpus").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        Json.appendName(sb, "forks").append(settings.forks).append(",\n");
+        Json.appendName(sb, "warmupIterations").append(settings.warmup).append(",\n");
+        Json.appendName(sb, "measuredIterations").append(settings.iterations).append(",\n");
+        Json.appendName(sb, "iterationMillis").append(settings.timeMillis).append(",\n");
+        Json.appendName(sb, "results").append("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            sb.append("  ").append(results.get(i)).append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        sb.append("]\n}\n");
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(sb.toString());
+        }
+    }
+
+    // Best effort; results from outside a git checkout are labelled "unknown"
+    private static String gitCommit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+                .redirectErrorStream(true).start();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line = in.readLine();
+                if (process.waitFor() == 0 && line != null) {
+                    return line.trim();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Not a checkout, or git is not installed
+        }
+        return "unknown";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean compare(String basePath, String newPath, double thresholdPercent) throws IOException {
+        Map<String, Object> base = Json.parseObject(
+            new String(Files.readAllBytes(Paths.get(basePath)), StandardCharsets.UTF_8));
+        Map<String, Object> current = Json.parseObject(
+            new String(Files.readAllBytes(Paths.get(newPath)), StandardCharsets.UTF_8));
+
+        LinkedHashMap<String, Double> baseScores = new LinkedHashMap<String, Double>();
+        for (Object result : (List<Object>) base.get("results")) {
+            Map<String, Object> r = (Map<String, Object>) result;
+            baseScores.put((String) r.get("benchmark"), ((Number) r.get("score")).doubleValue());
+        }
+
+        System.out.println("Base " + base.get("commit") + " vs " + current.get("commit"));
+        System.out.println(String.format("%-34s %14s %14s %9s", "BENCHMARK", "BASE ns/op", "NEW ns/op", "CHANGE"));
+        boolean ok = true;
+        for (Object result : (List<Object>) current.get("results")) {
+            Map<String, Object> r = (Map<String, Object>) result;
+            String id = (String) r.get("benchmark");
+            double score = ((Number) r.get("score")).doubleValue();
+            Double before = baseScores.get(id);
+            if (before == null) {
+                System.out.println(String.format("%-34s %14s %14.1f %9s", id, "-", score, "new"));
+                continue;
+            }
+            double change = (score - before) / before * 100;
+            boolean regressed = change > thresholdPercent;
+            ok &= !regressed;
+            System.out.println(String.format("%-34s %14.1f %14.1f %+8.1f%%%s",
+                id, before, score, change, regressed ? "  REGRESSION" : ""));
+        }
+        return ok;
+    }
+
+    // Data
+
+    private static Map<String, Integer> params(String name, int value) {
+        LinkedHashMap<String, Integer> params = new LinkedHashMap<String, Integer>();
+        params.put(name, value);
+        return params;
+    }
+
+    // Fixed seeds, so every run and every commit sees the same data
+    private static BillItem[] randomItems(int count, long seed) {
+        Random random = new Random(seed);
+        BillItem[] items = new BillItem[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = new BillItem(i + 1, "Benchmark Item " + i,
+                1 + random.nextInt(99999), 1 + random.nextInt(20));
+        }
+        return items;
+    }
+
+    private static Invoice newInvoice(BillItem[] items) {
+        Cart cart = new Cart(BillingSystem.TAX_BASIS_POINTS);
+        for (BillItem item : items) {
+            cart.add(item.getProductId(), item.getProductName(), item.getPriceMinor(), item.getQuantity());
+        }
+        Invoice invoice = new Invoice(0, "Benchmark", "0000000000", LocalDateTime.of(2024, 1, 1, 12, 0),
+            cart.getSubtotalMinor(), cart.getTaxMinor(), cart.getGrandTotalMinor(), cart.getItems());
+        invoice.setClientRef(UUID.nameUUIDFromBytes(new byte[] {(byte) items.length}).toString());
+        return invoice;
+    }
+
+    private static Invoice newInvoice(int[] productIds, int lines) {
+        Invoice invoice = SaveInvoiceBenchmark.createInvoice(productIds, lines);
+        invoice.setClientRef(UUID.randomUUID().toString());
+        return invoice;
+    }
+}
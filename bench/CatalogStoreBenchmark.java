@@ -0,0 +1,173 @@
+/**
+ * CatalogStoreBenchmark.java
+ * Heap footprint and lookup cost of CatalogStore against Product objects
+ * Place this file in: bench/CatalogStoreBenchmark.java
+ *
+ * Usage: CatalogStoreBenchmark [catalogSize ...]
+ * The object layout is what ProductCache held before CatalogStore: a
+ * HashMap of Products by ID, the same Products in a name-sorted list, and
+ * a HashMap by SKU. Run with a heap large enough for the biggest size
+ * (the object layout takes about 260 bytes per product), e.g. -Xmx3g for
+ * 3,000,000.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+
+public class CatalogStoreBenchmark {
+    private static final int[] DEFAULT_SIZES = {100000, 1000000};
+    private static final String[] WORDS = {
+        "Wireless", "Mouse", "Keyboard", "Monitor", "USB", "Cable", "Headphones", "Webcam",
+        "External", "SSD", "Charger", "Laptop", "Stand", "HDMI", "Hub", "Desk", "Lamp", "Pad"
+    };
+    private static final int LOOKUPS = 2000000;
+    private static final int ROUNDS = 5;
+
+    // Kept reachable while the heap is measured
+    private static Object retained;
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println(String.format("%9s %-8s %10s %9s %12s %12s %12s",
+            "SKUS", "LAYOUT", "HEAP MB", "B/SKU", "ID ns", "SKU ns", "VIEW ns"));
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) {
+        Random random = new Random(42);
+        int[] probes = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = 1 + random.nextInt(size);
+        }
+
+        // Objects: built from the same generated rows as the store below
+        long before = usedHeap();
+        HashMap<Integer, Product> byId = new HashMap<>();
+        HashMap<String, Product> bySku = new HashMap<>();
+        ArrayList<Product> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product p = generate(i);
+            byId.put(p.getId(), p);
+            bySku.put(p.getSku(), p);
+            sorted.add(p);
+        }
+        Collections.sort(sorted, new Comparator<Product>() {
+            public int compare(Product a, Product b) {
+                return String.CASE_INSENSITIVE_ORDER.compare(a.getName(), b.getName());
+            }
+        });
+        retained = new Object[] {byId, bySku, sorted};
+        long objectBytes = usedHeap() - before;
+
+        long objectIdNanos = Long.MAX_VALUE;
+        long objectSkuNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int id : probes) {
+                sum += byId.get(id).getPriceMinor();
+            }
+            objectIdNanos = Math.min(objectIdNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 4) {
+                sum += bySku.get(sku(probes[i] - 1)).getStock();
+            }
+            objectSkuNanos = Math.min(objectSkuNanos, (System.nanoTime() - start) * 4);
+            blackhole(sum);
+        }
+        print(size, "objects", objectBytes, objectIdNanos, objectSkuNanos, -1);
+        byId = null;
+        bySku = null;
+        sorted = null;
+        retained = null;
+
+        // Columns
+        before = usedHeap();
+        CatalogStore store = new CatalogStore(size);
+        for (int i = 0; i < size; i++) {
+            Product p = generate(i);
+            store.put(p.getId(), p.getName(), p.getPriceMinor(), p.getStock(), p.getSku());
+        }
+        int[] sortedIds = store.idsSortedByName();
+        retained = new Object[] {store, sortedIds};
+        long storeBytes = usedHeap() - before;
+
+        long storeIdNanos = Long.MAX_VALUE;
+        long storeSkuNanos = Long.MAX_VALUE;
+        long viewNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int id : probes) {
+                sum += store.getPriceMinor(store.rowOf(id));
+            }
+            storeIdNanos = Math.min(storeIdNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 4) {
+                sum += store.getStock(store.rowOfSku(sku(probes[i] - 1)));
+            }
+            storeSkuNanos = Math.min(storeSkuNanos, (System.nanoTime() - start) * 4);
+            start = System.nanoTime();
+            for (int id : probes) {
+                sum += store.get(id).getPriceMinor();
+            }
+            viewNanos = Math.min(viewNanos, System.nanoTime() - start);
+            blackhole(sum);
+        }
+        print(size, "columns", storeBytes, storeIdNanos, storeSkuNanos, viewNanos);
+        retained = null;
+    }
+
+    // Same names as ProductSearchBenchmark, plus an EAN-13 style SKU
+    private static Product generate(int i) {
+        Random random = new Random(i);
+        String name = WORDS[random.nextInt(WORDS.length)] + " " +
+                      WORDS[random.nextInt(WORDS.length)] + " " +
+                      Integer.toString(random.nextInt(46656), 36).toUpperCase(Locale.ROOT);
+        return new Product(i + 1, name, 100 + random.nextInt(99900), random.nextInt(500), sku(i));
+    }
+
+    // SKU strings are built per lookup, as a scanner delivers them
+    private static String sku(int i) {
+        return Long.toString(4006381000000L + i);
+    }
+
+    private static void print(int size, String layout, long bytes, long idNanos, long skuNanos,
+                              long viewNanos) {
+        System.out.println(String.format("%9d %-8s %10.1f %9d %12.1f %12.1f %12s",
+            size, layout, bytes / 1048576.0, bytes / size,
+            idNanos / (double) LOOKUPS, skuNanos / (double) LOOKUPS,
+            viewNanos < 0 ? "-" : String.format("%.1f", viewNanos / (double) LOOKUPS)));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void blackhole(long value) {
+        sink += value;
+    }
+}
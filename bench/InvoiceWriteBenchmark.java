@@ -0,0 +1,132 @@
+/**
+ * InvoiceWriteBenchmark.java
+ * Compares checkout latency and throughput of direct saves against the
+ * write-behind journal
+ * Place this file in: bench/InvoiceWriteBenchmark.java
+ *
+ * Usage: bench.bat InvoiceWriteBenchmark [terminals] [invoicesPerTerminal] [journal-only]
+ * Without journal-only this writes real invoices to the configured database -
+ * point config.properties at a scratch schema before running.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+public class InvoiceWriteBenchmark {
+    private static final int LINES_PER_INVOICE = 10;
+
+    public static void main(String[] args) throws Exception {
+        int terminals = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int perTerminal = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        boolean journalOnly = args.length > 2 && args[2].equals("journal-only");
+
+        System.out.println(terminals + " terminals x " + perTerminal + " invoices, " +
+                           LINES_PER_INVOICE + " lines each");
+        System.out.println(String.format("%-22s %12s %10s %10s", "MODE", "INVOICES/S", "P50 ms", "P99 ms"));
+
+        int[] fakeIds = new int[LINES_PER_INVOICE];
+        for (int i = 0; i < fakeIds.length; i++) {
+            fakeIds[i] = i + 1;
+        }
+        File scratch = File.createTempFile("bench", ".journal");
+        scratch.delete();
+        final InvoiceJournal journal = new InvoiceJournal(scratch.getPath(), 256 * 1024 * 1024);
+        run("journal append+fsync", terminals, perTerminal, fakeIds, invoice -> {
+            if (!journal.append(InvoiceCodec.encode(invoice))) {
+                throw new IllegalStateException("Journal full - use fewer invoices");
+            }
+        });
+        journal.close();
+        scratch.delete();
+
+        if (journalOnly) {
+            return;
+        }
+
+        final DatabaseManager dbManager = new DatabaseManager();
+        int[] productIds = SaveInvoiceBenchmark.seedProducts(dbManager, LINES_PER_INVOICE);
+
+        run("direct commit", terminals, perTerminal, productIds, invoice -> {
+            if (!dbManager.commitInvoices(Collections.singletonList(invoice), false).isSuccess()) {
+                throw new IllegalStateException("Save failed");
+            }
+        });
+
+        // Acknowledged at append time; the drain time shows how fast MySQL keeps up
+        scratch = File.createTempFile("bench", ".journal");
+        scratch.delete();
+        InvoiceWriteBehind writeBehind = new InvoiceWriteBehind(dbManager,
+            new InvoiceJournal(scratch.getPath(), 256 * 1024 * 1024), 50, 1000,
+            scratch.getPath() + ".rejected.jsonl");
+        writeBehind.start();
+        long start = System.nanoTime();
+        run("write-behind ack", terminals, perTerminal, productIds, invoice -> {
+            if (!writeBehind.append(invoice)) {
+                throw new IllegalStateException("Journal append failed");
+            }
+        });
+        while (writeBehind.getPendingCount() > 0) {
+            Thread.sleep(5);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-22s %12.0f", "write-behind drained",
+                                         terminals * perTerminal / seconds));
+        writeBehind.close(5000);
+        scratch.delete();
+
+        dbManager.closeConnection();
+    }
+
+    private interface Save {
+        void save(Invoice invoice) throws IOException;
+    }
+
+    // Each terminal thread saves its invoices back to back; latency is per save
+    private static void run(String mode, int terminals, final int perTerminal,
+                            final int[] productIds, final Save save) throws InterruptedException {
+        final long[][] samples = new long[terminals][perTerminal];
+        final CountDownLatch ready = new CountDownLatch(terminals);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(terminals);
+
+        for (int t = 0; t < terminals; t++) {
+            final long[] mine = samples[t];
+            new Thread(() -> {
+                try {
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < perTerminal; i++) {
+                        Invoice invoice = SaveInvoiceBenchmark.createInvoice(productIds, LINES_PER_INVOICE);
+                        invoice.setClientRef(UUID.randomUUID().toString());
+                        long start = System.nanoTime();
+                        save.save(invoice);
+                        mine[i] = System.nanoTime() - start;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = new long[terminals * perTerminal];
+        for (int t = 0; t < terminals; t++) {
+            System.arraycopy(samples[t], 0, all, t * perTerminal, perTerminal);
+        }
+        Arrays.sort(all);
+        double p50 = all[all.length / 2] / 1e6;
+        double p99 = all[(int) Math.ceil(all.length * 0.99) - 1] / 1e6;
+        System.out.println(String.format("%-22s %12.0f %10.3f %10.3f", mode, all.length / seconds, p50, p99));
+    }
+}
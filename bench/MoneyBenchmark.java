@@ -0,0 +1,69 @@
+/**
+ * MoneyBenchmark.java
+ * Compares long minor-unit money math against the old double path
+ * Place this file in: bench/MoneyBenchmark.java
+ */
+
+import java.util.Random;
+
+public class MoneyBenchmark {
+    private static final int LINES = 1000000;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        long[] priceMinor = new long[LINES];
+        double[] priceDouble = new double[LINES];
+        int[] quantity = new int[LINES];
+        for (int i = 0; i < LINES; i++) {
+            priceMinor[i] = 1 + random.nextInt(99999);
+            priceDouble[i] = priceMinor[i] / 100.0;
+            quantity[i] = 1 + random.nextInt(20);
+        }
+
+        // Warm up both paths before measuring
+        for (int r = 0; r < 5; r++) {
+            sumMinor(priceMinor, quantity);
+            sumDouble(priceDouble, quantity);
+        }
+
+        long start = System.nanoTime();
+        long exact = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            exact = sumMinor(priceMinor, quantity);
+        }
+        double minorNanos = (System.nanoTime() - start) / (double) ROUNDS / LINES;
+
+        start = System.nanoTime();
+        double approx = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            approx = sumDouble(priceDouble, quantity);
+        }
+        double doubleNanos = (System.nanoTime() - start) / (double) ROUNDS / LINES;
+
+        long exactTax = Money.percentOf(exact, 1000);
+        double approxTax = approx * 0.10;
+
+        System.out.println(String.format("%-8s %10s %22s %22s", "PATH", "ns/line", "SUBTOTAL", "TAX"));
+        System.out.println(String.format("%-8s %10.3f %22s %22s", "long", minorNanos,
+            Money.format(exact), Money.format(exactTax)));
+        System.out.println(String.format("%-8s %10.3f %22.6f %22.6f", "double", doubleNanos, approx, approxTax));
+        System.out.println(String.format("Drift of double subtotal: %.6f", approx - exact / 100.0));
+    }
+
+    private static long sumMinor(long[] price, int[] quantity) {
+        long subtotal = 0;
+        for (int i = 0; i < price.length; i++) {
+            subtotal += Money.times(price[i], quantity[i]);
+        }
+        return subtotal;
+    }
+
+    private static double sumDouble(double[] price, int[] quantity) {
+        double subtotal = 0;
+        for (int i = 0; i < price.length; i++) {
+            subtotal += price[i] * quantity[i];
+        }
+        return subtotal;
+    }
+}
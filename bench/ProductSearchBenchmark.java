@@ -0,0 +1,137 @@
+/**
+ * ProductSearchBenchmark.java
+ * Compares ProductSearchIndex against a LIKE '%q%' style scan
+ * Place this file in: bench/ProductSearchBenchmark.java
+ *
+ * Usage: ProductSearchBenchmark [jdbcUrl user password]
+ * With JDBC arguments the SQL LIKE path is measured as well, using a
+ * scratch table bench_products that is dropped afterwards.
+ */
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+public class ProductSearchBenchmark {
+    private static final int[] CATALOG_SIZES = {10000, 100000, 1000000};
+    private static final String[] QUERIES = {"cab", "wireless", "ssd 1t", "zz9", "stand"};
+    private static final String[] WORDS = {
+        "Wireless", "Mouse", "Keyboard", "Monitor", "USB", "Cable", "Headphones", "Webcam",
+        "External", "SSD", "Charger", "Laptop", "Stand", "HDMI", "Hub", "Desk", "Lamp", "Pad"
+    };
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        Connection conn = args.length >= 3 ? DriverManager.getConnection(args[0], args[1], args[2]) : null;
+
+        System.out.println(String.format("%9s %-10s %12s %12s %12s %8s",
+            "SKUS", "QUERY", "INDEX us", "SCAN us", "SQL us", "HITS"));
+        for (int size : CATALOG_SIZES) {
+            ArrayList<Product> products = generateCatalog(size);
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = products.get(i).getId();
+            }
+            ProductSearchIndex index = new ProductSearchIndex(CatalogStore.of(products), ids);
+            String[] folded = new String[size];
+            for (int i = 0; i < size; i++) {
+                folded[i] = products.get(i).getName().toLowerCase(Locale.ROOT);
+            }
+            if (conn != null) {
+                seedTable(conn, products);
+            }
+
+            for (String query : QUERIES) {
+                int hits = index.search(query).length;
+
+                long start = System.nanoTime();
+                for (int r = 0; r < ROUNDS; r++) {
+                    index.search(query);
+                }
+                double indexMicros = (System.nanoTime() - start) / 1e3 / ROUNDS;
+
+                start = System.nanoTime();
+                int scanRounds = Math.max(1, ROUNDS / (size / 10000));
+                for (int r = 0; r < scanRounds; r++) {
+                    scan(folded, query);
+                }
+                double scanMicros = (System.nanoTime() - start) / 1e3 / scanRounds;
+
+                String sqlMicros = conn != null ? String.format("%12.1f", sqlSearch(conn, query)) : "           -";
+                System.out.println(String.format("%9d %-10s %12.1f %12.1f %s %8d",
+                    size, query, indexMicros, scanMicros, sqlMicros, hits));
+            }
+        }
+
+        if (conn != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS bench_products");
+            }
+            conn.close();
+        }
+    }
+
+    // Deterministic names built from product-like words plus a model code
+    private static ArrayList<Product> generateCatalog(int size) {
+        Random random = new Random(42);
+        ArrayList<Product> products = new ArrayList<Product>(size);
+        for (int i = 0; i < size; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " +
+                          WORDS[random.nextInt(WORDS.length)] + " " +
+                          Integer.toString(random.nextInt(46656), 36).toUpperCase(Locale.ROOT);
+            products.add(new Product(i + 1, name, 999, 10));
+        }
+        return products;
+    }
+
+    private static int scan(String[] folded, String query) {
+        String q = query.toLowerCase(Locale.ROOT);
+        int hits = 0;
+        for (String name : folded) {
+            if (name.contains(q)) hits++;
+        }
+        return hits;
+    }
+
+    private static void seedTable(Connection conn, ArrayList<Product> products) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS bench_products");
+            stmt.execute("CREATE TABLE bench_products (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                         "price DECIMAL(10, 2) NOT NULL, stock INT NOT NULL, INDEX idx_name (name)) " +
+                         "ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO bench_products (id, name, price, stock) VALUES (?, ?, 9.99, 10)")) {
+            for (Product p : products) {
+                pstmt.setInt(1, p.getId());
+                pstmt.setString(2, p.getName());
+                pstmt.addBatch();
+                if (p.getId() % 5000 == 0) pstmt.executeBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static double sqlSearch(Connection conn, String query) throws SQLException {
+        int rounds = 5;
+        long start = System.nanoTime();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT * FROM bench_products WHERE name LIKE ? ORDER BY name")) {
+            for (int r = 0; r < rounds; r++) {
+                pstmt.setString(1, "%" + query + "%");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getInt("id");
+                    }
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1e3 / rounds;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * SaveInvoiceBenchmark.java
+ * Measures DatabaseManager.saveInvoice latency against basket size
+ * Place this file in: bench/SaveInvoiceBenchmark.java
+ *
+ * Writes real invoices to the configured database - point config.properties
+ * at a scratch schema before running.
+ */
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class SaveInvoiceBenchmark {
+    private static final int[] LINE_COUNTS = {1, 5, 10, 20, 60, 120};
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 100;
+
+    public static void main(String[] args) {
+        DatabaseManager dbManager = new DatabaseManager();
+        int[] productIds = seedProducts(dbManager, 10);
+
+        System.out.println(String.format("%6s %10s %10s %10s", "LINES", "P50 ms", "P99 ms", "MS/LINE"));
+        for (int lines : LINE_COUNTS) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                dbManager.saveInvoice(createInvoice(productIds, lines));
+            }
+
+            long[] samples = new long[MEASURED_ROUNDS];
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                Invoice invoice = createInvoice(productIds, lines);
+                long start = System.nanoTime();
+                dbManager.saveInvoice(invoice);
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+
+            double p50 = samples[MEASURED_ROUNDS / 2] / 1e6;
+            double p99 = samples[(int) (MEASURED_ROUNDS * 0.99) - 1] / 1e6;
+            System.out.println(String.format("%6d %10.2f %10.2f %10.3f", lines, p50, p99, p50 / lines));
+        }
+
+        dbManager.closeConnection();
+    }
+
+    // Products with enough stock that the benchmark never runs them dry
+    static int[] seedProducts(DatabaseManager dbManager, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            String name = "Benchmark Item " + i;
+            ArrayList<Product> existing = dbManager.searchProducts(name);
+            if (existing.isEmpty()) {
+                dbManager.addProduct(new Product(0, name, 199, 1000000000));
+                existing = dbManager.searchProducts(name);
+            }
+            ids[i] = existing.get(0).getId();
+        }
+        return ids;
+    }
+
+    // Repeats product IDs so duplicate-line coalescing is exercised as well
+    static Invoice createInvoice(int[] productIds, int lines) {
+        ArrayList<BillItem> items = new ArrayList<BillItem>();
+        long subtotal = 0;
+        for (int i = 0; i < lines; i++) {
+            BillItem item = new BillItem(productIds[i % productIds.length], "Benchmark Item", 199, 1);
+            items.add(item);
+            subtotal += item.getTotalMinor();
+        }
+        long tax = Money.percentOf(subtotal, 1000);
+        return new Invoice(0, "Benchmark", "", LocalDateTime.now(), subtotal, tax, subtotal + tax, items);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * StockContentionBenchmark.java
+ * Many threads buy the same product until it runs out; checks that exactly
+ * the available stock was sold and measures checkout throughput on the hot row
+ * Place this file in: bench/StockContentionBenchmark.java
+ *
+ * Usage: bench.bat StockContentionBenchmark [threads] [stock]
+ * Writes real invoices to the configured database - point config.properties
+ * at a scratch schema before running. Compare stock.lock.stripes=64 with 0
+ * to see the effect of the in-process locks.
+ */
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StockContentionBenchmark {
+    private static final String PRODUCT_NAME = "Contention Item";
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final int stock = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        final DatabaseManager dbManager = new DatabaseManager();
+        final Product product = seedProduct(dbManager, stock);
+
+        final AtomicInteger sold = new AtomicInteger();
+        final AtomicInteger refused = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final long[][] samples = new long[threads][];
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(() -> {
+                long[] mine = new long[stock + 1];
+                int count = 0;
+                try {
+                    go.await();
+                    while (true) {
+                        long start = System.nanoTime();
+                        SaveResult result = dbManager.commitInvoices(
+                            Collections.singletonList(createInvoice(product)), false);
+                        if (count < mine.length) {
+                            mine[count++] = System.nanoTime() - start;
+                        }
+                        if (result.getStatus() == SaveResult.Status.SAVED) {
+                            sold.incrementAndGet();
+                        } else if (result.getStatus() == SaveResult.Status.OUT_OF_STOCK) {
+                            refused.incrementAndGet();
+                            break;
+                        } else {
+                            failed.incrementAndGet();
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Abandon this thread
+                } finally {
+                    samples[thread] = Arrays.copyOf(mine, count);
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (long[] s : samples) {
+            total += s.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] s : samples) {
+            System.arraycopy(s, 0, all, offset, s.length);
+            offset += s.length;
+        }
+        Arrays.sort(all);
+
+        dbManager.getProductCache().invalidate();
+        int remaining = -1;
+        for (Product p : dbManager.getAllProducts()) {
+            if (p.getId() == product.getId()) {
+                remaining = p.getStock();
+            }
+        }
+
+        System.out.println(threads + " threads, stock " + stock);
+        System.out.println(String.format("sold %d, refused %d, failed %d, remaining stock %d",
+                                         sold.get(), refused.get(), failed.get(), remaining));
+        System.out.println(String.format("%.0f checkouts/s, p50 %.2f ms, p99 %.2f ms",
+                                         sold.get() / seconds,
+                                         all[all.length / 2] / 1e6,
+                                         all[(int) Math.ceil(all.length * 0.99) - 1] / 1e6));
+        dbManager.closeConnection();
+
+        if (failed.get() > 0 || sold.get() != stock || remaining != 0) {
+            System.out.println("FAILED: stock and sales do not match");
+            System.exit(1);
+        }
+        System.out.println("OK: no oversell");
+    }
+
+    // Reuses the product between runs, resetting its stock
+    private static Product seedProduct(DatabaseManager dbManager, int stock) {
+        ArrayList<Product> existing = dbManager.searchProducts(PRODUCT_NAME);
+        if (existing.isEmpty()) {
+            dbManager.addProduct(new Product(0, PRODUCT_NAME, 100, stock));
+            existing = dbManager.searchProducts(PRODUCT_NAME);
+        }
+        Product product = existing.get(0);
+        dbManager.updateProduct(product.getId(), PRODUCT_NAME, 100, stock);
+        return product;
+    }
+
+    private static Invoice createInvoice(Product product) {
+        ArrayList<BillItem> items = new ArrayList<BillItem>();
+        items.add(new BillItem(product.getId(), PRODUCT_NAME, 100, 1));
+        long tax = Money.percentOf(100, 1000);
+        Invoice invoice = new Invoice(0, "Contention", "", LocalDateTime.now(), 100, tax, 100 + tax, items);
+        invoice.setClientRef(java.util.UUID.randomUUID().toString());
+        return invoice;
+    }
+}
@@ -0,0 +1,24 @@
+@echo off
+REM Billing System (MySQL) - Maintenance Commands for Windows
+REM Usage: cli.bat <command> [arguments]
+
+REM Check if compiled files exist
+if not exist "bin" (
+    echo Error: Compiled files not found!
+    echo Please run compile.bat first
+    exit /b 1
+)
+
+REM Find MySQL connector jar
+for %%f in (lib\mysql-connector-*.jar) do (
+    set MYSQL_JAR=%%f
+    goto :found
+)
+
+:found
+if "%MYSQL_JAR%"=="" (
+    echo Error: Could not find MySQL connector JAR in lib\
+    exit /b 1
+)
+
+java -cp "bin;%MYSQL_JAR%" BillingCli %*
@@ -59,7 +59,7 @@ echo.
 
 REM Compile Java files
 echo Compiling Java files...
-javac -cp "%MYSQL_JAR%" -d bin src\*.java
+javac -encoding UTF-8 -cp "%MYSQL_JAR%" -d bin src\*.java
 
 if %errorlevel% equ 0 (
     echo.
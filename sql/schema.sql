@@ -1,5 +1,6 @@
 -- Billing System Database Schema for MySQL 8.x
 -- This file is optional - the application creates these tables automatically
+-- through SchemaMigrator, and this file mirrors its latest version
 
 -- Create database
 CREATE DATABASE IF NOT EXISTS billing_system;
@@ -13,6 +14,8 @@ CREATE TABLE IF NOT EXISTS products (
     stock INT NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    sku VARCHAR(32) NULL,
+    UNIQUE INDEX uq_sku (sku),
     INDEX idx_name (name)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
@@ -26,6 +29,8 @@ CREATE TABLE IF NOT EXISTS invoices (
     tax DECIMAL(10, 2) NOT NULL,
     grand_total DECIMAL(10, 2) NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    client_ref VARCHAR(36) NULL,
+    UNIQUE INDEX uq_client_ref (client_ref),
     INDEX idx_date_time (date_time),
     INDEX idx_customer_name (customer_name)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -40,10 +45,51 @@ CREATE TABLE IF NOT EXISTS invoice_items (
     quantity INT NOT NULL,
     total DECIMAL(10, 2) NOT NULL,
     FOREIGN KEY (invoice_id) REFERENCES invoices(id) ON DELETE CASCADE,
-    INDEX idx_invoice_id (invoice_id),
-    INDEX idx_product_id (product_id)
+    INDEX idx_invoice_quantity (invoice_id, quantity),
+    INDEX idx_product_sales (product_id, quantity, total)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- Sales Rollups (maintained by the application when an invoice is saved;
+-- rebuild from history with: cli.bat rebuild-rollups)
+CREATE TABLE IF NOT EXISTS sales_daily (
+    sale_date DATE PRIMARY KEY,
+    invoice_count INT NOT NULL,
+    items_sold BIGINT NOT NULL,
+    subtotal DECIMAL(14, 2) NOT NULL,
+    tax DECIMAL(14, 2) NOT NULL,
+    grand_total DECIMAL(14, 2) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS sales_hourly (
+    sale_hour DATETIME PRIMARY KEY,
+    invoice_count INT NOT NULL,
+    items_sold BIGINT NOT NULL,
+    grand_total DECIMAL(14, 2) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS product_sales (
+    product_id INT PRIMARY KEY,
+    product_name VARCHAR(255) NOT NULL,
+    quantity_sold BIGINT NOT NULL,
+    revenue DECIMAL(14, 2) NOT NULL,
+    INDEX idx_quantity_sold (quantity_sold)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Schema Version (one row per migration applied by SchemaMigrator)
+CREATE TABLE IF NOT EXISTS schema_version (
+    version INT PRIMARY KEY,
+    description VARCHAR(255) NOT NULL,
+    applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT IGNORE INTO schema_version (version, description) VALUES
+    (1, 'Base tables'),
+    (2, 'Performance indexes'),
+    (3, 'Sales rollup tables'),
+    (4, 'Covering indexes for reports'),
+    (5, 'Invoice client references'),
+    (6, 'Product SKUs');
+
 -- Sample Data
 INSERT INTO products (name, price, stock) VALUES
     ('Laptop', 899.99, 15),
@@ -66,20 +112,17 @@ ON DUPLICATE KEY UPDATE name=name;
 -- Useful Queries for Reporting
 
 -- Total sales
--- SELECT SUM(grand_total) as total_sales FROM invoices;
+-- SELECT SUM(grand_total) as total_sales FROM sales_daily;
 
 -- Sales by date
--- SELECT DATE(date_time) as date, SUM(grand_total) as daily_sales 
--- FROM invoices 
--- GROUP BY DATE(date_time) 
--- ORDER BY date DESC;
+-- SELECT sale_date as date, grand_total as daily_sales 
+-- FROM sales_daily 
+-- ORDER BY sale_date DESC;
 
 -- Most sold products
--- SELECT p.name, SUM(ii.quantity) as total_sold 
--- FROM invoice_items ii 
--- JOIN products p ON ii.product_id = p.id 
--- GROUP BY p.id, p.name 
--- ORDER BY total_sold DESC 
+-- SELECT product_name, quantity_sold as total_sold 
+-- FROM product_sales 
+-- ORDER BY quantity_sold DESC 
 -- LIMIT 10;
 
 -- Low stock alert
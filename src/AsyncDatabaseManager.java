@@ -0,0 +1,99 @@
+/**
+ * AsyncDatabaseManager.java
+ * Runs DatabaseManager calls off the Swing event dispatch thread
+ * Place this file in: src/AsyncDatabaseManager.java
+ */
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class AsyncDatabaseManager {
+    private final DatabaseManager dbManager;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for AsyncDatabaseManager
+     * @param dbManager The blocking DatabaseManager to wrap
+     */
+    public AsyncDatabaseManager(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.executor = createExecutor("db-worker");
+    }
+
+    /**
+     * Executor for blocking work: one virtual thread per task when the JVM
+     * supports them (Java 21+), otherwise a cached pool of daemon threads.
+     * @param namePrefix Prefix for platform thread names
+     * @return a new executor
+     */
+    static ExecutorService createExecutor(final String namePrefix) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Older JVM - fall back to platform threads
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, namePrefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    public CompletableFuture<ProductRows> getProductRows() {
+        return submit(() -> dbManager.getProductRows());
+    }
+
+    public CompletableFuture<ProductRows> searchProductRows(String query) {
+        return submit(() -> dbManager.searchProductRows(query));
+    }
+
+    public CompletableFuture<Product> getProductBySku(String sku) {
+        return submit(() -> dbManager.getProductBySku(sku));
+    }
+
+    public CompletableFuture<Boolean> addProduct(Product product) {
+        return submit(() -> dbManager.addProduct(product));
+    }
+
+    public CompletableFuture<SaveResult> saveInvoice(Invoice invoice) {
+        return submit(() -> dbManager.saveInvoice(invoice));
+    }
+
+    public CompletableFuture<ArrayList<Invoice>> getAllInvoices() {
+        return submit(() -> dbManager.getAllInvoices());
+    }
+
+    public CompletableFuture<InvoicePage> getInvoicePage(InvoiceCursor after, int pageSize) {
+        return submit(() -> dbManager.getInvoicePage(after, pageSize));
+    }
+
+    /**
+     * @return the wrapped blocking DatabaseManager
+     */
+    public DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+
+    /**
+     * Stop accepting work and close the underlying connection pool
+     */
+    public void shutdown() {
+        executor.shutdown();
+        dbManager.closeConnection();
+    }
+}
@@ -7,20 +7,20 @@
 public class BillItem {
     private int productId;
     private String productName;
-    private double price;
+    private long priceMinor;
     private int quantity;
     
     /**
      * Constructor for BillItem
      * @param productId ID of the product
      * @param productName Name of the product
-     * @param price Price per unit
+     * @param priceMinor Price per unit in minor units (see Money)
      * @param quantity Quantity purchased
      */
-    public BillItem(int productId, String productName, double price, int quantity) {
+    public BillItem(int productId, String productName, long priceMinor, int quantity) {
         this.productId = productId;
         this.productName = productName;
-        this.price = price;
+        this.priceMinor = priceMinor;
         this.quantity = quantity;
     }
     
@@ -33,8 +33,8 @@ public class BillItem {
         return productName; 
     }
     
-    public double getPrice() { 
-        return price; 
+    public long getPriceMinor() { 
+        return priceMinor; 
     }
     
     public int getQuantity() { 
@@ -43,10 +43,10 @@ public class BillItem {
     
     /**
      * Calculate total price for this item
-     * @return price * quantity
+     * @return price * quantity, in minor units
      */
-    public double getTotal() { 
-        return price * quantity; 
+    public long getTotalMinor() { 
+        return Money.times(priceMinor, quantity); 
     }
     
     // Setters
@@ -58,8 +58,8 @@ public class BillItem {
         this.productName = productName;
     }
     
-    public void setPrice(double price) {
-        this.price = price;
+    public void setPriceMinor(long priceMinor) {
+        this.priceMinor = priceMinor;
     }
     
     public void setQuantity(int quantity) {
@@ -71,9 +71,9 @@ public class BillItem {
         return "BillItem{" +
                 "productId=" + productId +
                 ", productName='" + productName + '\'' +
-                ", price=" + price +
+                ", price=" + Money.format(priceMinor) +
                 ", quantity=" + quantity +
-                ", total=" + getTotal() +
+                ", total=" + Money.format(getTotalMinor()) +
                 '}';
     }
 }
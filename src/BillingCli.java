@@ -0,0 +1,183 @@
+/**
+ * BillingCli.java
+ * Command-line maintenance and reporting tasks
+ * Place this file in: src/BillingCli.java
+ */
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class BillingCli {
+
+    /**
+     * Main method - entry point for maintenance commands
+     * @param args command name followed by its arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+            System.exit(1);
+        }
+
+        // Only the API server takes checkouts; the other commands must not open
+        // (and replay) the invoice journal of a till running on this machine
+        DatabaseManager dbManager = new DatabaseManager(args[0].equals("serve"));
+        boolean ok;
+        try {
+            switch (args[0]) {
+                case "rebuild-rollups":
+                    ok = dbManager.rebuildSalesRollups();
+                    break;
+                case "report":
+                    ok = printReport(dbManager, args.length > 1 ? Integer.parseInt(args[1]) : 7);
+                    break;
+                case "import-products":
+                    ok = args.length > 1 && printImport(dbManager.importProducts(args[1]));
+                    break;
+                case "reprice":
+                    ok = args.length > 1 && printImport(dbManager.repriceProducts(args[1]));
+                    break;
+                case "export":
+                    ok = export(dbManager, args);
+                    break;
+                case "replicas":
+                    ok = printReplicas(dbManager);
+                    break;
+                case "serve":
+                    ok = serve(dbManager, args.length > 1 ? Integer.parseInt(args[1]) : -1);
+                    break;
+                default:
+                    printUsage();
+                    ok = false;
+            }
+        } finally {
+            dbManager.closeConnection();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean printImport(ImportReport report) {
+        System.out.println(report);
+        for (String message : report.getMessages()) {
+            System.out.println("  " + message);
+        }
+        if (report.getRowsRejected() > report.getMessages().size()) {
+            System.out.println("  ...");
+        }
+        return report.isSuccess();
+    }
+    
+    // export <csv|jsonl> <file> [--from date] [--to date] [--gzip] [--parallel n]
+    private static boolean export(DatabaseManager dbManager, String[] args) {
+        if (args.length < 3) {
+            printUsage();
+            return false;
+        }
+        
+        InvoiceExporter.Format format = InvoiceExporter.Format.valueOf(args[1].toUpperCase());
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        boolean gzip = false;
+        int parallel = 4;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from": from = LocalDate.parse(args[++i]).atStartOfDay(); break;
+                case "--to": to = LocalDate.parse(args[++i]).plusDays(1).atStartOfDay(); break;
+                case "--gzip": gzip = true; break;
+                case "--parallel": parallel = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return false;
+            }
+        }
+        
+        long start = System.nanoTime();
+        InvoiceExporter exporter = new InvoiceExporter(dbManager, format, gzip, parallel);
+        boolean ok = exporter.export(from, to, args[2]);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %d invoices, %d items, %d bytes in %.1f s (%.0f invoices/s)",
+            ok ? "Exported" : "Export failed", exporter.getInvoiceCount(), exporter.getItemCount(),
+            exporter.getBytesWritten(), seconds, exporter.getInvoiceCount() / seconds));
+        return ok;
+    }
+    
+    // Runs the HTTP API until the process is stopped
+    private static boolean serve(DatabaseManager dbManager, int port) {
+        ServerConfig config = ServerConfig.load();
+        if (port < 0) {
+            port = config.getPort();
+        }
+        if (port <= 0) {
+            System.err.println("No port given and server.port is not set");
+            return false;
+        }
+        
+        try {
+            final BillingServer server = new BillingServer(new BillingService(dbManager,
+                BillingSystem.TAX_BASIS_POINTS, config.getCartIdleMillis()), config.getBindAddress(), port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    server.stop();
+                }
+            }));
+            Thread.currentThread().join();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not start the billing API on port " + port);
+            e.printStackTrace();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+    
+    private static boolean printReport(DatabaseManager dbManager, int days) {
+        LocalDate today = LocalDate.now();
+
+        System.out.println("Total sales:    " + Money.format(dbManager.getTotalSalesMinor()));
+        System.out.println("Total invoices: " + dbManager.getTotalInvoicesCount());
+        System.out.println();
+        System.out.println(String.format("%-12s %10s %10s %16s", "DATE", "INVOICES", "ITEMS", "SALES"));
+        for (SalesBucket bucket : dbManager.getDailySales(today.minusDays(days - 1), today)) {
+            System.out.println(String.format("%-12s %10d %10d %16s",
+                bucket.getStart().toLocalDate(), bucket.getInvoiceCount(),
+                bucket.getItemsSold(), Money.format(bucket.getGrandTotalMinor())));
+        }
+        System.out.println();
+        System.out.println(String.format("%-30s %10s %16s", "TOP PRODUCTS", "SOLD", "REVENUE"));
+        for (ProductSales sales : dbManager.getTopProducts(10)) {
+            System.out.println(String.format("%-30s %10d %16s",
+                sales.getProductName(), sales.getQuantitySold(), Money.format(sales.getRevenueMinor())));
+        }
+        return true;
+    }
+
+    private static boolean printReplicas(DatabaseManager dbManager) {
+        List<String> status = dbManager.getReplicaStatus();
+        if (status.isEmpty()) {
+            System.out.println("No read replicas configured (db.replica.urls); reports use the primary.");
+            return true;
+        }
+        for (String line : status) {
+            System.out.println(line);
+        }
+        return true;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: cli.bat <command> [arguments]");
+        System.out.println("Commands:");
+        System.out.println("  rebuild-rollups         Recompute sales rollup tables from invoice history");
+        System.out.println("  report [days]           Print totals, daily sales and top products (default 7 days)");
+        System.out.println("  import-products <csv>   Add or update products from id,name,price,stock[,sku] rows");
+        System.out.println("  reprice <csv>           Set prices from id,price rows in one step");
+        System.out.println("  export <csv|jsonl> <file> [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--gzip] [--parallel n]");
+        System.out.println("                          Stream invoices and items to a file; --parallel slices the");
+        System.out.println("                          date range over n connections (default 4, below pool.max.size)");
+        System.out.println("  replicas                Show each read replica's lag and whether reports use it");
+        System.out.println("  serve [port]            Run the HTTP/JSON billing API (default server.port)");
+    }
+}
@@ -0,0 +1,512 @@
+/**
+ * BillingServer.java
+ * Embedded HTTP/JSON API over BillingService for thin POS terminals
+ * Place this file in: src/BillingServer.java
+ *
+ * Money is exchanged as integer minor units (fields ending in "Minor").
+ * A cart is saved at most once: checkout claims it first, and repeating a
+ * checkout that went through returns the same invoice. Carts left untouched
+ * for server.cart.idle.minutes are dropped.
+ *
+ *   GET    /health                       offline flag, queued and rejected invoices, open carts
+ *   GET    /products[?q=text]            catalog, or name search
+ *   GET    /products?sku=code            scanner lookup by barcode/SKU
+ *   GET    /products/{id}
+ *   POST   /products                     {"name", "priceMinor", "stock", "sku"?}
+ *   POST   /carts                        opens a cart
+ *   GET    /carts/{id}
+ *   DELETE /carts/{id}
+ *   POST   /carts/{id}/items             {"productId", "quantity"}
+ *   DELETE /carts/{id}/items/{row}
+ *   POST   /carts/{id}/checkout          {"customerName", "customerPhone"}
+ *   GET    /invoices[?afterTime=&afterId=&limit=]
+ *   GET    /invoices/{id}
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+public class BillingServer {
+    // The API has no authentication, so by default only this machine can reach it
+    public static final String LOOPBACK = "127.0.0.1";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final BillingService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for BillingServer, listening on loopback only
+     * @param service Service the requests are answered from
+     * @param port TCP port to listen on
+     */
+    public BillingServer(BillingService service, int port) throws IOException {
+        this(service, LOOPBACK, port);
+    }
+
+    /**
+     * Constructor for BillingServer. Each request runs on its own virtual
+     * thread where available, so a request blocked on MySQL holds no platform thread.
+     * @param service Service the requests are answered from
+     * @param bindAddress Interface to listen on; "0.0.0.0" for all of them
+     * @param port TCP port to listen on
+     */
+    public BillingServer(BillingService service, String bindAddress, int port) throws IOException {
+        this.service = service;
+        InetAddress address = InetAddress.getByName(bindAddress);
+        if (!address.isLoopbackAddress()) {
+            System.err.println("Billing API is reachable from the network on " + bindAddress +
+                               " and has no authentication; firewall it to the till subnet");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.executor = AsyncDatabaseManager.createExecutor("http");
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                dispatch(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Billing API listening on " + server.getAddress().getAddress().getHostAddress() +
+                           ":" + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests, giving in-flight ones up to a second to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // Routing
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = splitPath(exchange.getRequestURI().getPath());
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if (path.length == 0) {
+                sendError(exchange, 404, "Not found");
+            } else if (path[0].equals("health") && path.length == 1 && method.equals("GET")) {
+                sendJson(exchange, 200, health());
+            } else if (path[0].equals("products")) {
+                handleProducts(exchange, method, path, query);
+            } else if (path[0].equals("carts")) {
+                handleCarts(exchange, method, path);
+            } else if (path[0].equals("invoices")) {
+                handleInvoices(exchange, method, path, query);
+            } else {
+                sendError(exchange, 404, "Not found");
+            }
+        } catch (IllegalArgumentException e) {
+            // Malformed JSON, numbers or fields
+            sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error handling " + exchange.getRequestURI());
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleProducts(HttpExchange exchange, String method, String[] path,
+                                Map<String, String> query) throws IOException {
+        if (path.length == 1 && method.equals("GET") && query.containsKey("sku")) {
+            // Scanner lookup: exact match, served from the SKU index
+            Product product = service.getProductBySku(query.get("sku").trim());
+            if (product == null) {
+                sendError(exchange, 404, "No product with this SKU");
+                return;
+            }
+            sendJson(exchange, 200, appendProduct(new StringBuilder(), product));
+        } else if (path.length == 1 && method.equals("GET")) {
+            String q = query.get("q");
+            List<Product> products = q == null || q.trim().isEmpty()
+                ? service.getAllProducts() : service.searchProducts(q.trim());
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < products.size(); i++) {
+                if (i > 0) sb.append(',');
+                appendProduct(sb, products.get(i));
+            }
+            sendJson(exchange, 200, sb.append(']'));
+        } else if (path.length == 1 && method.equals("POST")) {
+            Map<String, Object> body = readBody(exchange);
+            String name = requireString(body, "name").trim();
+            long price = requireLong(body, "priceMinor");
+            int stock = (int) requireLong(body, "stock");
+            if (name.isEmpty() || price < 0 || stock < 0) {
+                sendError(exchange, 400, "Name, price and stock must be valid");
+                return;
+            }
+            String skuText = optionalString(body, "sku");
+            String sku = skuText == null ? null : CatalogImporter.parseSku(skuText);
+            Product product = new Product(0, name, price, stock, sku);
+            if (!service.addProduct(product)) {
+                sendError(exchange, 503, "Could not add product");
+                return;
+            }
+            sendJson(exchange, 201, appendProduct(new StringBuilder(), product));
+        } else if (path.length == 2 && method.equals("GET")) {
+            Product product = service.getProduct(parseInt(path[1]));
+            if (product == null) {
+                sendError(exchange, 404, "No such product");
+                return;
+            }
+            sendJson(exchange, 200, appendProduct(new StringBuilder(), product));
+        } else {
+            sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    private void handleCarts(HttpExchange exchange, String method, String[] path) throws IOException {
+        if (path.length == 1) {
+            if (!method.equals("POST")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            String cartId = service.openCart();
+            sendJson(exchange, 201, appendCart(new StringBuilder(), cartId, service.getCart(cartId)));
+            return;
+        }
+
+        String cartId = path[1];
+        if (path.length == 3 && path[2].equals("checkout") && method.equals("POST")) {
+            checkout(exchange, cartId);
+            return;
+        }
+        Cart cart = service.getCart(cartId);
+        if (cart == null) {
+            sendError(exchange, 404, "No such cart");
+            return;
+        }
+
+        if (path.length == 2 && method.equals("GET")) {
+            sendJson(exchange, 200, appendCart(new StringBuilder(), cartId, cart));
+        } else if (path.length == 2 && method.equals("DELETE")) {
+            service.closeCart(cartId);
+            sendStatus(exchange, 204);
+        } else if (path.length == 3 && path[2].equals("items") && method.equals("POST")) {
+            Map<String, Object> body = readBody(exchange);
+            Product product = service.getProduct((int) requireLong(body, "productId"));
+            if (product == null) {
+                sendError(exchange, 404, "No such product");
+                return;
+            }
+            Object quantity = body.get("quantity");
+            int qty = quantity == null ? 1 : (int) toLong(quantity, "quantity");
+            if (service.addToCart(cart, product, qty) < 0) {
+                sendError(exchange, 409, "Only " + service.getAvailableStock(cart, product) +
+                          " of " + product.getName() + " available");
+                return;
+            }
+            sendJson(exchange, 200, appendCart(new StringBuilder(), cartId, cart));
+        } else if (path.length == 4 && path[2].equals("items") && method.equals("DELETE")) {
+            if (!service.removeFromCart(cart, parseInt(path[3]))) {
+                sendError(exchange, 404, "No such line");
+                return;
+            }
+            sendJson(exchange, 200, appendCart(new StringBuilder(), cartId, cart));
+        } else {
+            sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    private void checkout(HttpExchange exchange, String cartId) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        Cart cart = service.claimCart(cartId);
+        if (cart == null) {
+            // A retry of a checkout that went through gets the same invoice back
+            Invoice done = service.getCheckedOutInvoice(cartId);
+            if (done != null) {
+                sendJson(exchange, done.getId() > 0 ? 201 : 202, appendInvoice(new StringBuilder(), done));
+            } else if (service.isCheckingOut(cartId)) {
+                sendError(exchange, 409, "Cart is already being checked out");
+            } else {
+                sendError(exchange, 404, "No such cart");
+            }
+            return;
+        }
+
+        Invoice invoice = service.createInvoice(cart, optionalString(body, "customerName"),
+                                                optionalString(body, "customerPhone"));
+        if (invoice.getItems().isEmpty()) {
+            service.releaseCart(cartId, cart);
+            sendError(exchange, 400, "Cart is empty");
+            return;
+        }
+
+        SaveResult result = service.checkout(cartId, cart, invoice);
+        switch (result.getStatus()) {
+            case SAVED:
+                sendJson(exchange, 201, appendInvoice(new StringBuilder(), invoice));
+                break;
+            case QUEUED:
+                // Durable locally; the number is assigned once it reaches MySQL
+                sendJson(exchange, 202, appendInvoice(new StringBuilder(), invoice));
+                break;
+            case OUT_OF_STOCK:
+                StringBuilder sb = new StringBuilder("{");
+                Json.appendName(sb, "error").append("\"Not enough stock\",");
+                Json.appendName(sb, "shortProductIds").append('[');
+                List<Integer> ids = result.getShortProductIds();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(ids.get(i));
+                }
+                sendJson(exchange, 409, sb.append("]}"));
+                break;
+            default:
+                sendError(exchange, 503, "Failed to save invoice");
+        }
+    }
+
+    private void handleInvoices(HttpExchange exchange, String method, String[] path,
+                                Map<String, String> query) throws IOException {
+        if (!method.equals("GET")) {
+            sendError(exchange, 405, "Method not allowed");
+        } else if (path.length == 1) {
+            InvoiceCursor after = null;
+            if (query.containsKey("afterTime") && query.containsKey("afterId")) {
+                try {
+                    after = new InvoiceCursor(LocalDateTime.parse(query.get("afterTime")),
+                                              parseInt(query.get("afterId")));
+                } catch (java.time.format.DateTimeParseException e) {
+                    throw new IllegalArgumentException("Bad afterTime");
+                }
+            }
+            int limit = query.containsKey("limit") ? parseInt(query.get("limit")) : DEFAULT_PAGE_SIZE;
+            InvoicePage page = service.getInvoicePage(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+
+            StringBuilder sb = new StringBuilder("{");
+            Json.appendName(sb, "invoices").append('[');
+            List<Invoice> invoices = page.getInvoices();
+            for (int i = 0; i < invoices.size(); i++) {
+                if (i > 0) sb.append(',');
+                appendInvoice(sb, invoices.get(i));
+            }
+            sb.append("],");
+            Json.appendName(sb, "next");
+            InvoiceCursor next = page.getNextCursor();
+            if (next == null) {
+                sb.append("null");
+            } else {
+                sb.append('{');
+                Json.appendName(sb, "afterTime");
+                Json.appendString(sb, next.getDateTime().toString()).append(',');
+                Json.appendName(sb, "afterId").append(next.getId()).append('}');
+            }
+            sendJson(exchange, 200, sb.append('}'));
+        } else if (path.length == 2) {
+            Invoice invoice = service.getInvoice(parseInt(path[1]));
+            if (invoice == null) {
+                sendError(exchange, 404, "No such invoice");
+                return;
+            }
+            sendJson(exchange, 200, appendInvoice(new StringBuilder(), invoice));
+        } else {
+            sendError(exchange, 404, "Not found");
+        }
+    }
+
+    private StringBuilder health() {
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendName(sb, "offline").append(service.isOffline()).append(',');
+        Json.appendName(sb, "queuedInvoices").append(service.getQueuedInvoiceCount()).append(',');
+        Json.appendName(sb, "rejectedInvoices").append(service.getRejectedInvoiceCount()).append(',');
+        Json.appendName(sb, "openCarts").append(service.getOpenCartCount());
+        return sb.append('}');
+    }
+
+    // JSON output
+
+    private static StringBuilder appendProduct(StringBuilder sb, Product product) {
+        sb.append('{');
+        Json.appendName(sb, "id").append(product.getId()).append(',');
+        Json.appendName(sb, "name");
+        Json.appendString(sb, product.getName()).append(',');
+        Json.appendName(sb, "priceMinor").append(product.getPriceMinor()).append(',');
+        Json.appendName(sb, "stock").append(product.getStock());
+        if (product.getSku() != null) {
+            sb.append(',');
+            Json.appendName(sb, "sku");
+            Json.appendString(sb, product.getSku());
+        }
+        return sb.append('}');
+    }
+
+    private static StringBuilder appendItem(StringBuilder sb, BillItem item) {
+        sb.append('{');
+        Json.appendName(sb, "productId").append(item.getProductId()).append(',');
+        Json.appendName(sb, "productName");
+        Json.appendString(sb, item.getProductName()).append(',');
+        Json.appendName(sb, "priceMinor").append(item.getPriceMinor()).append(',');
+        Json.appendName(sb, "quantity").append(item.getQuantity()).append(',');
+        Json.appendName(sb, "totalMinor").append(item.getTotalMinor());
+        return sb.append('}');
+    }
+
+    private static StringBuilder appendCart(StringBuilder sb, String cartId, Cart cart) {
+        synchronized (cart) {
+            sb.append('{');
+            Json.appendName(sb, "id");
+            Json.appendString(sb, cartId).append(',');
+            Json.appendName(sb, "items").append('[');
+            for (int row = 0; row < cart.size(); row++) {
+                if (row > 0) sb.append(',');
+                appendItem(sb, cart.getLine(row));
+            }
+            sb.append("],");
+            Json.appendName(sb, "subtotalMinor").append(cart.getSubtotalMinor()).append(',');
+            Json.appendName(sb, "taxMinor").append(cart.getTaxMinor()).append(',');
+            Json.appendName(sb, "grandTotalMinor").append(cart.getGrandTotalMinor());
+            return sb.append('}');
+        }
+    }
+
+    private static StringBuilder appendInvoice(StringBuilder sb, Invoice invoice) {
+        sb.append('{');
+        Json.appendName(sb, "id").append(invoice.getId()).append(',');
+        Json.appendName(sb, "clientRef");
+        Json.appendString(sb, invoice.getClientRef()).append(',');
+        Json.appendName(sb, "customerName");
+        Json.appendString(sb, invoice.getCustomerName()).append(',');
+        Json.appendName(sb, "customerPhone");
+        Json.appendString(sb, invoice.getCustomerPhone()).append(',');
+        Json.appendName(sb, "dateTime");
+        Json.appendString(sb, invoice.getDateTime().toString()).append(',');
+        Json.appendName(sb, "items").append('[');
+        List<BillItem> items = invoice.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) sb.append(',');
+            appendItem(sb, items.get(i));
+        }
+        sb.append("],");
+        Json.appendName(sb, "subtotalMinor").append(invoice.getSubtotalMinor()).append(',');
+        Json.appendName(sb, "taxMinor").append(invoice.getTaxMinor()).append(',');
+        Json.appendName(sb, "grandTotalMinor").append(invoice.getGrandTotalMinor());
+        return sb.append('}');
+    }
+
+    // Request and response helpers
+
+    private static String[] splitPath(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        HashMap<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, n);
+                if (buffer.size() > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body too large");
+                }
+            }
+        }
+        String text = new String(buffer.toByteArray(), StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? new HashMap<String, Object>() : Json.parseObject(text);
+    }
+
+    private static int parseInt(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number '" + text + "'");
+        }
+    }
+
+    private static long toLong(Object value, String field) {
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException("Field '" + field + "' must be an integer");
+        }
+        return (Long) value;
+    }
+
+    private static long requireLong(Map<String, Object> body, String field) {
+        if (!body.containsKey(field)) {
+            throw new IllegalArgumentException("Missing field '" + field + "'");
+        }
+        return toLong(body.get(field), field);
+    }
+
+    private static String requireString(Map<String, Object> body, String field) {
+        String value = optionalString(body, field);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field '" + field + "'");
+        }
+        return value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Field '" + field + "' must be a string");
+        }
+        return (String) value;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendName(sb, "error");
+        Json.appendString(sb, message);
+        sendJson(exchange, status, sb.append('}'));
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * BillingService.java
+ * Product, cart and invoice operations without any UI, shared by the Swing
+ * client and the HTTP API so every terminal uses one catalog cache and pool
+ * Place this file in: src/BillingService.java
+ */
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BillingService {
+    public static final String DEFAULT_CUSTOMER = "Walk-in Customer";
+    private static final long DEFAULT_CART_IDLE_MILLIS = 30 * 60000;
+
+    private final DatabaseManager dbManager;
+    private final int taxBasisPoints;
+    private final long cartIdleMillis;
+    // Open carts of remote terminals, by cart ID
+    private final ConcurrentHashMap<String, Cart> carts = new ConcurrentHashMap<>();
+    // Claimed carts whose save is under way
+    private final ConcurrentHashMap<String, Cart> checkingOut = new ConcurrentHashMap<>();
+    // Carts already checked out, kept as long as idle carts so a retried
+    // checkout gets the same invoice back instead of an error
+    private final ConcurrentHashMap<String, CheckedOut> checkedOut = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private static class CheckedOut {
+        final Invoice invoice;
+        final long at = System.currentTimeMillis();
+
+        CheckedOut(Invoice invoice) {
+            this.invoice = invoice;
+        }
+    }
+
+    /**
+     * Constructor for BillingService
+     * @param dbManager Connected database manager
+     * @param taxBasisPoints Tax rate in hundredths of a percent, e.g. 1000 for 10%
+     */
+    public BillingService(DatabaseManager dbManager, int taxBasisPoints) {
+        this(dbManager, taxBasisPoints, DEFAULT_CART_IDLE_MILLIS);
+    }
+
+    /**
+     * Constructor for BillingService
+     * @param dbManager Connected database manager
+     * @param taxBasisPoints Tax rate in hundredths of a percent, e.g. 1000 for 10%
+     * @param cartIdleMillis Open carts untouched for this long are dropped
+     */
+    public BillingService(DatabaseManager dbManager, int taxBasisPoints, long cartIdleMillis) {
+        this.dbManager = dbManager;
+        this.taxBasisPoints = taxBasisPoints;
+        this.cartIdleMillis = Math.max(1000, cartIdleMillis);
+    }
+
+    public DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+
+    public int getTaxBasisPoints() {
+        return taxBasisPoints;
+    }
+
+    // Products
+
+    public ArrayList<Product> getAllProducts() {
+        return dbManager.getAllProducts();
+    }
+
+    public ArrayList<Product> searchProducts(String query) {
+        return dbManager.searchProducts(query);
+    }
+
+    public Product getProduct(int productId) {
+        return dbManager.getProduct(productId);
+    }
+
+    /**
+     * @param sku Scanned barcode or SKU
+     * @return the product, or null if none has this SKU
+     */
+    public Product getProductBySku(String sku) {
+        return dbManager.getProductBySku(sku);
+    }
+
+    public boolean addProduct(Product product) {
+        return dbManager.addProduct(product);
+    }
+
+    // Carts
+
+    /**
+     * @return an empty cart at this service's tax rate, not registered for remote use
+     */
+    public Cart newCart() {
+        return new Cart(taxBasisPoints);
+    }
+
+    /**
+     * Open a cart that later requests refer to by ID
+     * @return the new cart's ID
+     */
+    public String openCart() {
+        sweepIdleCarts();
+        String cartId = UUID.randomUUID().toString();
+        carts.put(cartId, newCart());
+        return cartId;
+    }
+
+    /**
+     * @param cartId ID from openCart()
+     * @return the cart, or null if it is unknown, expired, or being or already checked out
+     */
+    public Cart getCart(String cartId) {
+        Cart cart = carts.get(cartId);
+        if (cart != null) {
+            cart.touch();
+        }
+        return cart;
+    }
+
+    /**
+     * Drop carts abandoned by their terminal. Runs at most a few times per
+     * idle period, from openCart(), so it needs no thread of its own.
+     */
+    private void sweepIdleCarts() {
+        long now = System.currentTimeMillis();
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + cartIdleMillis / 4)) {
+            return;
+        }
+        long cutoff = now - cartIdleMillis;
+        for (Map.Entry<String, Cart> entry : carts.entrySet()) {
+            if (entry.getValue().getLastUsed() < cutoff) {
+                carts.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, CheckedOut> entry : checkedOut.entrySet()) {
+            if (entry.getValue().at < cutoff) {
+                checkedOut.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public boolean closeCart(String cartId) {
+        return carts.remove(cartId) != null;
+    }
+
+    public int getOpenCartCount() {
+        return carts.size();
+    }
+
+    /**
+     * Units of a product that can still go into a cart; what the cart already
+     * holds counts against the stock
+     */
+    public int getAvailableStock(Cart cart, Product product) {
+        synchronized (cart) {
+            return product.getStock() - cart.getQuantity(product.getId());
+        }
+    }
+
+    /**
+     * Add a product to a cart, merging with its existing line
+     * @param cart Cart to add to
+     * @param product Product as last read from the catalog
+     * @param quantity Units to add
+     * @return row of the line, or -1 if the quantity is not positive or exceeds the stock
+     */
+    public int addToCart(Cart cart, Product product, int quantity) {
+        synchronized (cart) {
+            if (quantity <= 0 || quantity > getAvailableStock(cart, product)) {
+                return -1;
+            }
+            return cart.add(product.getId(), product.getName(), product.getPriceMinor(), quantity);
+        }
+    }
+
+    /**
+     * @return false if there is no such row
+     */
+    public boolean removeFromCart(Cart cart, int row) {
+        synchronized (cart) {
+            if (row < 0 || row >= cart.size()) {
+                return false;
+            }
+            cart.remove(row);
+            return true;
+        }
+    }
+
+    // Invoices
+
+    /**
+     * Build an unsaved invoice from the cart's current lines and totals
+     * @param cart Cart being checked out
+     * @param customerName Customer name; blank becomes DEFAULT_CUSTOMER
+     * @param customerPhone Customer phone, may be blank
+     * @return the invoice, with ID 0
+     */
+    public Invoice createInvoice(Cart cart, String customerName, String customerPhone) {
+        String name = customerName == null ? "" : customerName.trim();
+        String phone = customerPhone == null ? "" : customerPhone.trim();
+        if (name.isEmpty()) {
+            name = DEFAULT_CUSTOMER;
+        }
+
+        synchronized (cart) {
+            return new Invoice(0, name, phone, LocalDateTime.now(),
+                cart.getSubtotalMinor(), cart.getTaxMinor(), cart.getGrandTotalMinor(),
+                cart.getItems());
+        }
+    }
+
+    /**
+     * @see DatabaseManager#saveInvoice(Invoice)
+     */
+    public SaveResult saveInvoice(Invoice invoice) {
+        return dbManager.saveInvoice(invoice);
+    }
+
+    /**
+     * Take an open cart for checkout. The cart leaves the open carts at once,
+     * so a second checkout of it, or a change to it, finds no cart. Finish
+     * with checkout(), or releaseCart() to give it back unsaved.
+     * @param cartId ID from openCart()
+     * @return the cart, or null if it is unknown or another request took it first
+     */
+    public Cart claimCart(String cartId) {
+        Cart cart = carts.get(cartId);
+        if (cart == null || !carts.remove(cartId, cart)) {
+            return null;
+        }
+        checkingOut.put(cartId, cart);
+        return cart;
+    }
+
+    /**
+     * Reopen a claimed cart that was not saved
+     */
+    public void releaseCart(String cartId, Cart cart) {
+        cart.touch();
+        carts.putIfAbsent(cartId, cart);
+        checkingOut.remove(cartId, cart);
+    }
+
+    /**
+     * @return true while a claimed cart's checkout is under way
+     */
+    public boolean isCheckingOut(String cartId) {
+        return checkingOut.containsKey(cartId);
+    }
+
+    /**
+     * @param cartId ID of a cart that may have been checked out recently
+     * @return the invoice it became, or null
+     */
+    public Invoice getCheckedOutInvoice(String cartId) {
+        CheckedOut done = checkedOut.get(cartId);
+        return done == null ? null : done.invoice;
+    }
+
+    /**
+     * Save a claimed cart as an invoice. The cart ID is the invoice's client
+     * reference, so saving the same cart twice (say, after a save whose
+     * outcome was lost) stores it once. A refused cart is reopened so the
+     * terminal can adjust it.
+     * @param cartId ID the cart was claimed under
+     * @param cart Cart from claimCart()
+     * @param invoice Invoice built from the cart with createInvoice()
+     * @return the outcome of the save
+     */
+    public SaveResult checkout(String cartId, Cart cart, Invoice invoice) {
+        invoice.setClientRef(cartId);
+        SaveResult result;
+        try {
+            result = saveInvoice(invoice);
+        } catch (RuntimeException e) {
+            releaseCart(cartId, cart);
+            throw e;
+        }
+        if (result.isSuccess()) {
+            checkedOut.put(cartId, new CheckedOut(invoice));
+            checkingOut.remove(cartId, cart);
+        } else {
+            releaseCart(cartId, cart);
+        }
+        return result;
+    }
+
+    public Invoice getInvoice(int invoiceId) {
+        return dbManager.getInvoiceById(invoiceId);
+    }
+
+    public InvoicePage getInvoicePage(InvoiceCursor after, int pageSize) {
+        return dbManager.getInvoicePage(after, pageSize);
+    }
+
+    // Status
+
+    public boolean isOffline() {
+        return dbManager.isOffline();
+    }
+
+    public int getQueuedInvoiceCount() {
+        return dbManager.getQueuedInvoiceCount();
+    }
+
+    public int getRejectedInvoiceCount() {
+        return dbManager.getRejectedInvoiceCount();
+    }
+}
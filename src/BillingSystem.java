@@ -5,22 +5,41 @@
  */
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class BillingSystem extends JFrame {
     private JTable productTable, billTable;
-    private DefaultTableModel productModel, billModel;
-    private JTextField searchField, productNameField, productPriceField, productQtyField;
+    private ProductTableModel productModel;
+    private CartTableModel billModel;
+    private JTextField searchField, productNameField, productPriceField, productQtyField, productSkuField;
+    private JTextField scanField;
     private JTextField customerNameField, customerPhoneField;
     private JLabel totalLabel, taxLabel, grandTotalLabel;
-    private ArrayList<BillItem> currentBill;
-    private DatabaseManager dbManager;
-    private double taxRate = 0.10; // 10% tax
+    private JLabel statusLabel;
+    private JLabel connectionLabel;
+    private JButton generateBillBtn, addToBillBtn, removeItemBtn, clearBillBtn;
+    // True while an invoice built from the bill is being saved (EDT only)
+    private boolean savingBill = false;
+    private Cart currentBill;
+    private AsyncDatabaseManager asyncDb;
+    private BillingService billingService;
+    // Receipts are rendered on the EDT and printed on the spooler's thread
+    private final ReceiptRenderer receiptRenderer = new ReceiptRenderer(TAX_BASIS_POINTS);
+    private final PrintConfig printConfig;
+    private final PrintSpooler printSpooler;
+    
+    public static final int TAX_BASIS_POINTS = 1000; // 10% tax
+    
+    // Latest product list request; older ones are cancelled when a new one starts
+    private CompletableFuture<ProductRows> productRequest;
+    // Number of database calls in flight, drives the busy indicator (EDT only)
+    private int busyCount = 0;
     
     // Modern Dark Color Palette
     private static final Color PRIMARY_DARK = new Color(44, 62, 80);      // Dark blue-gray
@@ -32,14 +51,28 @@ public class BillingSystem extends JFrame {
     private static final Color ACCENT_GRAY = new Color(127, 140, 141);    // Gray
     private static final Color BG_LIGHT = new Color(236, 240, 241);       // Light background
     
-    public BillingSystem() {
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final int CONNECTION_CHECK_MS = 2000;
+    private static final int STATS_REFRESH_MS = 1000;
+    
+    /**
+     * Constructor for BillingSystem
+     * @param billingService Service over a connected database manager; created
+     *                       before the UI so connecting never happens on the
+     *                       event dispatch thread
+     * @param printConfig Receipt printer settings
+     */
+    public BillingSystem(BillingService billingService, PrintConfig printConfig) {
         setTitle("Billing System - Point of Sale");
         setSize(1200, 700);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         
-        dbManager = new DatabaseManager();
-        currentBill = new ArrayList<BillItem>();
+        this.billingService = billingService;
+        asyncDb = new AsyncDatabaseManager(billingService.getDatabaseManager());
+        currentBill = billingService.newCart();
+        this.printConfig = printConfig;
+        printSpooler = printConfig.createPrintSpooler();
         
         initComponents();
         loadProducts();
@@ -70,6 +103,25 @@ public class BillingSystem extends JFrame {
         topPanel.add(createLabel("Phone:", Color.WHITE));
         topPanel.add(customerPhoneField);
         
+        // Shows when billing runs from the local catalog because MySQL is down
+        connectionLabel = createLabel(" ", Color.WHITE);
+        topPanel.add(Box.createHorizontalStrut(20));
+        topPanel.add(connectionLabel);
+        Timer connectionTimer = new Timer(CONNECTION_CHECK_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                updateConnectionStatus();
+            }
+        });
+        connectionTimer.start();
+        
+        JButton statsBtn = createStyledButton("📊 Stats", SECONDARY_DARK);
+        statsBtn.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showStats();
+            }
+        });
+        topPanel.add(statsBtn);
+        
         add(topPanel, BorderLayout.NORTH);
         
         // Center Panel - Split into Products and Bill
@@ -106,6 +158,19 @@ public class BillingSystem extends JFrame {
         searchField = new JTextField(20);
         styleTextField(searchField);
         
+        // Search as the cashier types, once they pause for SEARCH_DELAY_MS
+        final Timer searchTimer = new Timer(SEARCH_DELAY_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                searchProducts();
+            }
+        });
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchTimer.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchTimer.restart(); }
+            public void changedUpdate(DocumentEvent e) { searchTimer.restart(); }
+        });
+        
         JButton searchBtn = createStyledButton("🔍 Search", ACCENT_BLUE);
         searchBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
@@ -126,13 +191,15 @@ public class BillingSystem extends JFrame {
         searchPanel.add(searchBtn);
         searchPanel.add(refreshBtn);
         
+        statusLabel = new JLabel(" ");
+        statusLabel.setForeground(ACCENT_GRAY);
+        searchPanel.add(statusLabel);
+        
         // Product Table
-        String[] productCols = {"ID", "Product Name", "Price", "Stock"};
-        productModel = new DefaultTableModel(productCols, 0) {
-            public boolean isCellEditable(int row, int col) { return false; }
-        };
+        productModel = new ProductTableModel();
         productTable = new JTable(productModel);
         styleTable(productTable);
+        productTable.setDefaultRenderer(Long.class, new PriceCellRenderer());
         productTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         productTable.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
@@ -143,17 +210,19 @@ public class BillingSystem extends JFrame {
         JScrollPane productScroll = new JScrollPane(productTable);
         
         // Product Entry Form
-        JPanel productFormPanel = new JPanel(new GridLayout(4, 2, 5, 5));
+        JPanel productFormPanel = new JPanel(new GridLayout(5, 2, 5, 5));
         productFormPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         productFormPanel.setBackground(BG_LIGHT);
         
         productNameField = new JTextField();
         productPriceField = new JTextField();
         productQtyField = new JTextField();
+        productSkuField = new JTextField();
         
         styleTextField(productNameField);
         styleTextField(productPriceField);
         styleTextField(productQtyField);
+        styleTextField(productSkuField);
         
         JButton addProductBtn = createStyledButton("➕ Add Product", ACCENT_GREEN);
         addProductBtn.addActionListener(new ActionListener() {
@@ -168,6 +237,8 @@ public class BillingSystem extends JFrame {
         productFormPanel.add(productPriceField);
         productFormPanel.add(new JLabel("Stock Quantity:"));
         productFormPanel.add(productQtyField);
+        productFormPanel.add(new JLabel("Barcode/SKU:"));
+        productFormPanel.add(productSkuField);
         productFormPanel.add(new JLabel());
         productFormPanel.add(addProductBtn);
         
@@ -189,20 +260,27 @@ public class BillingSystem extends JFrame {
         ));
         
         // Bill Table
-        String[] billCols = {"Product", "Price", "Qty", "Total"};
-        billModel = new DefaultTableModel(billCols, 0) {
-            public boolean isCellEditable(int row, int col) { return false; }
-        };
+        billModel = new CartTableModel(currentBill);
         billTable = new JTable(billModel);
         styleTable(billTable);
+        billTable.setDefaultRenderer(Long.class, new PriceCellRenderer());
         JScrollPane billScroll = new JScrollPane(billTable);
         
         // Bill Actions
         JPanel billActionsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         billActionsPanel.setBackground(BG_LIGHT);
         
-        JButton addToBillBtn = createStyledButton("➕ Add Selected", ACCENT_BLUE);
-        JButton removeItemBtn = createStyledButton("❌ Remove Item", ACCENT_RED);
+        // Scanners type the code and press Enter; each scan adds one unit
+        scanField = new JTextField(14);
+        styleTextField(scanField);
+        scanField.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                scanItem();
+            }
+        });
+        
+        addToBillBtn = createStyledButton("➕ Add Selected", ACCENT_BLUE);
+        removeItemBtn = createStyledButton("❌ Remove Item", ACCENT_RED);
         
         addToBillBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
@@ -215,6 +293,8 @@ public class BillingSystem extends JFrame {
             }
         });
         
+        billActionsPanel.add(new JLabel("Scan:"));
+        billActionsPanel.add(scanField);
         billActionsPanel.add(addToBillBtn);
         billActionsPanel.add(removeItemBtn);
         
@@ -240,8 +320,8 @@ public class BillingSystem extends JFrame {
         summaryPanel.add(createLabel("GRAND TOTAL:", SECONDARY_DARK));
         summaryPanel.add(grandTotalLabel);
         
-        JButton generateBillBtn = createStyledButton("📄 Generate Invoice", ACCENT_TEAL);
-        JButton clearBillBtn = createStyledButton("🗑️ Clear Bill", ACCENT_GRAY);
+        generateBillBtn = createStyledButton("📄 Generate Invoice", ACCENT_TEAL);
+        clearBillBtn = createStyledButton("🗑️ Clear Bill", ACCENT_GRAY);
         
         generateBillBtn.setFont(new Font("Arial", Font.BOLD, 14));
         
@@ -318,13 +398,72 @@ public class BillingSystem extends JFrame {
         return label;
     }
     
-    private void loadProducts() {
-        productModel.setRowCount(0);
-        ArrayList<Product> products = dbManager.getAllProducts();
-        for (Product p : products) {
-            productModel.addRow(new Object[]{p.getId(), p.getName(), 
-                String.format("RS%.2f", p.getPrice()), p.getStock()});
+    /**
+     * Run the callback on the EDT once the database call finishes, showing
+     * the busy indicator meanwhile. Cancelled calls are silently dropped.
+     */
+    private <T> void whenLoaded(CompletableFuture<T> future, final Consumer<T> onSuccess) {
+        setBusy(true);
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            setBusy(false);
+            if (future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "❌ Database error: " + error.getMessage());
+                return;
+            }
+            onSuccess.accept(result);
+        }));
+    }
+    
+    // Reads in-memory counters only, so it is cheap enough for the EDT
+    private void updateConnectionStatus() {
+        DatabaseManager dbManager = asyncDb.getDatabaseManager();
+        int queued = dbManager.getQueuedInvoiceCount();
+        int rejected = dbManager.getRejectedInvoiceCount();
+        String printer = printSpooler.getLastError() == null ? ""
+            : "   ⚠ Printer: " + printSpooler.getLastError() + " - "
+                + printSpooler.getPendingCount() + " receipt(s) waiting";
+        if (rejected > 0) {
+            printer += "   ⚠ " + rejected + " invoice(s) rejected by MySQL - see the journal's .rejected.jsonl file";
         }
+        if (dbManager.isOffline()) {
+            connectionLabel.setText("⚠ OFFLINE - " + queued + " invoice(s) queued" + printer);
+        } else if (queued > 0) {
+            connectionLabel.setText("Syncing " + queued + " invoice(s)..." + printer);
+        } else {
+            connectionLabel.setText(printer.isEmpty() ? " " : printer.trim());
+        }
+    }
+    
+    private void setBusy(boolean busy) {
+        busyCount += busy ? 1 : -1;
+        boolean working = busyCount > 0;
+        setCursor(Cursor.getPredefinedCursor(working ? Cursor.WAIT_CURSOR : Cursor.DEFAULT_CURSOR));
+        statusLabel.setText(working ? "Loading..." : " ");
+    }
+    
+    /**
+     * Replace the product table with the result of the given request,
+     * cancelling any request that has not finished yet
+     */
+    private void showProducts(CompletableFuture<ProductRows> request) {
+        if (productRequest != null) {
+            productRequest.cancel(false);
+        }
+        productRequest = request;
+        
+        whenLoaded(request, products -> {
+            // A newer search may have started while this one was in flight
+            if (request != productRequest) return;
+            
+            productModel.setRows(products);
+        });
+    }
+    
+    private void loadProducts() {
+        showProducts(asyncDb.getProductRows());
     }
     
     private void searchProducts() {
@@ -334,18 +473,13 @@ public class BillingSystem extends JFrame {
             return;
         }
         
-        productModel.setRowCount(0);
-        ArrayList<Product> products = dbManager.searchProducts(query);
-        for (Product p : products) {
-            productModel.addRow(new Object[]{p.getId(), p.getName(), 
-                String.format("RS%.2f", p.getPrice()), p.getStock()});
-        }
+        showProducts(asyncDb.searchProductRows(query));
     }
     
     private void addProduct() {
         try {
             String name = productNameField.getText().trim();
-            double price = Double.parseDouble(productPriceField.getText().trim());
+            long price = Money.parse(productPriceField.getText());
             int stock = Integer.parseInt(productQtyField.getText().trim());
             
             if (name.isEmpty()) {
@@ -353,33 +487,40 @@ public class BillingSystem extends JFrame {
                 return;
             }
             
-            Product product = new Product(0, name, price, stock);
-            if (dbManager.addProduct(product)) {
-                JOptionPane.showMessageDialog(this, "✅ Product added successfully!");
-                productNameField.setText("");
-                productPriceField.setText("");
-                productQtyField.setText("");
-                loadProducts();
+            String sku;
+            try {
+                sku = CatalogImporter.parseSku(productSkuField.getText());
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, "❌ Invalid barcode/SKU!");
+                return;
             }
+            
+            Product product = new Product(0, name, price, stock, sku);
+            whenLoaded(asyncDb.addProduct(product), added -> {
+                if (added) {
+                    JOptionPane.showMessageDialog(this, "✅ Product added successfully!");
+                    productNameField.setText("");
+                    productPriceField.setText("");
+                    productQtyField.setText("");
+                    productSkuField.setText("");
+                    loadProducts();
+                }
+            });
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "❌ Invalid price or quantity!");
         }
     }
     
     private void addToBill() {
+        if (savingBill) return;
         int row = productTable.getSelectedRow();
         if (row == -1) {
             JOptionPane.showMessageDialog(this, "Please select a product!");
             return;
         }
         
-        int productId = (int) productModel.getValueAt(row, 0);
-        String productName = (String) productModel.getValueAt(row, 1);
-        String priceStr = (String) productModel.getValueAt(row, 2);
-        double price = Double.parseDouble(priceStr.replace("RS", ""));
-        int stock = (int) productModel.getValueAt(row, 3);
-        
-        if (stock <= 0) {
+        Product product = productModel.getProductAt(row);
+        if (availableStock(product) <= 0) {
             JOptionPane.showMessageDialog(this, "❌ Product out of stock!");
             return;
         }
@@ -389,27 +530,65 @@ public class BillingSystem extends JFrame {
         
         try {
             int qty = Integer.parseInt(qtyStr);
-            if (qty <= 0 || qty > stock) {
+            if (qty <= 0 || qty > availableStock(product)) {
                 JOptionPane.showMessageDialog(this, "❌ Invalid quantity!");
                 return;
             }
             
-            BillItem item = new BillItem(productId, productName, price, qty);
-            currentBill.add(item);
-            
-            billModel.addRow(new Object[]{
-                productName, 
-                String.format("RS%.2f", price),
-                qty,
-                String.format("RS%.2f", item.getTotal())
-            });
-            
-            updateBillSummary();
+            addToBill(product, qty);
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "❌ Invalid quantity!");
         }
     }
     
+    // Units of this product already in the bill count against its stock
+    private int availableStock(Product product) {
+        return product.getStock() - currentBill.getQuantity(product.getId());
+    }
+    
+    // Merges into the existing line if the product is already billed. A scan
+    // looked up in the background can land while the bill is being saved;
+    // it is refused rather than lost when the saved bill is cleared.
+    private void addToBill(Product product, int qty) {
+        if (savingBill) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        billModel.add(product.getId(), product.getName(), product.getPriceMinor(), qty);
+        updateBillSummary();
+    }
+    
+    // Repeat scans of one product merge into its line. A fresh catalog
+    // answers from memory on the EDT; otherwise one background lookup
+    // reloads it for the scans that follow.
+    private void scanItem() {
+        final String sku = scanField.getText().trim();
+        scanField.setText("");
+        if (sku.isEmpty()) {
+            return;
+        }
+        
+        Product cached = asyncDb.getDatabaseManager().getProductCache().getBySku(sku);
+        if (cached != null) {
+            addScanned(sku, cached);
+            return;
+        }
+        whenLoaded(asyncDb.getProductBySku(sku), product -> addScanned(sku, product));
+    }
+    
+    private void addScanned(String sku, Product product) {
+        if (product == null) {
+            Toolkit.getDefaultToolkit().beep();
+            JOptionPane.showMessageDialog(this, "❌ Unknown barcode: " + sku);
+        } else if (availableStock(product) <= 0) {
+            Toolkit.getDefaultToolkit().beep();
+            JOptionPane.showMessageDialog(this, "❌ Out of stock: " + product.getName());
+        } else {
+            addToBill(product, 1);
+        }
+        scanField.requestFocusInWindow();
+    }
+    
     private void removeFromBill() {
         int row = billTable.getSelectedRow();
         if (row == -1) {
@@ -417,23 +596,15 @@ public class BillingSystem extends JFrame {
             return;
         }
         
-        currentBill.remove(row);
-        billModel.removeRow(row);
+        billModel.remove(row);
         updateBillSummary();
     }
     
+    // Totals are kept up to date by the cart, so this is O(1)
     private void updateBillSummary() {
-        double subtotal = 0;
-        for (BillItem item : currentBill) {
-            subtotal += item.getTotal();
-        }
-        
-        double tax = subtotal * taxRate;
-        double grandTotal = subtotal + tax;
-        
-        totalLabel.setText(String.format("RS%.2f", subtotal));
-        taxLabel.setText(String.format("RS%.2f", tax));
-        grandTotalLabel.setText(String.format("RS%.2f", grandTotal));
+        totalLabel.setText(Money.format(currentBill.getSubtotalMinor()));
+        taxLabel.setText(Money.format(currentBill.getTaxMinor()));
+        grandTotalLabel.setText(Money.format(currentBill.getGrandTotalMinor()));
     }
     
     private void generateInvoice() {
@@ -442,26 +613,59 @@ public class BillingSystem extends JFrame {
             return;
         }
         
-        String customerName = customerNameField.getText().trim();
-        String customerPhone = customerPhoneField.getText().trim();
+        Invoice invoice = billingService.createInvoice(currentBill, 
+            customerNameField.getText(), customerPhoneField.getText());
         
-        if (customerName.isEmpty()) {
-            customerName = "Walk-in Customer";
+        // The bill is locked until the save finishes: a second click would save
+        // it twice, and lines added meanwhile would be cleared with it unsaved
+        setBillEditable(false);
+        CompletableFuture<SaveResult> save = asyncDb.saveInvoice(invoice);
+        save.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                setBillEditable(true);
+            }
+        }));
+        whenLoaded(save, result -> {
+            // Cleared before unlocking, so nothing added after the save is lost
+            if (result.isSuccess()) {
+                clearBill();
+            }
+            setBillEditable(true);
+            if (result.isSuccess()) {
+                if (printConfig.isAutoPrint()) {
+                    printReceipt(invoice);
+                }
+                showInvoice(invoice);
+                loadProducts();
+            } else if (result.getStatus() == SaveResult.Status.OUT_OF_STOCK) {
+                // Another terminal sold the stock first; the bill stays so it can be edited
+                JOptionPane.showMessageDialog(this, "❌ Not enough stock for: " + 
+                    describeProducts(invoice, result.getShortProductIds()));
+                loadProducts();
+            } else {
+                JOptionPane.showMessageDialog(this, "❌ Failed to save invoice!");
+            }
+        });
+    }
+    
+    private String describeProducts(Invoice invoice, java.util.List<Integer> productIds) {
+        StringBuilder names = new StringBuilder();
+        for (int productId : productIds) {
+            for (BillItem item : invoice.getItems()) {
+                if (item.getProductId() == productId) {
+                    if (names.length() > 0) names.append(", ");
+                    names.append(item.getProductName());
+                    break;
+                }
+            }
         }
-        
-        double subtotal = Double.parseDouble(totalLabel.getText().replace("RS", ""));
-        double tax = Double.parseDouble(taxLabel.getText().replace("RS", ""));
-        double grandTotal = Double.parseDouble(grandTotalLabel.getText().replace("RS", ""));
-        
-        Invoice invoice = new Invoice(0, customerName, customerPhone, 
-            LocalDateTime.now(), subtotal, tax, grandTotal, currentBill);
-        
-        if (dbManager.saveInvoice(invoice)) {
-            showInvoice(invoice);
-            clearBill();
-            loadProducts();
-        } else {
-            JOptionPane.showMessageDialog(this, "❌ Failed to save invoice!");
+        return names.toString();
+    }
+    
+    // Queues the receipt and returns; the spooler talks to the printer
+    private void printReceipt(Invoice invoice) {
+        if (!printSpooler.submit(receiptRenderer.render(invoice, printConfig.getReceiptFormat()))) {
+            JOptionPane.showMessageDialog(this, "❌ Print queue is full!");
         }
     }
     
@@ -475,36 +679,7 @@ public class BillingSystem extends JFrame {
         textArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         textArea.setBackground(Color.WHITE);
         
-        StringBuilder sb = new StringBuilder();
-        sb.append("================================================\n");
-        sb.append("                  INVOICE                       \n");
-        sb.append("================================================\n\n");
-        sb.append("Invoice #: ").append(invoice.getId()).append("\n");
-        sb.append("Date: ").append(invoice.getDateTime()
-            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
-        sb.append("Customer: ").append(invoice.getCustomerName()).append("\n");
-        sb.append("Phone: ").append(invoice.getCustomerPhone()).append("\n\n");
-        sb.append("------------------------------------------------\n");
-        sb.append(String.format("%-25s %5s %8s %10s\n", "ITEM", "QTY", "PRICE", "TOTAL"));
-        sb.append("------------------------------------------------\n");
-        
-        for (BillItem item : invoice.getItems()) {
-            sb.append(String.format("%-25s %5d RS%7.2f RS%9.2f\n",
-                item.getProductName().substring(0, Math.min(25, item.getProductName().length())),
-                item.getQuantity(),
-                item.getPrice(),
-                item.getTotal()));
-        }
-        
-        sb.append("------------------------------------------------\n");
-        sb.append(String.format("%42s RS%9.2f\n", "Subtotal:", invoice.getSubtotal()));
-        sb.append(String.format("%42s RS%9.2f\n", "Tax (10%):", invoice.getTax()));
-        sb.append("================================================\n");
-        sb.append(String.format("%42s RS%9.2f\n", "GRAND TOTAL:", invoice.getGrandTotal()));
-        sb.append("================================================\n");
-        sb.append("\n          Thank you for your business!\n");
-        
-        textArea.setText(sb.toString());
+        textArea.setText(receiptRenderer.renderText(invoice));
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         buttonPanel.setBackground(BG_LIGHT);
@@ -520,11 +695,7 @@ public class BillingSystem extends JFrame {
         
         printBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                try {
-                    textArea.print();
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(dialog, "Print failed!");
-                }
+                printReceipt(invoice);
             }
         });
         
@@ -536,9 +707,74 @@ public class BillingSystem extends JFrame {
         dialog.setVisible(true);
     }
     
+    // Live per-operation latencies; non-modal so it can stay open while billing
+    private void showStats() {
+        final JDialog dialog = new JDialog(this, "Operation Stats", false);
+        dialog.setSize(900, 400);
+        dialog.setLocationRelativeTo(this);
+        
+        final MetricsTableModel metricsModel = new MetricsTableModel();
+        JTable metricsTable = new JTable(metricsModel);
+        styleTable(metricsTable);
+        metricsTable.setAutoCreateRowSorter(true);
+        final JLabel cacheLabel = createLabel(" ", SECONDARY_DARK);
+        
+        final Runnable refresh = new Runnable() {
+            public void run() {
+                metricsModel.refresh();
+                ProductCache cache = asyncDb.getDatabaseManager().getProductCache();
+                cacheLabel.setText("Product cache: " + cache.getHitCount() + " hits, " +
+                    cache.getMissCount() + " misses");
+            }
+        };
+        refresh.run();
+        
+        final Timer refreshTimer = new Timer(STATS_REFRESH_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh.run();
+            }
+        });
+        refreshTimer.start();
+        dialog.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
+        buttonPanel.setBackground(BG_LIGHT);
+        JButton resetBtn = createStyledButton("Reset", ACCENT_GRAY);
+        resetBtn.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                for (OperationMetrics metrics : OperationMetrics.getAll()) {
+                    metrics.reset();
+                }
+                refresh.run();
+            }
+        });
+        buttonPanel.add(cacheLabel);
+        buttonPanel.add(resetBtn);
+        
+        dialog.add(new JScrollPane(metricsTable), BorderLayout.CENTER);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.setVisible(true);
+    }
+    
+    private void setBillEditable(boolean editable) {
+        savingBill = !editable;
+        billTable.setEnabled(editable);
+        scanField.setEnabled(editable);
+        addToBillBtn.setEnabled(editable);
+        removeItemBtn.setEnabled(editable);
+        clearBillBtn.setEnabled(editable);
+        generateBillBtn.setEnabled(editable);
+        customerNameField.setEnabled(editable);
+        customerPhoneField.setEnabled(editable);
+    }
+    
     private void clearBill() {
-        currentBill.clear();
-        billModel.setRowCount(0);
+        billModel.clear();
         customerNameField.setText("");
         customerPhoneField.setText("");
         updateBillSummary();
@@ -549,7 +785,28 @@ public class BillingSystem extends JFrame {
      * @param args command line arguments
      */
     public static void main(String[] args) {
-        BillingSystem app = new BillingSystem();
-        app.setVisible(true);
+        final DatabaseManager dbManager = new DatabaseManager();
+        ServerConfig serverConfig = ServerConfig.load();
+        final PrintConfig printConfig = PrintConfig.load();
+        final BillingService billingService = new BillingService(dbManager, TAX_BASIS_POINTS,
+            serverConfig.getCartIdleMillis());
+        
+        // With server.port set, thin terminals share this terminal's cache and pool
+        if (serverConfig.getPort() > 0) {
+            try {
+                new BillingServer(billingService, serverConfig.getBindAddress(),
+                                  serverConfig.getPort()).start();
+            } catch (java.io.IOException e) {
+                System.err.println("Could not start the billing API!");
+                e.printStackTrace();
+            }
+        }
+        
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                BillingSystem app = new BillingSystem(billingService, printConfig);
+                app.setVisible(true);
+            }
+        });
     }
 }
\ No newline at end of file
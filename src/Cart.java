@@ -0,0 +1,133 @@
+/**
+ * Cart.java
+ * Lines of the bill being built, keyed by product, with running totals
+ * Place this file in: src/Cart.java
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class Cart {
+    private final int taxBasisPoints;
+    private final ArrayList<BillItem> lines = new ArrayList<>();
+    // Product ID -> row in lines
+    private final HashMap<Integer, Integer> rowByProduct = new HashMap<>();
+    // Exact running totals in minor units (see Money)
+    private long subtotal = 0;
+    private long tax = 0;
+    // When a remote terminal last used the cart, for expiring abandoned ones
+    private volatile long lastUsed = System.currentTimeMillis();
+    
+    /**
+     * Constructor for Cart
+     * @param taxBasisPoints Tax rate in hundredths of a percent, e.g. 1000 for 10%
+     */
+    public Cart(int taxBasisPoints) {
+        this.taxBasisPoints = taxBasisPoints;
+    }
+    
+    /**
+     * Add a product, merging with its existing line if it is already in the cart
+     * @param productId ID of the product
+     * @param productName Name of the product
+     * @param priceMinor Price per unit in minor units
+     * @param quantity Quantity to add
+     * @return row of the new or merged line
+     */
+    public int add(int productId, String productName, long priceMinor, int quantity) {
+        Integer row = rowByProduct.get(productId);
+        if (row != null) {
+            BillItem line = lines.get(row);
+            line.setQuantity(line.getQuantity() + quantity);
+            addToSubtotal(Money.times(line.getPriceMinor(), quantity));
+            return row;
+        }
+        
+        BillItem line = new BillItem(productId, productName, priceMinor, quantity);
+        lines.add(line);
+        rowByProduct.put(productId, lines.size() - 1);
+        addToSubtotal(line.getTotalMinor());
+        return lines.size() - 1;
+    }
+    
+    // Tax is charged on the bill subtotal, so it is re-derived from it
+    private void addToSubtotal(long delta) {
+        subtotal += delta;
+        tax = Money.percentOf(subtotal, taxBasisPoints);
+    }
+    
+    /**
+     * Remove one line from the cart
+     * @param row Row of the line to remove
+     */
+    public void remove(int row) {
+        BillItem line = lines.remove(row);
+        rowByProduct.remove(line.getProductId());
+        addToSubtotal(-line.getTotalMinor());
+        // Lines below the removed one moved up by one
+        for (int i = row; i < lines.size(); i++) {
+            rowByProduct.put(lines.get(i).getProductId(), i);
+        }
+    }
+    
+    public void clear() {
+        lines.clear();
+        rowByProduct.clear();
+        subtotal = 0;
+        tax = 0;
+    }
+    
+    /**
+     * @param productId Product ID
+     * @return quantity of that product already in the cart
+     */
+    public int getQuantity(int productId) {
+        Integer row = rowByProduct.get(productId);
+        return row == null ? 0 : lines.get(row).getQuantity();
+    }
+    
+    public BillItem getLine(int row) {
+        return lines.get(row);
+    }
+    
+    public int size() {
+        return lines.size();
+    }
+    
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+    
+    /**
+     * @return a copy of the lines, for building an Invoice
+     */
+    public ArrayList<BillItem> getItems() {
+        ArrayList<BillItem> items = new ArrayList<>(lines.size());
+        for (BillItem line : lines) {
+            items.add(new BillItem(line.getProductId(), line.getProductName(), 
+                line.getPriceMinor(), line.getQuantity()));
+        }
+        return items;
+    }
+    
+    public void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+    
+    public long getLastUsed() {
+        return lastUsed;
+    }
+    
+    // Totals in minor units
+    public long getSubtotalMinor() {
+        return subtotal;
+    }
+    
+    public long getTaxMinor() {
+        return tax;
+    }
+    
+    public long getGrandTotalMinor() {
+        return subtotal + tax;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * CartTableModel.java
+ * Table model showing the lines of a Cart
+ * Place this file in: src/CartTableModel.java
+ */
+
+import javax.swing.table.AbstractTableModel;
+
+public class CartTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Product", "Price", "Qty", "Total"};
+    private static final Class<?>[] COLUMN_TYPES = {String.class, Long.class, Integer.class, Long.class};
+
+    private final Cart cart;
+
+    /**
+     * Constructor for CartTableModel
+     * @param cart Cart to display; change it only through this model
+     */
+    public CartTableModel(Cart cart) {
+        this.cart = cart;
+    }
+
+    /**
+     * Add to the cart and repaint only the affected row
+     */
+    public void add(int productId, String productName, long priceMinor, int quantity) {
+        int sizeBefore = cart.size();
+        int row = cart.add(productId, productName, priceMinor, quantity);
+        if (cart.size() > sizeBefore) {
+            fireTableRowsInserted(row, row);
+        } else {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    public void remove(int row) {
+        cart.remove(row);
+        fireTableRowsDeleted(row, row);
+    }
+
+    public void clear() {
+        int size = cart.size();
+        cart.clear();
+        if (size > 0) {
+            fireTableRowsDeleted(0, size - 1);
+        }
+    }
+
+    public Cart getCart() {
+        return cart;
+    }
+
+    public int getRowCount() {
+        return cart.size();
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_TYPES[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+        BillItem line = cart.getLine(row);
+        switch (column) {
+            case 0: return line.getProductName();
+            case 1: return line.getPriceMinor();
+            case 2: return line.getQuantity();
+            default: return line.getTotalMinor();
+        }
+    }
+}
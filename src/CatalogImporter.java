@@ -0,0 +1,310 @@
+/**
+ * CatalogImporter.java
+ * Read, validate and write pipeline for bulk catalog CSV files
+ * Place this file in: src/CatalogImporter.java
+ *
+ * One thread reads the file into chunks, a pool validates chunks in
+ * parallel, and the calling thread writes them in file order. At most a
+ * few chunks are in flight, so memory use does not grow with the file.
+ */
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CatalogImporter {
+    // Largest value DECIMAL(10, 2) holds, in minor units
+    private static final long MAX_PRICE_MINOR = 9999999999L;
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_SKU_LENGTH = 32;
+
+    /**
+     * Turns one CSV record into a row; throws IllegalArgumentException to reject it
+     */
+    public interface RowParser<T> {
+        T parse(String[] fields);
+    }
+
+    /**
+     * Writes one chunk of valid rows, in file order
+     */
+    public interface ChunkWriter<T> {
+        void write(List<T> rows) throws SQLException;
+    }
+
+    private static final class Chunk<T> {
+        final ArrayList<T> rows = new ArrayList<>();
+        final ArrayList<String> rejected = new ArrayList<>();
+        long rejectedCount = 0;
+        long read = 0;
+    }
+
+    private final int chunkSize;
+    private final int threads;
+
+    /**
+     * Constructor for CatalogImporter
+     * @param chunkSize Rows per chunk; each chunk is one batch for the writer
+     * @param threads Validation threads
+     */
+    public CatalogImporter(int chunkSize, int threads) {
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Stream every data record through the parser and hand the valid rows to
+     * the writer. The header must already have been read from the CSV.
+     * @return rows read, written and rejected; written rows are assumed to be
+     *         every valid row the writer accepted
+     * @throws SQLException if the writer fails; chunks written before that stay written
+     * @throws IOException if the file cannot be read
+     */
+    public <T> ImportReport run(final CsvReader csv, final RowParser<T> parser,
+                                ChunkWriter<T> writer) throws IOException, SQLException {
+        long start = System.nanoTime();
+        final ExecutorService validators = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "import-validate-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // Futures in file order; the bound is what keeps memory flat
+        final BlockingQueue<Future<Chunk<T>>> pending = new ArrayBlockingQueue<>(threads * 2);
+        final FutureTask<Chunk<T>> endOfFile = new FutureTask<>(() -> null);
+        endOfFile.run();
+        final IOException[] readError = new IOException[1];
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    ArrayList<String[]> records = new ArrayList<>(chunkSize);
+                    ArrayList<Long> lines = new ArrayList<>(chunkSize);
+                    String[] fields;
+                    while (!stop.get() && (fields = csv.next()) != null) {
+                        records.add(fields);
+                        lines.add(csv.getLineNumber());
+                        if (records.size() == chunkSize) {
+                            pending.put(validators.submit(validate(parser, records, lines)));
+                            records = new ArrayList<>(chunkSize);
+                            lines = new ArrayList<>(chunkSize);
+                        }
+                    }
+                    if (!records.isEmpty()) {
+                        pending.put(validators.submit(validate(parser, records, lines)));
+                    }
+                } catch (IOException e) {
+                    readError[0] = e;
+                } catch (InterruptedException e) {
+                    // Writer gave up; nothing more to read
+                } finally {
+                    try {
+                        pending.put(endOfFile);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long read = 0;
+        long written = 0;
+        long rejected = 0;
+        ArrayList<String> messages = new ArrayList<>();
+        try {
+            while (true) {
+                Chunk<T> chunk = pending.take().get();
+                if (chunk == null) {
+                    break;
+                }
+                read += chunk.read;
+                rejected += chunk.rejectedCount;
+                for (String message : chunk.rejected) {
+                    if (messages.size() < ImportReport.MAX_MESSAGES) {
+                        messages.add(message);
+                    }
+                }
+                if (!chunk.rows.isEmpty()) {
+                    writer.write(chunk.rows);
+                    written += chunk.rows.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Validation failed", e.getCause());
+        } finally {
+            // Unblock the reader if the writer stopped early
+            stop.set(true);
+            pending.clear();
+            reader.interrupt();
+            validators.shutdownNow();
+        }
+
+        if (readError[0] != null) {
+            throw readError[0];
+        }
+        return new ImportReport(true, read, written, rejected, System.nanoTime() - start, messages);
+    }
+
+    private static <T> Callable<Chunk<T>> validate(final RowParser<T> parser,
+            final List<String[]> records, final List<Long> lines) {
+        return new Callable<Chunk<T>>() {
+            public Chunk<T> call() {
+                Chunk<T> chunk = new Chunk<>();
+                for (int i = 0; i < records.size(); i++) {
+                    chunk.read++;
+                    try {
+                        chunk.rows.add(parser.parse(records.get(i)));
+                    } catch (IllegalArgumentException e) {
+                        chunk.rejectedCount++;
+                        if (chunk.rejected.size() < ImportReport.MAX_MESSAGES) {
+                            chunk.rejected.add("Line " + lines.get(i) + ": " + e.getMessage());
+                        }
+                    }
+                }
+                return chunk;
+            }
+        };
+    }
+
+    // Row formats
+
+    /**
+     * Parser for product rows. Columns are found by header name: name, price
+     * and stock are required; id is optional and, when present and non-blank,
+     * updates that product instead of adding a new one (ID 0). sku is
+     * optional; a blank SKU leaves an existing product's SKU as it is.
+     * @param header First record of the file
+     * @throws IllegalArgumentException if a required column is missing
+     */
+    public static RowParser<Product> productParser(String[] header) {
+        final int id = column(header, "id", false);
+        final int name = column(header, "name", true);
+        final int price = column(header, "price", true);
+        final int stock = column(header, "stock", true);
+        final int sku = column(header, "sku", false);
+
+        return new RowParser<Product>() {
+            public Product parse(String[] fields) {
+                int productId = id >= 0 && !field(fields, id).isEmpty() ? parseId(field(fields, id)) : 0;
+                String productName = field(fields, name);
+                if (productName.isEmpty() || productName.length() > MAX_NAME_LENGTH) {
+                    throw new IllegalArgumentException("name must be 1-" + MAX_NAME_LENGTH + " characters");
+                }
+                int units;
+                try {
+                    units = Integer.parseInt(field(fields, stock));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad stock '" + field(fields, stock) + "'");
+                }
+                if (units < 0) {
+                    throw new IllegalArgumentException("stock cannot be negative");
+                }
+                return new Product(productId, productName, parsePrice(field(fields, price)), units,
+                                   sku >= 0 ? parseSku(field(fields, sku)) : null);
+            }
+        };
+    }
+
+    /**
+     * Parser for price-only rows with id and price columns. Rows come back as
+     * products with just the ID and price set.
+     * @param header First record of the file
+     * @throws IllegalArgumentException if a required column is missing
+     */
+    public static RowParser<Product> priceParser(String[] header) {
+        final int id = column(header, "id", true);
+        final int price = column(header, "price", true);
+
+        return new RowParser<Product>() {
+            public Product parse(String[] fields) {
+                return new Product(parseId(field(fields, id)), "", parsePrice(field(fields, price)), 0);
+            }
+        };
+    }
+
+    private static int column(String[] header, String name, boolean required) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].trim().toLowerCase(Locale.ROOT).equals(name)) {
+                return i;
+            }
+        }
+        if (required) {
+            throw new IllegalArgumentException("CSV header has no '" + name + "' column");
+        }
+        return -1;
+    }
+
+    private static String field(String[] fields, int column) {
+        return column < fields.length ? fields[column].trim() : "";
+    }
+
+    private static int parseId(String text) {
+        try {
+            int id = Integer.parseInt(text);
+            if (id > 0) {
+                return id;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("bad id '" + text + "'");
+    }
+
+    /**
+     * @param text Barcode or SKU as typed or scanned
+     * @return the trimmed SKU, or null if blank
+     * @throws IllegalArgumentException if it is too long or contains spaces
+     *         or control characters, which scanners never send
+     */
+    public static String parseSku(String text) {
+        String sku = text.trim();
+        if (sku.isEmpty()) {
+            return null;
+        }
+        if (sku.length() > MAX_SKU_LENGTH) {
+            throw new IllegalArgumentException("sku longer than " + MAX_SKU_LENGTH + " characters");
+        }
+        for (int i = 0; i < sku.length(); i++) {
+            if (sku.charAt(i) <= ' ') {
+                throw new IllegalArgumentException("bad sku '" + sku + "'");
+            }
+        }
+        return sku;
+    }
+
+    private static long parsePrice(String text) {
+        long price;
+        try {
+            price = Money.parse(text);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("bad price '" + text + "'");
+        }
+        if (price < 0 || price > MAX_PRICE_MINOR) {
+            throw new IllegalArgumentException("price out of range '" + text + "'");
+        }
+        return price;
+    }
+}
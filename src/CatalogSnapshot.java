@@ -0,0 +1,97 @@
+/**
+ * CatalogSnapshot.java
+ * Local copy of the product catalog, used to keep billing while MySQL is down
+ * Place this file in: src/CatalogSnapshot.java
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public final class CatalogSnapshot {
+    private static final int MAGIC = 0x43415432; // "CAT2"
+    // Written before products had SKUs; still readable
+    private static final int MAGIC_V1 = 0x43415431; // "CAT1"
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Write the catalog to a temporary file and rename it into place, so a
+     * crash mid-write leaves the previous snapshot intact
+     * @param path Snapshot file
+     * @param products Every product, as last read from MySQL
+     */
+    public static void save(String path, ProductRows products) throws IOException {
+        File target = new File(path);
+        File temp = new File(path + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(products.size());
+            for (int row = 0; row < products.size(); row++) {
+                String sku = products.getSku(row);
+                out.writeInt(products.getId(row));
+                out.writeUTF(products.getName(row));
+                out.writeLong(products.getPriceMinor(row));
+                out.writeInt(products.getStock(row));
+                out.writeBoolean(sku != null);
+                if (sku != null) {
+                    out.writeUTF(sku);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Some filesystems can't rename atomically over an existing file
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param path Snapshot file
+     * @return the saved products, or null if there is no usable snapshot
+     */
+    public static CatalogStore load(String path) {
+        File source = new File(path);
+        if (!source.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(source)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                return null;
+            }
+            int count = in.readInt();
+            CatalogStore products = new CatalogStore(count);
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                String name = in.readUTF();
+                long price = in.readLong();
+                int stock = in.readInt();
+                String sku = magic == MAGIC && in.readBoolean() ? in.readUTF() : null;
+                products.put(id, name, price, stock, sku);
+            }
+            return products;
+        } catch (IOException e) {
+            System.err.println("Could not read catalog snapshot " + path);
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
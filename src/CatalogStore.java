@@ -0,0 +1,441 @@
+/**
+ * CatalogStore.java
+ * Columnar in-memory product catalog
+ * Place this file in: src/CatalogStore.java
+ *
+ * One row per product spread over parallel primitive arrays (ID, price,
+ * stock, and offsets into a shared UTF-8 byte arena for name and SKU),
+ * found through an IntIndexMap by ID and a SkuIndex by barcode. A product
+ * costs about 80 bytes plus its text instead of four or five objects, and
+ * the heap holds a handful of large arrays however big the catalog is.
+ *
+ * Product objects are views: each call builds a fresh copy from the row,
+ * which callers may keep or change without affecting the store. Hot paths
+ * that only need a field can read it by row without building anything, and
+ * rows() snapshots products for display or saving the same way. Arena bytes, once
+ * written, are never changed in place: text is appended, and compaction
+ * copies into a new array. Not thread-safe; ProductCache guards it.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CatalogStore {
+    private static final int MIN_ROWS = 16;
+    // Dead name/SKU bytes tolerated before the arena is compacted
+    private static final int MIN_GARBAGE_TO_COMPACT = 64 * 1024;
+
+    private int size = 0;
+    private int[] ids;
+    private long[] prices;
+    private int[] stocks;
+    private int[] nameStarts;
+    private int[] nameLengths;
+    // Length -1 means no SKU
+    private int[] skuStarts;
+    private int[] skuLengths;
+
+    private byte[] arena;
+    private int arenaUsed = 0;
+    private int arenaGarbage = 0;
+
+    private final IntIndexMap rowById;
+    private final SkuIndex rowBySku;
+
+    /**
+     * Constructor for CatalogStore
+     * @param expected Number of products to size the arrays for; they grow as needed
+     */
+    public CatalogStore(int expected) {
+        int rows = Math.max(MIN_ROWS, expected);
+        ids = new int[rows];
+        prices = new long[rows];
+        stocks = new int[rows];
+        nameStarts = new int[rows];
+        nameLengths = new int[rows];
+        skuStarts = new int[rows];
+        skuLengths = new int[rows];
+        // Typical names are 20-30 bytes
+        arena = new byte[rows * 32];
+        rowById = new IntIndexMap(rows);
+        rowBySku = new SkuIndex(rows, new SkuIndex.Skus() {
+            public boolean hasSku(int productId, String sku) {
+                int row = rowById.get(productId);
+                return row >= 0 && spanEquals(skuStarts[row], skuLengths[row], sku);
+            }
+        });
+    }
+
+    /**
+     * Copy a list of products into a new store
+     */
+    public static CatalogStore of(List<Product> products) {
+        CatalogStore store = new CatalogStore(products.size());
+        for (Product p : products) {
+            store.put(p);
+        }
+        return store;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Lookups
+
+    /**
+     * @return the product's row, or -1; rows change when products are removed
+     */
+    public int rowOf(int productId) {
+        return rowById.get(productId);
+    }
+
+    /**
+     * @return the row of the product with this SKU, or -1
+     */
+    public int rowOfSku(String sku) {
+        int productId = rowBySku.get(sku);
+        return productId < 0 ? -1 : rowById.get(productId);
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public long getPriceMinor(int row) {
+        return prices[row];
+    }
+
+    public int getStock(int row) {
+        return stocks[row];
+    }
+
+    public String getName(int row) {
+        return new String(arena, nameStarts[row], nameLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the SKU, or null if the product has none
+     */
+    public String getSku(int row) {
+        return skuLengths[row] < 0 ? null
+            : new String(arena, skuStarts[row], skuLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a new Product with the row's current values
+     */
+    public Product product(int row) {
+        return new Product(ids[row], getName(row), prices[row], stocks[row], getSku(row));
+    }
+
+    /**
+     * @return a view of the product, or null if it is not stored
+     */
+    public Product get(int productId) {
+        int row = rowById.get(productId);
+        return row < 0 ? null : product(row);
+    }
+
+    /**
+     * @return a view of the product with this SKU, or null
+     */
+    public Product getBySku(String sku) {
+        int row = rowOfSku(sku);
+        return row < 0 ? null : product(row);
+    }
+
+    /**
+     * @return views of every product, in row order
+     */
+    public ArrayList<Product> toList() {
+        ArrayList<Product> products = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            products.add(product(row));
+        }
+        return products;
+    }
+
+    /**
+     * Snapshot every product, in row order, for reading by row
+     */
+    public ProductRows rows() {
+        return new ProductRows(size, Arrays.copyOf(ids, size), Arrays.copyOf(prices, size),
+            Arrays.copyOf(stocks, size), arena, Arrays.copyOf(nameStarts, size),
+            Arrays.copyOf(nameLengths, size), Arrays.copyOf(skuStarts, size),
+            Arrays.copyOf(skuLengths, size));
+    }
+
+    /**
+     * Snapshot the given products, in the given order, for reading by row
+     * @param productIds IDs of stored products
+     */
+    public ProductRows rows(int[] productIds) {
+        int count = productIds.length;
+        int[] rowIds = new int[count];
+        long[] rowPrices = new long[count];
+        int[] rowStocks = new int[count];
+        int[] rowNameStarts = new int[count];
+        int[] rowNameLengths = new int[count];
+        int[] rowSkuStarts = new int[count];
+        int[] rowSkuLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            int row = rowById.get(productIds[i]);
+            rowIds[i] = ids[row];
+            rowPrices[i] = prices[row];
+            rowStocks[i] = stocks[row];
+            rowNameStarts[i] = nameStarts[row];
+            rowNameLengths[i] = nameLengths[row];
+            rowSkuStarts[i] = skuStarts[row];
+            rowSkuLengths[i] = skuLengths[row];
+        }
+        return new ProductRows(count, rowIds, rowPrices, rowStocks, arena,
+            rowNameStarts, rowNameLengths, rowSkuStarts, rowSkuLengths);
+    }
+
+    /**
+     * Product IDs sorted by name, ignoring case; names are decoded once each
+     */
+    public int[] idsSortedByName() {
+        String[] names = new String[size];
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            names[row] = getName(row);
+            rows[row] = row;
+        }
+        sortRows(rows, names);
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = ids[rows[i]];
+        }
+        return sorted;
+    }
+
+    // Stable merge sort of row numbers by name, without boxing them
+    private static void sortRows(int[] rows, String[] names) {
+        int[] buffer = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int low = 0; low < rows.length - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, rows.length);
+                int left = low;
+                int right = mid;
+                for (int out = low; out < high; out++) {
+                    if (right >= high || (left < mid && String.CASE_INSENSITIVE_ORDER.compare(
+                            names[rows[left]], names[rows[right]]) <= 0)) {
+                        buffer[out] = rows[left++];
+                    } else {
+                        buffer[out] = rows[right++];
+                    }
+                }
+            }
+            for (int low = 0; low < rows.length - width; low += 2 * width) {
+                int high = Math.min(low + 2 * width, rows.length);
+                System.arraycopy(buffer, low, rows, low, high - low);
+            }
+        }
+    }
+
+    // Changes
+
+    public void put(Product product) {
+        put(product.getId(), product.getName(), product.getPriceMinor(), product.getStock(),
+            product.getSku());
+    }
+
+    /**
+     * Add a product or replace the stored one with the same ID
+     * @param productId Positive product ID
+     * @param sku Barcode or SKU, or null for none
+     * @return true if the name differs from the one stored before, or the product is new
+     */
+    public boolean put(int productId, String name, long priceMinor, int stock, String sku) {
+        int row = rowById.get(productId);
+        boolean renamed;
+        if (row < 0) {
+            row = size;
+            ensureRows(size + 1);
+            size++;
+            ids[row] = productId;
+            rowById.put(productId, row);
+            nameLengths[row] = 0;
+            skuLengths[row] = -1;
+            writeName(row, name);
+            renamed = true;
+        } else {
+            renamed = !spanEquals(nameStarts[row], nameLengths[row], name);
+            if (renamed) {
+                arenaGarbage += nameLengths[row];
+                writeName(row, name);
+            }
+        }
+        prices[row] = priceMinor;
+        stocks[row] = stock;
+
+        if (sku == null ? skuLengths[row] >= 0 : !spanEquals(skuStarts[row], skuLengths[row], sku)) {
+            dropSku(row);
+            if (sku != null) {
+                skuStarts[row] = write(sku);
+                skuLengths[row] = arenaUsed - skuStarts[row];
+                rowBySku.put(sku, productId);
+            }
+        }
+        compactIfWasteful();
+        return renamed;
+    }
+
+    /**
+     * @return false if the product is not stored
+     */
+    public boolean setStock(int productId, int stock) {
+        int row = rowById.get(productId);
+        if (row < 0) {
+            return false;
+        }
+        stocks[row] = stock;
+        return true;
+    }
+
+    /**
+     * @return false if the product is not stored
+     */
+    public boolean adjustStock(int productId, int delta) {
+        int row = rowById.get(productId);
+        if (row < 0) {
+            return false;
+        }
+        stocks[row] += delta;
+        return true;
+    }
+
+    /**
+     * Remove a product; the last row moves into its place
+     * @return false if the product is not stored
+     */
+    public boolean remove(int productId) {
+        int row = rowById.remove(productId);
+        if (row < 0) {
+            return false;
+        }
+        dropSku(row);
+        arenaGarbage += nameLengths[row];
+
+        int last = size - 1;
+        if (row != last) {
+            ids[row] = ids[last];
+            prices[row] = prices[last];
+            stocks[row] = stocks[last];
+            nameStarts[row] = nameStarts[last];
+            nameLengths[row] = nameLengths[last];
+            skuStarts[row] = skuStarts[last];
+            skuLengths[row] = skuLengths[last];
+            rowById.put(ids[row], row);
+        }
+        size--;
+        compactIfWasteful();
+        return true;
+    }
+
+    private void dropSku(int row) {
+        if (skuLengths[row] >= 0) {
+            rowBySku.remove(getSku(row), ids[row]);
+            arenaGarbage += skuLengths[row];
+            skuLengths[row] = -1;
+        }
+    }
+
+    // Arena
+
+    private void writeName(int row, String name) {
+        nameStarts[row] = write(name);
+        nameLengths[row] = arenaUsed - nameStarts[row];
+    }
+
+    // Appends the UTF-8 bytes and returns where they start; ASCII, the usual
+    // case, is copied char by char without a temporary array
+    private int write(String text) {
+        int length = text.length();
+        ensureArena(length);
+        int start = arenaUsed;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+                ensureArena(encoded.length);
+                System.arraycopy(encoded, 0, arena, start, encoded.length);
+                arenaUsed = start + encoded.length;
+                return start;
+            }
+            arena[start + i] = (byte) c;
+        }
+        arenaUsed = start + length;
+        return start;
+    }
+
+    private boolean spanEquals(int start, int length, String text) {
+        // UTF-8 never takes fewer bytes than chars
+        if (length < text.length()) {
+            return false;
+        }
+        if (length == text.length()) {
+            int i = 0;
+            while (i < length && text.charAt(i) < 0x80 && arena[start + i] == (byte) text.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+            if (text.charAt(i) < 0x80) {
+                return false;
+            }
+        }
+        // Non-ASCII text: byte lengths differ from char counts, so compare decoded
+        return new String(arena, start, length, StandardCharsets.UTF_8).equals(text);
+    }
+
+    private void ensureArena(int extra) {
+        if (arenaUsed + extra > arena.length) {
+            long wanted = Math.max((long) arena.length * 2, (long) arenaUsed + extra);
+            arena = Arrays.copyOf(arena, (int) Math.min(wanted, Integer.MAX_VALUE - 8));
+        }
+    }
+
+    // Renames and removals leave dead bytes behind; copy the live ones once
+    // they outweigh them
+    private void compactIfWasteful() {
+        if (arenaGarbage < MIN_GARBAGE_TO_COMPACT || arenaGarbage < arenaUsed / 2) {
+            return;
+        }
+        byte[] compacted = new byte[Math.max(MIN_ROWS, (arenaUsed - arenaGarbage) * 3 / 2)];
+        int used = 0;
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(arena, nameStarts[row], compacted, used, nameLengths[row]);
+            nameStarts[row] = used;
+            used += nameLengths[row];
+            if (skuLengths[row] >= 0) {
+                System.arraycopy(arena, skuStarts[row], compacted, used, skuLengths[row]);
+                skuStarts[row] = used;
+                used += skuLengths[row];
+            }
+        }
+        arena = compacted;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    private void ensureRows(int rows) {
+        if (rows <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(rows, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        stocks = Arrays.copyOf(stocks, capacity);
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        skuStarts = Arrays.copyOf(skuStarts, capacity);
+        skuLengths = Arrays.copyOf(skuLengths, capacity);
+    }
+}
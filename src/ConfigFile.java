@@ -0,0 +1,37 @@
+/**
+ * ConfigFile.java
+ * Locates and reads the settings file shared by the database, server and
+ * printing configuration
+ * Place this file in: src/ConfigFile.java
+ */
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+public final class ConfigFile {
+
+    private ConfigFile() {
+    }
+
+    /**
+     * Read config.properties from the classpath, or the file named by
+     * -Dbilling.config, which points a server or benchmark at another setup
+     * @return the settings, or null if there is no config file
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static Properties load() throws IOException {
+        String configFile = System.getProperty("billing.config");
+        try (InputStream input = configFile != null
+                ? new FileInputStream(configFile)
+                : ConfigFile.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (input == null) {
+                return null;
+            }
+            Properties props = new Properties();
+            props.load(input);
+            return props;
+        }
+    }
+}
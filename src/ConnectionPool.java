@@ -0,0 +1,220 @@
+/**
+ * ConnectionPool.java
+ * Bounded pool of validated MySQL connections shared by DatabaseManager
+ * Place this file in: src/ConnectionPool.java
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionPool {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int initialSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    // Connections used this recently are handed out without a validation ping
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    // Idle physical connections, most recently returned first
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    // One permit per connection that may be handed out
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for ConnectionPool
+     * @param url JDBC URL of the database
+     * @param user Database user
+     * @param password Database password
+     * @param initialSize Number of connections opened by warmUp()
+     * @param maxSize Maximum number of connections open at once
+     * @param borrowTimeoutMillis How long getConnection() waits for a free connection
+     * @param validationTimeoutSeconds Timeout used when checking an idle connection
+     */
+    public ConnectionPool(String url, String user, String password, int initialSize,
+                          int maxSize, long borrowTimeoutMillis, int validationTimeoutSeconds) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.initialSize = Math.max(0, Math.min(initialSize, this.maxSize));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Open the initial connections so the first requests don't pay for the handshake
+     * @throws SQLException if the database cannot be reached
+     */
+    public void warmUp() throws SQLException {
+        while (idle.size() < initialSize) {
+            idle.offerLast(new IdleConnection(openPhysical()));
+        }
+    }
+
+    /**
+     * Borrow a connection. Closing the returned connection hands it back to the pool.
+     * @return a validated connection
+     * @throws SQLException if no connection becomes free in time or the database is unreachable
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis +
+                                       "ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            IdleConnection entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isUsable(entry)) {
+                    return wrap(entry.connection);
+                }
+                // Stale connection (e.g. MySQL was restarted) - drop it and try the next one
+                closeQuietly(entry.connection);
+            }
+            return wrap(openPhysical());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a physical connection back after a borrower closed its handle
+     */
+    private void release(Connection physical) {
+        try {
+            if (closed || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+            // Never leak a half-finished transaction to the next borrower
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(physical));
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isUsable(IdleConnection entry) {
+        try {
+            if (entry.connection.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - entry.returnedAt < VALIDATION_BYPASS_MILLIS) {
+                return true;
+            }
+            return entry.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private Connection wrap(final Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released = false;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("close")) {
+                    if (!released) {
+                        released = true;
+                        release(physical);
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) {
+                    return released || physical.isClosed();
+                }
+                if (released) {
+                    throw new SQLException("Connection has already been returned to the pool");
+                }
+                try {
+                    return method.invoke(physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, handler);
+    }
+
+    private void closeQuietly(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            // Already broken, nothing more to do
+        }
+    }
+
+    /**
+     * @return number of connections currently checked out
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * @return number of idle connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Close every idle connection. Borrowed connections are closed when returned.
+     */
+    public void close() {
+        closed = true;
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closeQuietly(entry.connection);
+        }
+    }
+
+    private static class IdleConnection {
+        final Connection connection;
+        final long returnedAt;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.returnedAt = System.currentTimeMillis();
+        }
+    }
+}
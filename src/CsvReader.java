@@ -0,0 +1,129 @@
+/**
+ * CsvReader.java
+ * Streaming RFC 4180 CSV reader: one record in memory at a time
+ * Place this file in: src/CsvReader.java
+ *
+ * Handles quoted fields with embedded commas, doubled quotes and line
+ * breaks, and both LF and CRLF line endings. Blank lines are skipped.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+public class CsvReader implements Closeable {
+    private final Reader in;
+    private final char[] buffer = new char[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private long line = 1;
+    private long recordLine = 0;
+
+    // Reused between records; only the returned array is new
+    private final ArrayList<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * @param in Source; read through an internal buffer, so it need not be buffered
+     */
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next record's fields, or null at end of input
+     * @throws IOException if reading fails or a quoted field is never closed
+     */
+    public String[] next() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c;
+
+        // Skip blank lines between records
+        while ((c = read()) == '\r' || c == '\n') {
+            // Keep going
+        }
+        if (c < 0) {
+            return null;
+        }
+        recordLine = line;
+
+        boolean quoted = false;
+        boolean afterQuote = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Unclosed quote in record starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                afterQuote = false;
+            } else if (c == '\n' || c == '\r' || c < 0) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[fields.size()]);
+            } else if (c == '"' && field.length() == 0 && !afterQuote) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return line number on which the last record returned by next() started
+     */
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,8 +1,25 @@
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DatabaseManager {
 private String DB_HOST;
@@ -11,18 +28,111 @@ private String DB_NAME;
 private String DB_USER;
 private String DB_PASSWORD;
 private String DB_URL;
+private int POOL_INITIAL_SIZE;
+private int POOL_MAX_SIZE;
+private long POOL_TIMEOUT_MS;
+private int POOL_VALIDATION_TIMEOUT_SECONDS;
+private long PRODUCT_CACHE_TTL_SECONDS;
+private int STATEMENT_CACHE_SIZE;
+private boolean INVOICE_WRITE_BEHIND;
+private boolean WRITE_BEHIND_ALLOW_OVERSELL;
+private String JOURNAL_PATH;
+private int JOURNAL_SIZE_MB;
+private int JOURNAL_BATCH_SIZE;
+private long JOURNAL_RETRY_MS;
+private boolean OFFLINE_ENABLED;
+private String SNAPSHOT_PATH;
+private long OFFLINE_RETRY_MS;
+private int STOCK_LOCK_STRIPES;
+private int IMPORT_BATCH_SIZE;
+private int IMPORT_THREADS;
+private String REPLICA_URLS;
+private int REPLICA_POOL_SIZE;
+private long REPLICA_MAX_LAG_SECONDS;
+private long REPLICA_CHECK_MS;
+private long REPLICA_PIN_MS;
     
    
-    private Connection conn;
+    private ConnectionPool pool;
+    private ProductCache productCache;
+    // Null unless the journal is in use (write-behind or offline mode) and opened
+    private InvoiceWriteBehind writeBehind;
+    private final boolean savesInvoices;
+    // True while MySQL is unreachable and billing runs from the local catalog
+    private volatile boolean offline = false;
+    private volatile boolean closed = false;
+    private Thread reconnectThread;
+    // Null when stock.lock.stripes is 0
+    private StripedLocks stockLocks;
+    // Null unless db.replica.urls names at least one replica
+    private ReplicaRouter replicas;
+    // What report reads must see after this process's last invoice or rollup
+    // write: the primary's GTID set, or just the time when GTIDs are off
+    private final AtomicReference<WriteMark> lastWrite =
+        new AtomicReference<>(new WriteMark(0, null, 0));
+    private final AtomicLong writeTickets = new AtomicLong();
+    // Offline snapshots are written on their own thread; only the newest
+    // catalog waiting to be written is kept
+    private ExecutorService snapshotWriter;
+    private final AtomicReference<ProductRows> pendingSnapshot = new AtomicReference<>();
+    // Checksum of the catalog last written (snapshot writer thread only)
+    private long savedSnapshotChecksum = -1;
+    
+    // Longest the offline catalog is kept after reconnecting while queued invoices upload
+    private static final long OFFLINE_SYNC_WAIT_MS = 60000;
+    
+    // Invoice IDs per "invoice_id IN (...)" query when loading items
+    private static final int ITEM_FETCH_CHUNK_SIZE = 500;
+    
+    // Explicit projections read by index through the mappers below, so
+    // results never go through column-name lookups
+    private static final String PRODUCT_COLUMNS = "id, name, price, stock, sku";
+    private static final String INVOICE_COLUMNS =
+        "id, customer_name, customer_phone, date_time, subtotal, tax, grand_total";
+    private static final String ITEM_COLUMNS = "product_id, product_name, price, quantity";
+    private static final String BUCKET_COLUMNS = "invoice_count, items_sold, grand_total";
+    
+    private static final RowMapper<Product> PRODUCT_MAPPER = (rs, column) -> new Product(
+        rs.getInt(column),
+        rs.getString(column + 1),
+        Money.fromDecimal(rs.getBigDecimal(column + 2)),
+        rs.getInt(column + 3),
+        rs.getString(column + 4));
+    
+    // Invoices come back without items; callers fill them in
+    private static final RowMapper<Invoice> INVOICE_MAPPER = (rs, column) -> new Invoice(
+        rs.getInt(column),
+        rs.getString(column + 1),
+        rs.getString(column + 2),
+        rs.getTimestamp(column + 3).toLocalDateTime(),
+        Money.fromDecimal(rs.getBigDecimal(column + 4)),
+        Money.fromDecimal(rs.getBigDecimal(column + 5)),
+        Money.fromDecimal(rs.getBigDecimal(column + 6)),
+        new ArrayList<BillItem>());
+    
+    private static final RowMapper<BillItem> ITEM_MAPPER = (rs, column) -> new BillItem(
+        rs.getInt(column),
+        rs.getString(column + 1),
+        Money.fromDecimal(rs.getBigDecimal(column + 2)),
+        rs.getInt(column + 3));
+    
+    // Bucket start is read by the caller, since days and hours come back as different types
+    private static SalesBucket mapBucket(LocalDateTime start, ResultSet rs, int column)
+            throws SQLException {
+        return new SalesBucket(start, rs.getInt(column), rs.getLong(column + 1),
+            Money.fromDecimal(rs.getBigDecimal(column + 2)));
+    }
+    
+    // Latency and error counts per operation, published over JMX
+    private static OperationMetrics metrics(String operation) {
+        return OperationMetrics.get("DatabaseManager", operation);
+    }
     
     private void loadConfig() {
-    Properties props = new Properties();
+    try {
+        Properties props = ConfigFile.load();
 
-    try (InputStream input = getClass()
-            .getClassLoader()
-            .getResourceAsStream("config.properties")) {
-
-        if (input == null) {
+        if (props == null) {
             System.out.println("config.properties not found! Using default values.");
 
             DB_HOST = "localhost";
@@ -30,19 +140,68 @@ private String DB_URL;
             DB_NAME = "billing_system";
             DB_USER = "root";
             DB_PASSWORD = "";
+            POOL_INITIAL_SIZE = 2;
+            POOL_MAX_SIZE = 10;
+            POOL_TIMEOUT_MS = 5000;
+            POOL_VALIDATION_TIMEOUT_SECONDS = 2;
+            PRODUCT_CACHE_TTL_SECONDS = 60;
+            STATEMENT_CACHE_SIZE = 100;
+            INVOICE_WRITE_BEHIND = false;
+            WRITE_BEHIND_ALLOW_OVERSELL = false;
+            JOURNAL_PATH = "invoices.journal";
+            JOURNAL_SIZE_MB = 16;
+            JOURNAL_BATCH_SIZE = 50;
+            JOURNAL_RETRY_MS = 1000;
+            OFFLINE_ENABLED = true;
+            SNAPSHOT_PATH = "catalog.snapshot";
+            OFFLINE_RETRY_MS = 5000;
+            STOCK_LOCK_STRIPES = 64;
+            IMPORT_BATCH_SIZE = 1000;
+            IMPORT_THREADS = 0;
+            REPLICA_URLS = "";
+            REPLICA_POOL_SIZE = 4;
+            REPLICA_MAX_LAG_SECONDS = 5;
+            REPLICA_CHECK_MS = 2000;
+            REPLICA_PIN_MS = 5000;
 
         } else {
-            props.load(input);
-
             DB_HOST = props.getProperty("db.host");
             DB_PORT = props.getProperty("db.port");
             DB_NAME = props.getProperty("db.name");
             DB_USER = props.getProperty("db.user");
             DB_PASSWORD = props.getProperty("db.password");
+            POOL_INITIAL_SIZE = Integer.parseInt(props.getProperty("pool.initial.size", "2"));
+            POOL_MAX_SIZE = Integer.parseInt(props.getProperty("pool.max.size", "10"));
+            POOL_TIMEOUT_MS = Long.parseLong(props.getProperty("pool.timeout.ms", "5000"));
+            POOL_VALIDATION_TIMEOUT_SECONDS = Integer.parseInt(
+                props.getProperty("pool.validation.timeout.seconds", "2"));
+            PRODUCT_CACHE_TTL_SECONDS = Long.parseLong(
+                props.getProperty("cache.products.ttl.seconds", "60"));
+            STATEMENT_CACHE_SIZE = Integer.parseInt(
+                props.getProperty("db.statement.cache.size", "100"));
+            INVOICE_WRITE_BEHIND = Boolean.parseBoolean(
+                props.getProperty("invoice.writeBehind", "false"));
+            WRITE_BEHIND_ALLOW_OVERSELL = Boolean.parseBoolean(
+                props.getProperty("invoice.writeBehind.allowOversell", "false"));
+            JOURNAL_PATH = props.getProperty("journal.path", "invoices.journal");
+            JOURNAL_SIZE_MB = Integer.parseInt(props.getProperty("journal.size.mb", "16"));
+            JOURNAL_BATCH_SIZE = Integer.parseInt(props.getProperty("journal.batch.size", "50"));
+            JOURNAL_RETRY_MS = Long.parseLong(props.getProperty("journal.retry.ms", "1000"));
+            OFFLINE_ENABLED = Boolean.parseBoolean(props.getProperty("offline.enabled", "true"));
+            SNAPSHOT_PATH = props.getProperty("offline.snapshot.path", "catalog.snapshot");
+            OFFLINE_RETRY_MS = Long.parseLong(props.getProperty("offline.retry.ms", "5000"));
+            STOCK_LOCK_STRIPES = Integer.parseInt(props.getProperty("stock.lock.stripes", "64"));
+            IMPORT_BATCH_SIZE = Integer.parseInt(props.getProperty("import.batch.size", "1000"));
+            IMPORT_THREADS = Integer.parseInt(props.getProperty("import.threads", "0"));
+            REPLICA_URLS = props.getProperty("db.replica.urls", "").trim();
+            REPLICA_POOL_SIZE = Integer.parseInt(props.getProperty("db.replica.pool.size", "4"));
+            REPLICA_MAX_LAG_SECONDS = Long.parseLong(
+                props.getProperty("db.replica.max.lag.seconds", "5"));
+            REPLICA_CHECK_MS = Long.parseLong(props.getProperty("db.replica.check.ms", "2000"));
+            REPLICA_PIN_MS = Long.parseLong(props.getProperty("db.replica.pin.ms", "5000"));
         }
 
-        DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME +
-                 "?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true";
+        DB_URL = buildUrl(DB_HOST, DB_PORT);
 
     } catch (Exception e) {
         System.err.println("Failed to load config.properties");
@@ -50,25 +209,75 @@ private String DB_URL;
     }
 }
 
+    private String buildUrl(String host, String port) {
+        // rewriteBatchedStatements lets executeBatch() send one multi-row INSERT
+        String url = "jdbc:mysql://" + host + ":" + port + "/" + DB_NAME +
+                     "?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true" +
+                     "&rewriteBatchedStatements=true";
+        
+        // Each pooled connection keeps an LRU of server-side prepared statements:
+        // close() returns a statement to the cache, eviction deallocates it on
+        // the server, and a repeated query skips parsing on both ends
+        if (STATEMENT_CACHE_SIZE > 0) {
+            url += "&useServerPrepStmts=true&cachePrepStmts=true" +
+                   "&prepStmtCacheSize=" + STATEMENT_CACHE_SIZE +
+                   "&prepStmtCacheSqlLimit=4096";
+        }
+        return url;
+    }
+    
+    /**
+     * Turn db.replica.urls into JDBC URLs. Entries are host[:port], which
+     * get the primary's database name and settings, or full jdbc: URLs.
+     */
+    private List<String> replicaUrls() {
+        ArrayList<String> urls = new ArrayList<>();
+        for (String entry : REPLICA_URLS.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            if (entry.startsWith("jdbc:")) {
+                urls.add(entry);
+            } else {
+                int colon = entry.lastIndexOf(':');
+                urls.add(colon < 0 ? buildUrl(entry, "3306")
+                                   : buildUrl(entry.substring(0, colon), entry.substring(colon + 1)));
+            }
+        }
+        return urls;
+    }
+    
     public DatabaseManager() {
+    this(true);
+}
+    
+    /**
+     * Constructor for DatabaseManager
+     * @param savesInvoices false for processes that only read or maintain the
+     *                      database (reports, exports, imports): they leave the
+     *                      invoice journal and its replay to the till that owns it
+     */
+    public DatabaseManager(boolean savesInvoices) {
+    this.savesInvoices = savesInvoices;
     loadConfig();
+    productCache = new ProductCache(PRODUCT_CACHE_TTL_SECONDS);
+    stockLocks = STOCK_LOCK_STRIPES > 0 ? new StripedLocks(STOCK_LOCK_STRIPES) : null;
     initializeDatabase();
 }
     
     private void initializeDatabase() {
+        // The pool reconnects on demand, so it exists even if MySQL is down right now
+        pool = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD, POOL_INITIAL_SIZE,
+            POOL_MAX_SIZE, POOL_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_SECONDS);
+        
+        boolean connected = false;
         try {
             // Load MySQL JDBC driver
             Class.forName("com.mysql.cj.jdbc.Driver");
             
-            // First, create database if it doesn't exist
-            createDatabaseIfNotExists();
-            
-            // Connect to the database
-            conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            System.out.println("Connected to MySQL database successfully!");
-            
-            createTables();
-            insertSampleData();
+            connectDatabase();
+            connected = true;
             
         } catch (ClassNotFoundException e) {
             System.err.println("MySQL JDBC driver not found!");
@@ -82,6 +291,248 @@ private String DB_URL;
             System.err.println("3. MySQL is accessible on " + DB_HOST + ":" + DB_PORT);
             e.printStackTrace();
         }
+        
+        // Queued checkouts reach MySQL without the "stock >= ?" check, so two
+        // tills could both sell the last unit; only run that way when asked to
+        if (savesInvoices && INVOICE_WRITE_BEHIND) {
+            if (WRITE_BEHIND_ALLOW_OVERSELL) {
+                System.out.println("Invoice write-behind is on: checkouts are queued without " +
+                                   "checking stock and may oversell.");
+            } else {
+                INVOICE_WRITE_BEHIND = false;
+                System.err.println("invoice.writeBehind ignored: queued checkouts skip the stock check. " +
+                                   "Saving checkouts directly; set invoice.writeBehind.allowOversell=true " +
+                                   "to queue them anyway.");
+            }
+        }
+        
+        // Opened even when MySQL is down; journaled invoices wait for it to come back
+        if (savesInvoices && (INVOICE_WRITE_BEHIND || OFFLINE_ENABLED)) {
+            openInvoiceJournal();
+        }
+        if (!connected && OFFLINE_ENABLED) {
+            goOffline();
+        }
+        if (writeBehind != null) {
+            writeBehind.start();
+        }
+        
+        List<String> replicaUrls = replicaUrls();
+        if (!replicaUrls.isEmpty()) {
+            replicas = new ReplicaRouter(replicaUrls, DB_USER, DB_PASSWORD, REPLICA_POOL_SIZE,
+                POOL_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_SECONDS, REPLICA_MAX_LAG_SECONDS,
+                REPLICA_CHECK_MS);
+            replicas.start();
+        }
+    }
+    
+    /**
+     * Connection for a read-only report query. Every report read goes the
+     * same way, so totals and the invoice list shown beside them agree: to
+     * a healthy replica that has applied this process's last write, or to
+     * the primary. With GTIDs off on the primary nothing can prove a replica
+     * has a write, so reads stay on the primary for db.replica.pin.ms after one.
+     */
+    private Connection readConnection() throws SQLException {
+        if (replicas != null) {
+            WriteMark mark = lastWrite.get();
+            String gtids = mark.gtids;
+            if (gtids != null || System.currentTimeMillis() - mark.millis >= REPLICA_PIN_MS) {
+                Connection conn = replicas.getConnection(gtids);
+                if (conn != null) {
+                    return conn;
+                }
+            }
+        }
+        return pool.getConnection();
+    }
+    
+    /**
+     * Note a write just committed on conn for readConnection(); call it once
+     * no stock stripes are held. A ticket is taken after the commit and
+     * before gtid_executed is read, so a set read under a later ticket
+     * contains this write, and an older ticket never replaces a newer one.
+     */
+    private void recordWrite(Connection conn) {
+        if (replicas == null) {
+            return;
+        }
+        long ticket = writeTickets.incrementAndGet();
+        String gtids = null;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT @@GLOBAL.gtid_executed")) {
+            String executed = rs.next() ? rs.getString(1) : null;
+            gtids = executed == null || executed.isEmpty() ? null : executed;
+        } catch (SQLException e) {
+            // Falls back to pinning reads to the primary for a while
+            e.printStackTrace();
+        }
+        WriteMark mark = new WriteMark(ticket, gtids, System.currentTimeMillis());
+        WriteMark current;
+        do {
+            current = lastWrite.get();
+            if (current.ticket > ticket) {
+                return;
+            }
+        } while (!lastWrite.compareAndSet(current, mark));
+    }
+    
+    /**
+     * The last write recorded for readConnection()
+     */
+    private static final class WriteMark {
+        final long ticket;
+        // Null when GTIDs are off or could not be read
+        final String gtids;
+        final long millis;
+        
+        WriteMark(long ticket, String gtids, long millis) {
+            this.ticket = ticket;
+            this.gtids = gtids;
+            this.millis = millis;
+        }
+    }
+    
+    /**
+     * @return one line per read replica with its lag, or an empty list if none are configured
+     */
+    public List<String> getReplicaStatus() {
+        return replicas == null ? Collections.<String>emptyList() : replicas.getStatus();
+    }
+    
+    /**
+     * Create the database and schema if needed and open the pooled connections.
+     * Safe to call again after an outage.
+     * @throws SQLException if MySQL cannot be reached or the schema cannot be migrated
+     */
+    private void connectDatabase() throws SQLException {
+        // First, create database if it doesn't exist
+        createDatabaseIfNotExists();
+        
+        // Open the initial pooled connections
+        pool.warmUp();
+        System.out.println("Connected to MySQL database successfully!");
+        
+        migrateSchema();
+        insertSampleData();
+        
+        // Deployments upgraded from before the rollups existed start with empty ones
+        if (getTotalInvoicesCount() == 0 && hasInvoices()) {
+            System.out.println("Building sales rollups from invoice history...");
+            rebuildSalesRollups();
+        }
+    }
+    
+    /**
+     * Switch to billing from the local catalog while MySQL is unreachable.
+     * Invoices go to the journal and a background thread keeps trying to reconnect.
+     */
+    private synchronized void goOffline() {
+        if (offline || closed) {
+            return;
+        }
+        offline = true;
+        
+        // Keep whatever the cache already holds - it is newer than the snapshot
+        productCache.setPinned(true);
+        if (!productCache.isFresh()) {
+            CatalogStore snapshot = CatalogSnapshot.load(SNAPSHOT_PATH);
+            if (snapshot == null) {
+                System.err.println("No catalog snapshot found; products are unavailable until MySQL is back!");
+                snapshot = new CatalogStore(0);
+            }
+            productCache.replaceAll(snapshot, productCache.beginLoad());
+            // Invoices still queued from before were never reflected in the snapshot's stock
+            if (writeBehind != null) {
+                adjustCachedStock(quantitiesByProduct(writeBehind.getPendingInvoices()));
+            }
+        }
+        System.err.println("MySQL is unreachable - working offline from the local catalog.");
+        
+        reconnectThread = new Thread(new Runnable() {
+            public void run() {
+                reconnectLoop();
+            }
+        }, "db-reconnect");
+        reconnectThread.setDaemon(true);
+        reconnectThread.start();
+    }
+    
+    private void reconnectLoop() {
+        try {
+            while (true) {
+                Thread.sleep(OFFLINE_RETRY_MS);
+                try {
+                    connectDatabase();
+                    break;
+                } catch (SQLException e) {
+                    // Still down
+                }
+            }
+            
+            // Queued invoices reach MySQL as a few large batches, each taking its
+            // stock off with relative updates, so other terminals' sales are kept
+            System.out.println("MySQL is back - uploading invoices queued while offline...");
+            offline = false;
+            long deadline = System.currentTimeMillis() + OFFLINE_SYNC_WAIT_MS;
+            while (writeBehind != null && writeBehind.getPendingCount() > 0 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            
+            // Stock from MySQL now includes the offline sales; reload the catalog from there
+            synchronized (this) {
+                if (!offline) {
+                    productCache.setPinned(false);
+                    System.out.println("Back online.");
+                }
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+    }
+    
+    /**
+     * @return true while billing runs from the local catalog and journal
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+    
+    /**
+     * @return invoices stored locally that are not in MySQL yet
+     */
+    public int getQueuedInvoiceCount() {
+        return writeBehind == null ? 0 : writeBehind.getPendingCount();
+    }
+    
+    /**
+     * @return journaled invoices MySQL refused, waiting in the dead-letter file
+     */
+    public int getRejectedInvoiceCount() {
+        return writeBehind == null ? 0 : writeBehind.getDeadLetterCount();
+    }
+    
+    private boolean isDatabaseReachable() {
+        try (Connection conn = pool.getConnection()) {
+            return conn.isValid(POOL_VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    private void openInvoiceJournal() {
+        try {
+            InvoiceJournal journal = new InvoiceJournal(JOURNAL_PATH, JOURNAL_SIZE_MB * 1024 * 1024);
+            if (journal.getPendingCount() > 0) {
+                System.out.println("Replaying " + journal.getPendingCount() + " journaled invoice(s)...");
+            }
+            writeBehind = new InvoiceWriteBehind(this, journal, JOURNAL_BATCH_SIZE, JOURNAL_RETRY_MS,
+                JOURNAL_PATH + ".rejected.jsonl");
+        } catch (IOException e) {
+            System.err.println("Could not open invoice journal; saving invoices directly!");
+            e.printStackTrace();
+        }
     }
     
     private void createDatabaseIfNotExists() throws SQLException {
@@ -97,87 +548,54 @@ private String DB_URL;
         }
     }
     
-    private void createTables() {
-        String createProductsTable = 
-            "CREATE TABLE IF NOT EXISTS products (" +
-            "id INT AUTO_INCREMENT PRIMARY KEY, " +
-            "name VARCHAR(255) NOT NULL, " +
-            "price DECIMAL(10, 2) NOT NULL, " +
-            "stock INT NOT NULL, " +
-            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-            "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-        
-        String createInvoicesTable = 
-            "CREATE TABLE IF NOT EXISTS invoices (" +
-            "id INT AUTO_INCREMENT PRIMARY KEY, " +
-            "customer_name VARCHAR(255) NOT NULL, " +
-            "customer_phone VARCHAR(20), " +
-            "date_time DATETIME NOT NULL, " +
-            "subtotal DECIMAL(10, 2) NOT NULL, " +
-            "tax DECIMAL(10, 2) NOT NULL, " +
-            "grand_total DECIMAL(10, 2) NOT NULL, " +
-            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-        
-        String createInvoiceItemsTable = 
-            "CREATE TABLE IF NOT EXISTS invoice_items (" +
-            "id INT AUTO_INCREMENT PRIMARY KEY, " +
-            "invoice_id INT NOT NULL, " +
-            "product_id INT NOT NULL, " +
-            "product_name VARCHAR(255) NOT NULL, " +
-            "price DECIMAL(10, 2) NOT NULL, " +
-            "quantity INT NOT NULL, " +
-            "total DECIMAL(10, 2) NOT NULL, " +
-            "FOREIGN KEY (invoice_id) REFERENCES invoices(id) ON DELETE CASCADE, " +
-            "INDEX idx_invoice_id (invoice_id)" +
-            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-        
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute(createProductsTable);
-            stmt.execute(createInvoicesTable);
-            stmt.execute(createInvoiceItemsTable);
-            System.out.println("Tables created successfully!");
+    private void migrateSchema() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator();
+        try (Connection conn = pool.getConnection()) {
+            int applied = migrator.migrate(conn);
+            System.out.println("Schema is at version " + migrator.getLatestVersion() +
+                               " (" + applied + " migration(s) applied)");
         } catch (SQLException e) {
-            System.err.println("Error creating tables!");
-            e.printStackTrace();
+            // Running against a half-migrated schema fails later and less clearly
+            System.err.println("Error migrating schema! Not using the database until it succeeds.");
+            throw e;
         }
     }
     
     private void insertSampleData() {
-        try {
+        String insertSql = "INSERT INTO products (name, price, stock) VALUES (?, ?, ?)";
+        
+        try (Connection conn = pool.getConnection();
+             Statement checkStmt = conn.createStatement();
+             PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
             // Check if products already exist
-            Statement checkStmt = conn.createStatement();
             ResultSet rs = checkStmt.executeQuery("SELECT COUNT(*) FROM products");
             if (rs.next() && rs.getInt(1) > 0) {
                 System.out.println("Sample data already exists.");
                 return; // Sample data already exists
             }
             
-            String insertSql = "INSERT INTO products (name, price, stock) VALUES (?, ?, ?)";
-            PreparedStatement pstmt = conn.prepareStatement(insertSql);
-            
+            // Prices in minor units (see Money)
             Object[][] sampleProducts = {
-                {"Laptop", 899.99, 15},
-                {"Wireless Mouse", 29.99, 50},
-                {"Keyboard", 49.99, 35},
-                {"Monitor 24\"", 199.99, 20},
-                {"USB Cable", 9.99, 100},
-                {"Headphones", 79.99, 40},
-                {"Webcam", 59.99, 25},
-                {"External SSD 1TB", 129.99, 30},
-                {"Phone Charger", 19.99, 75},
-                {"Laptop Stand", 39.99, 45},
-                {"Wireless Keyboard", 69.99, 30},
-                {"HDMI Cable", 14.99, 80},
-                {"USB Hub", 24.99, 55},
-                {"Desk Lamp", 34.99, 40},
-                {"Ergonomic Mouse Pad", 19.99, 60}
+                {"Laptop", 89999L, 15},
+                {"Wireless Mouse", 2999L, 50},
+                {"Keyboard", 4999L, 35},
+                {"Monitor 24\"", 19999L, 20},
+                {"USB Cable", 999L, 100},
+                {"Headphones", 7999L, 40},
+                {"Webcam", 5999L, 25},
+                {"External SSD 1TB", 12999L, 30},
+                {"Phone Charger", 1999L, 75},
+                {"Laptop Stand", 3999L, 45},
+                {"Wireless Keyboard", 6999L, 30},
+                {"HDMI Cable", 1499L, 80},
+                {"USB Hub", 2499L, 55},
+                {"Desk Lamp", 3499L, 40},
+                {"Ergonomic Mouse Pad", 1999L, 60}
             };
             
             for (Object[] product : sampleProducts) {
                 pstmt.setString(1, (String) product[0]);
-                pstmt.setDouble(2, (Double) product[1]);
+                pstmt.setBigDecimal(2, Money.toDecimal((Long) product[1]));
                 pstmt.setInt(3, (Integer) product[2]);
                 pstmt.executeUpdate();
             }
@@ -191,316 +609,1497 @@ private String DB_URL;
     }
     
     public ArrayList<Product> getAllProducts() {
-        ArrayList<Product> products = new ArrayList<>();
-        String sql = "SELECT * FROM products ORDER BY name";
+        OperationMetrics metrics = metrics("getAllProducts");
+        long started = metrics.begin();
+        try {
+            ArrayList<Product> cached = productCache.getAll();
+            if (cached != null) {
+                return cached;
+            }
         
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            CatalogStore products = loadCatalog();
+            if (products == null) {
+                metrics.failed();
+                ArrayList<Product> offlineCatalog = isOffline() ? productCache.getAll() : null;
+                return offlineCatalog != null ? offlineCatalog : new ArrayList<Product>();
+            }
+            // Once installed the store belongs to the cache; read it through the cache
+            cached = productCache.getAll();
+            return cached != null ? cached : products.toList();
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * Read the whole products table into a new store, save it as the offline
+     * snapshot and install it in the cache. Rows go straight into columns,
+     * so a large catalog never exists as one Product object per row.
+     * @return the store, or null if the query failed (and perhaps went offline)
+     */
+    private CatalogStore loadCatalog() {
+        String sql = "SELECT " + PRODUCT_COLUMNS + " FROM products ORDER BY name";
+        long loadToken = productCache.beginLoad();
+        CatalogStore products = new CatalogStore(productCache.size());
+        
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
             
             while (rs.next()) {
-                products.add(new Product(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getDouble("price"),
-                    rs.getInt("stock")
-                ));
+                products.put(rs.getInt(1), rs.getString(2), Money.fromDecimal(rs.getBigDecimal(3)),
+                             rs.getInt(4), rs.getString(5));
             }
         } catch (SQLException e) {
+            if (OFFLINE_ENABLED && !isDatabaseReachable()) {
+                goOffline();
+                return null;
+            }
             System.err.println("Error fetching products!");
             e.printStackTrace();
+            return null;
         }
         
+        // Copied before the cache owns the store, while nothing else can change it
+        if (OFFLINE_ENABLED) {
+            saveSnapshot(products.rows());
+        }
+        productCache.replaceAll(products, loadToken);
         return products;
     }
     
-    public ArrayList<Product> searchProducts(String query) {
-        ArrayList<Product> products = new ArrayList<>();
-        String sql = "SELECT * FROM products WHERE name LIKE ? ORDER BY name";
+    /**
+     * Write the offline snapshot in the background, and only if the catalog
+     * differs from the one last written; most TTL reloads find it unchanged
+     */
+    private synchronized void saveSnapshot(ProductRows products) {
+        // A write already queued will pick up this newer catalog instead
+        if (pendingSnapshot.getAndSet(products) != null || closed) {
+            return;
+        }
+        if (snapshotWriter == null) {
+            snapshotWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "catalog-snapshot-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        snapshotWriter.execute(new Runnable() {
+            public void run() {
+                ProductRows latest = pendingSnapshot.getAndSet(null);
+                long checksum = latest.checksum();
+                if (checksum == savedSnapshotChecksum) {
+                    return;
+                }
+                try {
+                    CatalogSnapshot.save(SNAPSHOT_PATH, latest);
+                    savedSnapshotChecksum = checksum;
+                } catch (IOException e) {
+                    System.err.println("Could not save catalog snapshot!");
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+    
+    /**
+     * @param productId Product ID
+     * @return the product, from the cache when it is fresh, or null if there is none
+     */
+    public Product getProduct(int productId) {
+        OperationMetrics metrics = metrics("getProduct");
+        long started = metrics.begin();
+        try {
+            Product cached = productCache.get(productId);
+            // Unknown or deleted IDs on a fresh catalog must not trigger a reload per lookup
+            if (cached == null && productCache.isEnabled() && !productCache.isFresh()) {
+                loadCatalog();
+                cached = productCache.get(productId);
+            }
+            if (cached != null || productCache.isFresh()) {
+                return cached;
+            }
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, "%" + query + "%");
-            ResultSet rs = pstmt.executeQuery();
+            String sql = "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE id = ?";
+        
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, productId);
             
-            while (rs.next()) {
-                products.add(new Product(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getDouble("price"),
-                    rs.getInt("stock")
-                ));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? PRODUCT_MAPPER.map(rs, 1) : null;
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching product!");
+                e.printStackTrace();
+                return null;
             }
-        } catch (SQLException e) {
-            System.err.println("Error searching products!");
-            e.printStackTrace();
+        } finally {
+            metrics.end(started);
         }
+    }
+    
+    /**
+     * Look up a scanned barcode. Served from the product cache's SKU index,
+     * so scans cost no database round trip while the catalog is fresh; an
+     * expired catalog is reloaded once, and only with caching disabled does
+     * each scan query MySQL.
+     * @param sku Barcode or SKU, compared exactly
+     * @return the product, or null if no product has this SKU
+     */
+    public Product getProductBySku(String sku) {
+        OperationMetrics metrics = metrics("getProductBySku");
+        long started = metrics.begin();
+        try {
+            Product cached = productCache.getBySku(sku);
+            // Unknown codes on a fresh catalog must not trigger a reload per scan
+            if (cached == null && productCache.isEnabled() && !productCache.isFresh()) {
+                loadCatalog();
+                cached = productCache.getBySku(sku);
+            }
+            if (cached != null || productCache.isFresh()) {
+                return cached;
+            }
         
-        return products;
+            String sql = "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE sku = ?";
+        
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, sku);
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? PRODUCT_MAPPER.map(rs, 1) : null;
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching product by SKU!");
+                e.printStackTrace();
+                return null;
+            }
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    public ArrayList<Product> searchProducts(String query) {
+        OperationMetrics metrics = metrics("searchProducts");
+        long started = metrics.begin();
+        try {
+            // Answered from the in-memory name index whenever the cache is on
+            ArrayList<Product> cached = productCache.search(query);
+            if (cached == null && productCache.isEnabled()) {
+                loadCatalog();
+                cached = productCache.search(query);
+            }
+            if (cached != null) {
+                return cached;
+            }
+        
+            ArrayList<Product> products = new ArrayList<>();
+            String sql = "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE name LIKE ? ORDER BY name";
+        
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, "%" + query + "%");
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(PRODUCT_MAPPER.map(rs, 1));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error searching products!");
+                e.printStackTrace();
+            }
+        
+            return products;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * getAllProducts() as row-indexed columns for the product table. A fresh
+     * cache answers without building a Product per row; otherwise the list
+     * from getAllProducts() is converted.
+     */
+    public ProductRows getProductRows() {
+        OperationMetrics metrics = metrics("getProductRows");
+        long started = metrics.begin();
+        try {
+            ProductRows cached = productCache.getAllRows();
+            return cached != null ? cached : ProductRows.of(getAllProducts());
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * searchProducts() as row-indexed columns; see getProductRows()
+     */
+    public ProductRows searchProductRows(String query) {
+        OperationMetrics metrics = metrics("searchProductRows");
+        long started = metrics.begin();
+        try {
+            ProductRows cached = productCache.searchRows(query);
+            return cached != null ? cached : ProductRows.of(searchProducts(query));
+        } finally {
+            metrics.end(started);
+        }
     }
     
     public boolean addProduct(Product product) {
-        String sql = "INSERT INTO products (name, price, stock) VALUES (?, ?, ?)";
+        OperationMetrics metrics = metrics("addProduct");
+        long started = metrics.begin();
+        try {
+            String sql = "INSERT INTO products (name, price, stock, sku) VALUES (?, ?, ?, ?)";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, product.getName());
-            pstmt.setDouble(2, product.getPrice());
-            pstmt.setInt(3, product.getStock());
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error adding product!");
-            e.printStackTrace();
-            return false;
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql, 
+                     Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, product.getName());
+                pstmt.setBigDecimal(2, Money.toDecimal(product.getPriceMinor()));
+                pstmt.setInt(3, product.getStock());
+                pstmt.setString(4, product.getSku());
+                pstmt.executeUpdate();
+            
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        product.setId(rs.getInt(1));
+                        productCache.put(product);
+                    } else {
+                        productCache.invalidate();
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error adding product!");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            metrics.end(started);
         }
     }
     
-    public boolean updateProduct(int productId, String name, double price, int stock) {
-        String sql = "UPDATE products SET name = ?, price = ?, stock = ? WHERE id = ?";
+    public boolean updateProduct(int productId, String name, long priceMinor, int stock) {
+        OperationMetrics metrics = metrics("updateProduct");
+        long started = metrics.begin();
+        try {
+            String sql = "UPDATE products SET name = ?, price = ?, stock = ? WHERE id = ?";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-            pstmt.setDouble(2, price);
-            pstmt.setInt(3, stock);
-            pstmt.setInt(4, productId);
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error updating product!");
-            e.printStackTrace();
-            return false;
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, name);
+                pstmt.setBigDecimal(2, Money.toDecimal(priceMinor));
+                pstmt.setInt(3, stock);
+                pstmt.setInt(4, productId);
+                pstmt.executeUpdate();
+                // The SKU is not changed here; keep the cached one
+                Product current = productCache.get(productId);
+                productCache.put(new Product(productId, name, priceMinor, stock,
+                    current != null ? current.getSku() : null));
+                return true;
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error updating product!");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            metrics.end(started);
         }
     }
     
     public boolean deleteProduct(int productId) {
-        String sql = "DELETE FROM products WHERE id = ?";
+        OperationMetrics metrics = metrics("deleteProduct");
+        long started = metrics.begin();
+        try {
+            String sql = "DELETE FROM products WHERE id = ?";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, productId);
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error deleting product!");
-            e.printStackTrace();
-            return false;
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, productId);
+                pstmt.executeUpdate();
+                productCache.remove(productId);
+                return true;
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error deleting product!");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            metrics.end(started);
         }
     }
     
     public boolean updateProductStock(int productId, int newStock) {
-        String sql = "UPDATE products SET stock = ? WHERE id = ?";
+        OperationMetrics metrics = metrics("updateProductStock");
+        long started = metrics.begin();
+        try {
+            String sql = "UPDATE products SET stock = ? WHERE id = ?";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, newStock);
-            pstmt.setInt(2, productId);
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error updating stock!");
-            e.printStackTrace();
-            return false;
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, newStock);
+                pstmt.setInt(2, productId);
+                pstmt.executeUpdate();
+                productCache.setStock(productId, newStock);
+                return true;
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error updating stock!");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            metrics.end(started);
         }
     }
     
-    public boolean saveInvoice(Invoice invoice) {
-        String insertInvoice = 
-            "INSERT INTO invoices (customer_name, customer_phone, date_time, " +
-            "subtotal, tax, grand_total) VALUES (?, ?, ?, ?, ?, ?)";
+    /**
+     * Save a completed checkout. In write-behind mode, and while offline, the
+     * invoice is durable, and this returns, as soon as it is in the local
+     * journal; its ID stays 0 until the background flusher has committed it.
+     * Direct saves are refused if any product has less stock than was sold;
+     * queued ones are not, which is why write-behind has to be allowed to oversell.
+     * @param invoice Invoice to save
+     * @return the outcome, listing the short products if stock ran out
+     */
+    public SaveResult saveInvoice(Invoice invoice) {
+        OperationMetrics metrics = metrics("saveInvoice");
+        long started = metrics.begin();
+        try {
+            if (invoice.getClientRef() == null) {
+                invoice.setClientRef(UUID.randomUUID().toString());
+            }
         
-        String insertItem = 
-            "INSERT INTO invoice_items (invoice_id, product_id, product_name, " +
-            "price, quantity, total) VALUES (?, ?, ?, ?, ?, ?)";
+            if (writeBehind != null && (INVOICE_WRITE_BEHIND || offline) && journalInvoice(invoice)) {
+                return SaveResult.queued();
+            }
         
-        String updateStock = "UPDATE products SET stock = stock - ? WHERE id = ?";
+            SaveResult result = commitInvoices(Collections.singletonList(invoice), false);
         
+            // MySQL went away mid-shift - keep billing and queue the invoice locally
+            if (result.getStatus() == SaveResult.Status.FAILED && writeBehind != null && 
+                    OFFLINE_ENABLED && !isDatabaseReachable()) {
+                goOffline();
+                result = journalInvoice(invoice) ? SaveResult.queued() : result;
+            }
+            if (result.getStatus() == SaveResult.Status.FAILED) {
+                metrics.failed();
+            }
+            return result;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * @return true if the error is about the data itself (constraint
+     *         violations, values that don't fit), so the same statement
+     *         will fail again however often it is retried
+     */
+    private static boolean isPermanent(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException || t instanceof SQLDataException
+                    || t instanceof DataTruncation) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                // SQLSTATE class 22 is data exceptions, 23 integrity violations
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private boolean journalInvoice(Invoice invoice) {
+        if (!writeBehind.append(invoice)) {
+            return false;
+        }
+        adjustCachedStock(quantitiesByProduct(Collections.singletonList(invoice)));
+        return true;
+    }
+    
+    /**
+     * Write invoices to MySQL in a single transaction, so a batch costs one
+     * commit. Invoices whose client reference is already stored are skipped
+     * and given the stored invoice's ID, which makes replaying a journal batch
+     * after a crash, or retrying a save whose outcome was lost, safe.
+     * @param invoices Invoices to write; IDs are set on the ones written
+     * @param fromJournal true for invoices already acknowledged from the journal:
+     *                    the goods have left the store, so stock is taken off
+     *                    even if it goes negative, and the cache was adjusted already
+     * @return SAVED, OUT_OF_STOCK (nothing written) or FAILED
+     */
+    SaveResult commitInvoices(List<Invoice> invoices, boolean fromJournal) {
+        OperationMetrics metrics = metrics("commitInvoices");
+        long started = metrics.begin();
         try {
-            conn.setAutoCommit(false);
+            String insertInvoice = 
+                "INSERT INTO invoices (customer_name, customer_phone, date_time, " +
+                "subtotal, tax, grand_total, client_ref) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        
+            // Batched; the driver rewrites these into one multi-row INSERT
+            String insertItem = 
+                "INSERT INTO invoice_items (invoice_id, product_id, product_name, " +
+                "price, quantity, total) VALUES (?, ?, ?, ?, ?, ?)";
+        
+            // The stock check and the decrement are one statement, so two terminals
+            // can never both sell the last unit
+            String updateStock = fromJournal
+                ? "UPDATE products SET stock = stock - ? WHERE id = ?"
+                : "UPDATE products SET stock = stock - ? WHERE id = ? AND stock >= ?";
+        
+            // Each save runs its transaction on its own pooled connection,
+            // so other terminals' searches never wait behind it
+            Connection conn = null;
+            int[] heldStripes = null;
+            boolean committed = false;
+            try {
+                conn = pool.getConnection();
+                conn.setAutoCommit(false);
             
-            // Insert invoice
-            PreparedStatement invoiceStmt = conn.prepareStatement(insertInvoice, 
-                Statement.RETURN_GENERATED_KEYS);
-            invoiceStmt.setString(1, invoice.getCustomerName());
-            invoiceStmt.setString(2, invoice.getCustomerPhone());
+                HashMap<String, Integer> stored = findStoredClientRefs(conn, invoices);
+                ArrayList<Invoice> pending = new ArrayList<>(invoices.size());
+                for (Invoice invoice : invoices) {
+                    if (!stored.containsKey(invoice.getClientRef())) {
+                        pending.add(invoice);
+                    }
+                }
+                int[] invoiceIds = new int[pending.size()];
             
-            // Convert LocalDateTime to SQL Timestamp
-            Timestamp timestamp = Timestamp.valueOf(invoice.getDateTime());
-            invoiceStmt.setTimestamp(3, timestamp);
+                // Stock goes first so a short product fails the save before anything
+                // is written. One decrement per product, applied in id order so
+                // concurrent saves always take the row locks in the same order.
+                TreeMap<Integer, Integer> quantities = quantitiesByProduct(pending);
+                if (stockLocks != null) {
+                    heldStripes = stockLocks.lock(quantities.keySet());
+                }
+                try (PreparedStatement stockStmt = conn.prepareStatement(updateStock)) {
+                    for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                        stockStmt.setInt(1, entry.getValue());
+                        stockStmt.setInt(2, entry.getKey());
+                        if (!fromJournal) {
+                            stockStmt.setInt(3, entry.getValue());
+                        }
+                        stockStmt.addBatch();
+                    }
+                    int[] counts = stockStmt.executeBatch();
+                
+                    ArrayList<Integer> shortProducts = new ArrayList<>();
+                    int index = 0;
+                    for (Integer productId : quantities.keySet()) {
+                        if (counts[index++] == 0) {
+                            shortProducts.add(productId);
+                        }
+                    }
+                    if (!shortProducts.isEmpty()) {
+                        if (fromJournal) {
+                            // Only a deleted product gets here; the sale still stands
+                            System.err.println("Journaled invoice sold unknown product(s) " + shortProducts);
+                        } else {
+                            conn.rollback();
+                            conn.setAutoCommit(true);
+                            refreshCachedStock(conn, shortProducts);
+                            return SaveResult.outOfStock(shortProducts);
+                        }
+                    }
+                }
             
-            invoiceStmt.setDouble(4, invoice.getSubtotal());
-            invoiceStmt.setDouble(5, invoice.getTax());
-            invoiceStmt.setDouble(6, invoice.getGrandTotal());
-            invoiceStmt.executeUpdate();
+                // Insert invoices
+                try (PreparedStatement invoiceStmt = conn.prepareStatement(insertInvoice, 
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    for (int i = 0; i < pending.size(); i++) {
+                        Invoice invoice = pending.get(i);
+                        invoiceStmt.setString(1, invoice.getCustomerName());
+                        invoiceStmt.setString(2, invoice.getCustomerPhone());
+                    
+                        // Convert LocalDateTime to SQL Timestamp
+                        Timestamp timestamp = Timestamp.valueOf(invoice.getDateTime());
+                        invoiceStmt.setTimestamp(3, timestamp);
+                    
+                        invoiceStmt.setBigDecimal(4, Money.toDecimal(invoice.getSubtotalMinor()));
+                        invoiceStmt.setBigDecimal(5, Money.toDecimal(invoice.getTaxMinor()));
+                        invoiceStmt.setBigDecimal(6, Money.toDecimal(invoice.getGrandTotalMinor()));
+                        invoiceStmt.setString(7, invoice.getClientRef());
+                        invoiceStmt.executeUpdate();
+                    
+                        try (ResultSet rs = invoiceStmt.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                invoiceIds[i] = rs.getInt(1);
+                            }
+                        }
+                    }
+                }
             
-            ResultSet rs = invoiceStmt.getGeneratedKeys();
-            int invoiceId = 0;
-            if (rs.next()) {
-                invoiceId = rs.getInt(1);
-                invoice.setId(invoiceId);
-            }
+                // Insert the items of every invoice in one round trip
+                try (PreparedStatement itemStmt = conn.prepareStatement(insertItem)) {
+                    for (int i = 0; i < pending.size(); i++) {
+                        for (BillItem item : pending.get(i).getItems()) {
+                            itemStmt.setInt(1, invoiceIds[i]);
+                            itemStmt.setInt(2, item.getProductId());
+                            itemStmt.setString(3, item.getProductName());
+                            itemStmt.setBigDecimal(4, Money.toDecimal(item.getPriceMinor()));
+                            itemStmt.setInt(5, item.getQuantity());
+                            itemStmt.setBigDecimal(6, Money.toDecimal(item.getTotalMinor()));
+                            itemStmt.addBatch();
+                        }
+                    }
+                    itemStmt.executeBatch();
+                }
             
-            // Insert invoice items and update stock
-            PreparedStatement itemStmt = conn.prepareStatement(insertItem);
-            PreparedStatement stockStmt = conn.prepareStatement(updateStock);
+                for (Invoice invoice : pending) {
+                    updateSalesRollups(conn, invoice);
+                }
             
-            for (BillItem item : invoice.getItems()) {
-                itemStmt.setInt(1, invoiceId);
-                itemStmt.setInt(2, item.getProductId());
-                itemStmt.setString(3, item.getProductName());
-                itemStmt.setDouble(4, item.getPrice());
-                itemStmt.setInt(5, item.getQuantity());
-                itemStmt.setDouble(6, item.getTotal());
-                itemStmt.executeUpdate();
-                
-                stockStmt.setInt(1, item.getQuantity());
-                stockStmt.setInt(2, item.getProductId());
-                stockStmt.executeUpdate();
-            }
+                conn.commit();
+                conn.setAutoCommit(true);
+                committed = true;
+                for (int i = 0; i < pending.size(); i++) {
+                    pending.get(i).setId(invoiceIds[i]);
+                }
+                for (Invoice invoice : invoices) {
+                    Integer storedId = stored.get(invoice.getClientRef());
+                    if (storedId != null) {
+                        invoice.setId(storedId);
+                    }
+                }
             
-            conn.commit();
-            conn.setAutoCommit(true);
-            System.out.println("Invoice saved successfully!");
-            return true;
+                if (!fromJournal) {
+                    adjustCachedStock(quantities);
+                }
+                return SaveResult.saved();
             
-        } catch (SQLException e) {
-            try {
-                conn.rollback();
-                conn.setAutoCommit(true);
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+            } catch (SQLException e) {
+                metrics.failed();
+                try {
+                    if (conn != null) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                System.err.println("Error saving invoice!");
+                e.printStackTrace();
+                return isPermanent(e) ? SaveResult.rejected(e.getMessage()) : SaveResult.failed();
+            } finally {
+                if (heldStripes != null) {
+                    stockLocks.unlock(heldStripes);
+                }
+                // Outside the stripes, so other tills' checkouts never wait on it
+                if (committed) {
+                    recordWrite(conn);
+                }
+                closeQuietly(conn);
             }
-            System.err.println("Error saving invoice!");
-            e.printStackTrace();
-            return false;
+        } finally {
+            metrics.end(started);
         }
     }
     
+    /**
+     * Put the current stock of the given products into the cache, after a
+     * save found the cached values were out of date
+     */
+    private void refreshCachedStock(Connection conn, List<Integer> productIds) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, stock FROM products WHERE id IN (");
+        for (int i = 0; i < productIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < productIds.size(); i++) {
+                pstmt.setInt(i + 1, productIds.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    productCache.setStock(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Client references from the given invoices that are already in the
+     * table, with the IDs of the invoices stored under them
+     */
+    private HashMap<String, Integer> findStoredClientRefs(Connection conn, List<Invoice> invoices)
+            throws SQLException {
+        HashMap<String, Integer> stored = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT client_ref, id FROM invoices WHERE client_ref IN (");
+        int count = 0;
+        for (Invoice invoice : invoices) {
+            if (invoice.getClientRef() != null) {
+                sql.append(count++ == 0 ? "?" : ", ?");
+            }
+        }
+        if (count == 0) {
+            return stored;
+        }
+        sql.append(")");
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Invoice invoice : invoices) {
+                if (invoice.getClientRef() != null) {
+                    pstmt.setString(index++, invoice.getClientRef());
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return stored;
+    }
+    
+    private void adjustCachedStock(Map<Integer, Integer> quantities) {
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            productCache.adjustStock(entry.getKey(), -entry.getValue());
+        }
+    }
+    
+    /**
+     * Total quantity per product ID, with duplicate lines merged
+     * @param invoices Invoices to summarize
+     * @return quantities keyed by product ID in ascending order
+     */
+    private TreeMap<Integer, Integer> quantitiesByProduct(List<Invoice> invoices) {
+        TreeMap<Integer, Integer> quantities = new TreeMap<>();
+        for (Invoice invoice : invoices) {
+            for (BillItem item : invoice.getItems()) {
+                Integer current = quantities.get(item.getProductId());
+                quantities.put(item.getProductId(), 
+                    (current == null ? 0 : current) + item.getQuantity());
+            }
+        }
+        return quantities;
+    }
+    
     public ArrayList<Invoice> getAllInvoices() {
-        ArrayList<Invoice> invoices = new ArrayList<>();
-        String sql = "SELECT * FROM invoices ORDER BY date_time DESC";
+        OperationMetrics metrics = metrics("getAllInvoices");
+        long started = metrics.begin();
+        try {
+            ArrayList<Invoice> invoices = new ArrayList<>();
+            String sql = "SELECT " + INVOICE_COLUMNS + " FROM invoices ORDER BY date_time DESC";
         
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            try (Connection conn = readConnection()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                     ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        invoices.add(INVOICE_MAPPER.map(rs, 1));
+                    }
+                }
             
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                ArrayList<BillItem> items = getInvoiceItems(id);
-                
-                // Convert SQL Timestamp to LocalDateTime
-                Timestamp timestamp = rs.getTimestamp("date_time");
-                LocalDateTime dateTime = timestamp.toLocalDateTime();
-                
-                invoices.add(new Invoice(
-                    id,
-                    rs.getString("customer_name"),
-                    rs.getString("customer_phone"),
-                    dateTime,
-                    rs.getDouble("subtotal"),
-                    rs.getDouble("tax"),
-                    rs.getDouble("grand_total"),
-                    items
-                ));
+                loadInvoiceItems(conn, invoices);
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching invoices!");
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching invoices!");
-            e.printStackTrace();
+        
+            return invoices;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * Fill in the items of every given invoice using one
+     * "invoice_id IN (...)" query per chunk instead of one query per invoice.
+     * Reuses the caller's connection so one request never holds two pool slots.
+     * Short chunks are padded to a power of two by repeating the last ID, so
+     * only a handful of distinct statements ever reach the statement cache.
+     */
+    private void loadInvoiceItems(Connection conn, List<Invoice> invoices) throws SQLException {
+        HashMap<Integer, Invoice> byId = new HashMap<>();
+        for (Invoice invoice : invoices) {
+            byId.put(invoice.getId(), invoice);
         }
         
-        return invoices;
+        for (int from = 0; from < invoices.size(); from += ITEM_FETCH_CHUNK_SIZE) {
+            int to = Math.min(from + ITEM_FETCH_CHUNK_SIZE, invoices.size());
+            int placeholders = Math.min(Integer.highestOneBit(to - from - 1) << 1, ITEM_FETCH_CHUNK_SIZE);
+            placeholders = Math.max(placeholders, 1);
+            
+            StringBuilder sql = new StringBuilder(
+                "SELECT invoice_id, " + ITEM_COLUMNS + " FROM invoice_items WHERE invoice_id IN (");
+            for (int i = 0; i < placeholders; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") ORDER BY invoice_id, id");
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < placeholders; i++) {
+                    pstmt.setInt(i + 1, invoices.get(Math.min(from + i, to - 1)).getId());
+                }
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Invoice invoice = byId.get(rs.getInt(1));
+                        invoice.getItems().add(ITEM_MAPPER.map(rs, 2));
+                    }
+                }
+            }
+        }
     }
     
-    private ArrayList<BillItem> getInvoiceItems(int invoiceId) {
-        ArrayList<BillItem> items = new ArrayList<>();
-        String sql = "SELECT * FROM invoice_items WHERE invoice_id = ?";
+    public Invoice getInvoiceById(int invoiceId) {
+        OperationMetrics metrics = metrics("getInvoiceById");
+        long started = metrics.begin();
+        try {
+            // Invoices never change once saved, so a replica that has the row has
+            // all of it; one it hasn't reached yet (just saved) is read from the primary
+            if (replicas != null) {
+                try (Connection conn = readConnection()) {
+                    Invoice invoice = findInvoice(conn, invoiceId);
+                    if (invoice != null) {
+                        return invoice;
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error fetching invoice from replica; trying the primary");
+                    e.printStackTrace();
+                }
+            }
+            
+            try (Connection conn = pool.getConnection()) {
+                return findInvoice(conn, invoiceId);
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching invoice!");
+                e.printStackTrace();
+            }
         
+            return null;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    private Invoice findInvoice(Connection conn, int invoiceId) throws SQLException {
+        String sql = "SELECT " + INVOICE_COLUMNS + " FROM invoices WHERE id = ?";
+        Invoice invoice = null;
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, invoiceId);
-            ResultSet rs = pstmt.executeQuery();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    invoice = INVOICE_MAPPER.map(rs, 1);
+                }
+            }
+        }
+        
+        if (invoice != null) {
+            loadInvoiceItems(conn, Collections.singletonList(invoice));
+        }
+        return invoice;
+    }
+    
+    /**
+     * Fetch one page of invoices, newest first, without OFFSET scans.
+     * Pages are keyed on (date_time, id) so each one is a range read on idx_date_time.
+     * @param after Cursor from the previous page, or null for the first page
+     * @param pageSize Maximum number of invoices to return
+     * @return the page, with items loaded
+     */
+    public InvoicePage getInvoicePage(InvoiceCursor after, int pageSize) {
+        OperationMetrics metrics = metrics("getInvoicePage");
+        long started = metrics.begin();
+        try {
+            ArrayList<Invoice> invoices = new ArrayList<>();
+            boolean hasMore = false;
+        
+            String sql = after == null
+                ? "SELECT " + INVOICE_COLUMNS + " FROM invoices " +
+                  "ORDER BY date_time DESC, id DESC LIMIT ?"
+                : "SELECT " + INVOICE_COLUMNS + " FROM invoices " +
+                  "WHERE date_time < ? OR (date_time = ? AND id < ?) " +
+                  "ORDER BY date_time DESC, id DESC LIMIT ?";
+        
+            try (Connection conn = readConnection()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    if (after != null) {
+                        Timestamp timestamp = Timestamp.valueOf(after.getDateTime());
+                        pstmt.setTimestamp(index++, timestamp);
+                        pstmt.setTimestamp(index++, timestamp);
+                        pstmt.setInt(index++, after.getId());
+                    }
+                    // One extra row tells us whether another page exists
+                    pstmt.setInt(index, pageSize + 1);
+                
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (invoices.size() == pageSize) {
+                                hasMore = true;
+                                break;
+                            }
+                            invoices.add(INVOICE_MAPPER.map(rs, 1));
+                        }
+                    }
+                }
             
-            while (rs.next()) {
-                items.add(new BillItem(
-                    rs.getInt("product_id"),
-                    rs.getString("product_name"),
-                    rs.getDouble("price"),
-                    rs.getInt("quantity")
-                ));
+                loadInvoiceItems(conn, invoices);
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching invoice page!");
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching invoice items!");
-            e.printStackTrace();
+        
+            return new InvoicePage(invoices, hasMore);
+        } finally {
+            metrics.end(started);
         }
+    }
+    
+    /**
+     * Walk invoices oldest first, handing each one to the visitor as soon as
+     * its last item has been read. Rows are streamed from MySQL rather than
+     * buffered, so memory use does not depend on the size of the history.
+     * @param from Earliest date_time to include, or null for no lower bound
+     * @param to Date_time to stop before, or null for no upper bound
+     * @param visitor Receives each invoice; returning false stops the walk
+     * @param cancel Lets another thread stop the walk, or null
+     * @return true if the whole range was read, false if it failed or was stopped
+     */
+    public boolean streamInvoices(LocalDateTime from, LocalDateTime to, InvoiceVisitor visitor,
+                                  QueryCancel cancel) {
+        OperationMetrics metrics = metrics("streamInvoices");
+        long started = metrics.begin();
+        try {
+            String sql = 
+                "SELECT i.id, i.customer_name, i.customer_phone, i.date_time, " +
+                "i.subtotal, i.tax, i.grand_total, " +
+                "ii.product_id, ii.product_name, ii.price, ii.quantity " +
+                "FROM invoices i LEFT JOIN invoice_items ii ON ii.invoice_id = i.id " +
+                "WHERE i.date_time >= ? AND i.date_time < ? " +
+                "ORDER BY i.date_time, i.id, ii.id";
         
-        return items;
+            LocalDateTime lower = from != null ? from : LocalDateTime.of(1000, 1, 1, 0, 0);
+            LocalDateTime upper = to != null ? to : LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+            
+            boolean stopped = false;
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Integer.MIN_VALUE switches Connector/J to row-by-row streaming
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+                pstmt.setTimestamp(1, Timestamp.valueOf(lower));
+                pstmt.setTimestamp(2, Timestamp.valueOf(upper));
+                if (cancel != null && !cancel.register(pstmt)) {
+                    return false;
+                }
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    Invoice current = null;
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        if (current == null || current.getId() != id) {
+                            if ((current != null && !visitor.visit(current))
+                                    || (cancel != null && cancel.isCancelled())) {
+                                // Closing the result set would read every remaining
+                                // row; have MySQL stop sending them first
+                                stopped = true;
+                                pstmt.cancel();
+                                return false;
+                            }
+                            current = INVOICE_MAPPER.map(rs, 1);
+                        }
+                    
+                        // Invoices without items come back once with NULL item columns
+                        rs.getInt(8);
+                        if (!rs.wasNull()) {
+                            current.getItems().add(ITEM_MAPPER.map(rs, 8));
+                        }
+                    }
+                    if (current != null && !visitor.visit(current)) {
+                        return false;
+                    }
+                } finally {
+                    if (cancel != null) {
+                        cancel.unregister(pstmt);
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                // A cancelled query ends in "Query execution was interrupted"
+                if (stopped || (cancel != null && cancel.isCancelled())) {
+                    return false;
+                }
+                metrics.failed();
+                System.err.println("Error streaming invoices!");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            metrics.end(started);
+        }
     }
     
-    public Invoice getInvoiceById(int invoiceId) {
-        String sql = "SELECT * FROM invoices WHERE id = ?";
+    /**
+     * @return {oldest, newest} invoice date_time, or null if there are no invoices
+     */
+    public LocalDateTime[] getInvoiceDateRange() {
+        OperationMetrics metrics = metrics("getInvoiceDateRange");
+        long started = metrics.begin();
+        // Both ends are read straight off idx_date_time
+        String sql = "SELECT MIN(date_time), MAX(date_time) FROM invoices";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, invoiceId);
-            ResultSet rs = pstmt.executeQuery();
+        try (Connection conn = readConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
             
-            if (rs.next()) {
-                ArrayList<BillItem> items = getInvoiceItems(invoiceId);
-                Timestamp timestamp = rs.getTimestamp("date_time");
-                LocalDateTime dateTime = timestamp.toLocalDateTime();
-                
-                return new Invoice(
-                    rs.getInt("id"),
-                    rs.getString("customer_name"),
-                    rs.getString("customer_phone"),
-                    dateTime,
-                    rs.getDouble("subtotal"),
-                    rs.getDouble("tax"),
-                    rs.getDouble("grand_total"),
-                    items
-                );
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                return new LocalDateTime[] {
+                    rs.getTimestamp(1).toLocalDateTime(), rs.getTimestamp(2).toLocalDateTime()
+                };
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching invoice!");
+            metrics.failed();
+            System.err.println("Error fetching invoice date range!");
             e.printStackTrace();
+        } finally {
+            metrics.end(started);
         }
         
         return null;
     }
     
-    // Get sales report
-    public double getTotalSales() {
-        String sql = "SELECT SUM(grand_total) as total FROM invoices";
+    /**
+     * Add one invoice to the day, hour and product rollups.
+     * Runs inside saveInvoice's transaction so the rollups never disagree
+     * with the invoices table.
+     */
+    private void updateSalesRollups(Connection conn, Invoice invoice) throws SQLException {
+        String upsertDaily = 
+            "INSERT INTO sales_daily (sale_date, invoice_count, items_sold, subtotal, tax, grand_total) " +
+            "VALUES (?, 1, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+            "invoice_count = invoice_count + 1, items_sold = items_sold + VALUES(items_sold), " +
+            "subtotal = subtotal + VALUES(subtotal), tax = tax + VALUES(tax), " +
+            "grand_total = grand_total + VALUES(grand_total)";
         
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            if (rs.next()) {
-                return rs.getDouble("total");
+        String upsertHourly = 
+            "INSERT INTO sales_hourly (sale_hour, invoice_count, items_sold, grand_total) " +
+            "VALUES (?, 1, ?, ?) ON DUPLICATE KEY UPDATE " +
+            "invoice_count = invoice_count + 1, items_sold = items_sold + VALUES(items_sold), " +
+            "grand_total = grand_total + VALUES(grand_total)";
+        
+        String upsertProduct = 
+            "INSERT INTO product_sales (product_id, product_name, quantity_sold, revenue) " +
+            "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+            "product_name = VALUES(product_name), " +
+            "quantity_sold = quantity_sold + VALUES(quantity_sold), " +
+            "revenue = revenue + VALUES(revenue)";
+        
+        LocalDateTime dateTime = invoice.getDateTime();
+        int itemsSold = invoice.getTotalItems();
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(upsertDaily)) {
+            pstmt.setDate(1, java.sql.Date.valueOf(dateTime.toLocalDate()));
+            pstmt.setInt(2, itemsSold);
+            pstmt.setBigDecimal(3, Money.toDecimal(invoice.getSubtotalMinor()));
+            pstmt.setBigDecimal(4, Money.toDecimal(invoice.getTaxMinor()));
+            pstmt.setBigDecimal(5, Money.toDecimal(invoice.getGrandTotalMinor()));
+            pstmt.executeUpdate();
+        }
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(upsertHourly)) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(dateTime.truncatedTo(ChronoUnit.HOURS)));
+            pstmt.setInt(2, itemsSold);
+            pstmt.setBigDecimal(3, Money.toDecimal(invoice.getGrandTotalMinor()));
+            pstmt.executeUpdate();
+        }
+        
+        // Duplicate lines merged, rows touched in product-id order like the stock updates
+        TreeMap<Integer, ProductSales> byProduct = new TreeMap<>();
+        for (BillItem item : invoice.getItems()) {
+            ProductSales previous = byProduct.get(item.getProductId());
+            long quantity = item.getQuantity() + (previous == null ? 0 : previous.getQuantitySold());
+            long revenue = item.getTotalMinor() + (previous == null ? 0 : previous.getRevenueMinor());
+            byProduct.put(item.getProductId(), new ProductSales(item.getProductId(), 
+                item.getProductName(), quantity, revenue));
+        }
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(upsertProduct)) {
+            for (ProductSales sales : byProduct.values()) {
+                pstmt.setInt(1, sales.getProductId());
+                pstmt.setString(2, sales.getProductName());
+                pstmt.setLong(3, sales.getQuantitySold());
+                pstmt.setBigDecimal(4, Money.toDecimal(sales.getRevenueMinor()));
+                pstmt.addBatch();
             }
+            pstmt.executeBatch();
+        }
+    }
+    
+    /**
+     * Recompute every rollup table from the raw invoice history.
+     * Reads all invoices, so run it outside trading hours.
+     * @return true if the rollups were rebuilt
+     */
+    public boolean rebuildSalesRollups() {
+        OperationMetrics metrics = metrics("rebuildSalesRollups");
+        long started = metrics.begin();
+        try {
+            String itemsPerInvoice = 
+                "(SELECT invoice_id, SUM(quantity) AS qty FROM invoice_items GROUP BY invoice_id) c";
+        
+            String[] statements = {
+                "DELETE FROM sales_daily",
+                "DELETE FROM sales_hourly",
+                "DELETE FROM product_sales",
+                "INSERT INTO sales_daily (sale_date, invoice_count, items_sold, subtotal, tax, grand_total) " +
+                "SELECT DATE(i.date_time), COUNT(*), COALESCE(SUM(c.qty), 0), " +
+                "SUM(i.subtotal), SUM(i.tax), SUM(i.grand_total) " +
+                "FROM invoices i LEFT JOIN " + itemsPerInvoice + " ON c.invoice_id = i.id " +
+                "GROUP BY DATE(i.date_time)",
+                "INSERT INTO sales_hourly (sale_hour, invoice_count, items_sold, grand_total) " +
+                "SELECT DATE_FORMAT(i.date_time, '%Y-%m-%d %H:00:00'), COUNT(*), " +
+                "COALESCE(SUM(c.qty), 0), SUM(i.grand_total) " +
+                "FROM invoices i LEFT JOIN " + itemsPerInvoice + " ON c.invoice_id = i.id " +
+                "GROUP BY DATE_FORMAT(i.date_time, '%Y-%m-%d %H:00:00')",
+                "INSERT INTO product_sales (product_id, product_name, quantity_sold, revenue) " +
+                "SELECT product_id, MAX(product_name), SUM(quantity), SUM(total) " +
+                "FROM invoice_items GROUP BY product_id"
+            };
+        
+            Connection conn = null;
+            try {
+                conn = pool.getConnection();
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    for (String sql : statements) {
+                        stmt.executeUpdate(sql);
+                    }
+                }
+                conn.commit();
+                conn.setAutoCommit(true);
+                recordWrite(conn);
+                System.out.println("Sales rollups rebuilt successfully!");
+                return true;
+            } catch (SQLException e) {
+                metrics.failed();
+                try {
+                    if (conn != null) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                System.err.println("Error rebuilding sales rollups!");
+                e.printStackTrace();
+                return false;
+            } finally {
+                closeQuietly(conn);
+            }
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    private boolean hasInvoices() {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM invoices LIMIT 1")) {
+            return rs.next();
         } catch (SQLException e) {
             e.printStackTrace();
+            return false;
         }
+    }
+    
+    // Get sales report, in minor units (see Money); reads one row per day
+    public long getTotalSalesMinor() {
+        OperationMetrics metrics = metrics("getTotalSalesMinor");
+        long started = metrics.begin();
+        try {
+            String sql = "SELECT SUM(grand_total) FROM sales_daily";
+        
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
+            
+                if (rs.next()) {
+                    return Money.fromDecimal(rs.getBigDecimal(1));
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                e.printStackTrace();
+            }
         
-        return 0.0;
+            return 0;
+        } finally {
+            metrics.end(started);
+        }
     }
     
     public int getTotalInvoicesCount() {
-        String sql = "SELECT COUNT(*) as count FROM invoices";
+        OperationMetrics metrics = metrics("getTotalInvoicesCount");
+        long started = metrics.begin();
+        try {
+            String sql = "SELECT SUM(invoice_count) FROM sales_daily";
         
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
             
-            if (rs.next()) {
-                return rs.getInt("count");
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        
+            return 0;
+        } finally {
+            metrics.end(started);
         }
+    }
+    
+    /**
+     * Sales per day, oldest first
+     * @param from First day to include
+     * @param to Last day to include
+     * @return one bucket per day that had sales
+     */
+    public ArrayList<SalesBucket> getDailySales(LocalDate from, LocalDate to) {
+        OperationMetrics metrics = metrics("getDailySales");
+        long started = metrics.begin();
+        try {
+            ArrayList<SalesBucket> buckets = new ArrayList<>();
+            String sql = "SELECT sale_date, " + BUCKET_COLUMNS + " FROM sales_daily " +
+                         "WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date";
         
-        return 0;
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setDate(1, java.sql.Date.valueOf(from));
+                pstmt.setDate(2, java.sql.Date.valueOf(to));
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        buckets.add(mapBucket(rs.getDate(1).toLocalDate().atStartOfDay(), rs, 2));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching daily sales!");
+                e.printStackTrace();
+            }
+        
+            return buckets;
+        } finally {
+            metrics.end(started);
+        }
     }
     
-    public void closeConnection() {
+    /**
+     * Sales per hour of one day
+     * @param day Day to report on
+     * @return one bucket per hour that had sales
+     */
+    public ArrayList<SalesBucket> getHourlySales(LocalDate day) {
+        OperationMetrics metrics = metrics("getHourlySales");
+        long started = metrics.begin();
         try {
-            if (conn != null && !conn.isClosed()) {
-                conn.close();
-                System.out.println("Database connection closed.");
+            ArrayList<SalesBucket> buckets = new ArrayList<>();
+            String sql = "SELECT sale_hour, " + BUCKET_COLUMNS + " FROM sales_hourly " +
+                         "WHERE sale_hour >= ? AND sale_hour < ? ORDER BY sale_hour";
+        
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setTimestamp(1, Timestamp.valueOf(day.atStartOfDay()));
+                pstmt.setTimestamp(2, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        buckets.add(mapBucket(rs.getTimestamp(1).toLocalDateTime(), rs, 2));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching hourly sales!");
+                e.printStackTrace();
             }
+        
+            return buckets;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * Best-selling products by units sold
+     * @param limit Maximum number of products
+     * @return products, most sold first
+     */
+    public ArrayList<ProductSales> getTopProducts(int limit) {
+        OperationMetrics metrics = metrics("getTopProducts");
+        long started = metrics.begin();
+        try {
+            ArrayList<ProductSales> products = new ArrayList<>();
+            String sql = "SELECT product_id, product_name, quantity_sold, revenue FROM product_sales " +
+                         "ORDER BY quantity_sold DESC LIMIT ?";
+        
+            try (Connection conn = readConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, limit);
+            
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(new ProductSales(
+                            rs.getInt(1),
+                            rs.getString(2),
+                            rs.getLong(3),
+                            Money.fromDecimal(rs.getBigDecimal(4))
+                        ));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.failed();
+                System.err.println("Error fetching top products!");
+                e.printStackTrace();
+            }
+        
+            return products;
+        } finally {
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * Add or update products from a CSV file whose header names the columns
+     * id (optional), name, price and stock. Rows with an id update that
+     * product; rows without one are added. Rows are validated in parallel and
+     * written as multi-row upserts, one commit per batch, so a failure part way
+     * through keeps the batches already committed. The product cache and the
+     * offline snapshot are refreshed once at the end.
+     * @param csvPath CSV file, UTF-8
+     * @return counts, throughput and the first rejected rows
+     */
+    public ImportReport importProducts(String csvPath) {
+        String upsert = 
+            "INSERT INTO products (id, name, price, stock, sku) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE name = VALUES(name), price = VALUES(price), stock = VALUES(stock), " +
+            "sku = COALESCE(VALUES(sku), sku)";
+        
+        OperationMetrics metrics = metrics("importProducts");
+        long started = metrics.begin();
+        Connection conn = null;
+        try (CsvReader csv = openCsv(csvPath)) {
+            String[] header = csv.next();
+            if (header == null) {
+                return ImportReport.failed("File is empty");
+            }
+            CatalogImporter.RowParser<Product> parser = CatalogImporter.productParser(header);
+            
+            conn = pool.getConnection();
+            conn.setAutoCommit(false);
+            final Connection batchConn = conn;
+            try (final PreparedStatement pstmt = conn.prepareStatement(upsert)) {
+                // rewriteBatchedStatements sends each batch as one multi-row statement
+                ImportReport report = newImporter().run(csv, parser, rows -> {
+                    for (Product p : rows) {
+                        if (p.getId() > 0) {
+                            pstmt.setInt(1, p.getId());
+                        } else {
+                            pstmt.setNull(1, Types.INTEGER);
+                        }
+                        pstmt.setString(2, p.getName());
+                        pstmt.setBigDecimal(3, Money.toDecimal(p.getPriceMinor()));
+                        pstmt.setInt(4, p.getStock());
+                        pstmt.setString(5, p.getSku());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    batchConn.commit();
+                });
+                conn.setAutoCommit(true);
+                return report;
+            }
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            metrics.failed();
+            rollbackQuietly(conn);
+            System.err.println("Error importing products!");
+            e.printStackTrace();
+            return ImportReport.failed(e.getMessage());
+        } finally {
+            closeQuietly(conn);
+            if (conn != null) {
+                refreshCatalog();
+            }
+            metrics.end(started);
+        }
+    }
+    
+    /**
+     * Set new prices from a CSV file with id and price columns. The prices are
+     * loaded into a per-connection staging table in batches and applied with
+     * a single UPDATE ... JOIN, so the catalog switches to the new prices all
+     * at once. IDs with no matching product are reported and skipped.
+     * @param csvPath CSV file, UTF-8
+     * @return counts, throughput and the first rejected rows; rows written is
+     *         the number of products repriced
+     */
+    public ImportReport repriceProducts(String csvPath) {
+        String stage = 
+            "INSERT INTO price_staging (id, price) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE price = VALUES(price)";
+        String apply = "UPDATE products p JOIN price_staging s ON s.id = p.id SET p.price = s.price";
+        
+        OperationMetrics metrics = metrics("repriceProducts");
+        long started = metrics.begin();
+        Connection conn = null;
+        try (CsvReader csv = openCsv(csvPath)) {
+            String[] header = csv.next();
+            if (header == null) {
+                return ImportReport.failed("File is empty");
+            }
+            CatalogImporter.RowParser<Product> parser = CatalogImporter.priceParser(header);
+            
+            conn = pool.getConnection();
+            // Temporary tables are private to the connection and need no cleanup on failure
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TEMPORARY TABLE IF EXISTS price_staging");
+                stmt.execute("CREATE TEMPORARY TABLE price_staging (" +
+                             "id INT PRIMARY KEY, price DECIMAL(10, 2) NOT NULL) ENGINE=InnoDB");
+            }
+            
+            ImportReport report;
+            try (final PreparedStatement pstmt = conn.prepareStatement(stage)) {
+                report = newImporter().run(csv, parser, rows -> {
+                    for (Product p : rows) {
+                        pstmt.setInt(1, p.getId());
+                        pstmt.setBigDecimal(2, Money.toDecimal(p.getPriceMinor()));
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                });
+            }
+            
+            try (Statement stmt = conn.createStatement()) {
+                int repriced = stmt.executeUpdate(apply);
+                report.setRowsWritten(repriced);
+                
+                // Listed like rejected rows, and capped the same way by the report
+                String unmatched = "FROM price_staging s LEFT JOIN products p ON p.id = s.id " +
+                                   "WHERE p.id IS NULL";
+                int unmatchedCount = 0;
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) " + unmatched)) {
+                    if (rs.next()) {
+                        unmatchedCount = rs.getInt(1);
+                    }
+                }
+                if (unmatchedCount > 0) {
+                    report.addMessage(unmatchedCount + " IDs matched no product");
+                    try (ResultSet rs = stmt.executeQuery("SELECT s.id " + unmatched +
+                            " ORDER BY s.id LIMIT " + ImportReport.MAX_MESSAGES)) {
+                        while (rs.next()) {
+                            report.addMessage("ID " + rs.getInt(1) + ": matched no product");
+                        }
+                    }
+                }
+                stmt.execute("DROP TEMPORARY TABLE IF EXISTS price_staging");
+            }
+            return report;
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            metrics.failed();
+            System.err.println("Error repricing products!");
+            e.printStackTrace();
+            return ImportReport.failed(e.getMessage());
+        } finally {
+            closeQuietly(conn);
+            if (conn != null) {
+                refreshCatalog();
+            }
+            metrics.end(started);
+        }
+    }
+    
+    private CsvReader openCsv(String csvPath) throws IOException {
+        return new CsvReader(new InputStreamReader(new FileInputStream(csvPath), StandardCharsets.UTF_8));
+    }
+    
+    private CatalogImporter newImporter() {
+        int threads = IMPORT_THREADS > 0 ? IMPORT_THREADS : Runtime.getRuntime().availableProcessors();
+        return new CatalogImporter(IMPORT_BATCH_SIZE, threads);
+    }
+    
+    // One reload after a bulk change instead of a cache update per row
+    private void refreshCatalog() {
+        productCache.invalidate();
+        loadCatalog();
+    }
+    
+    private void rollbackQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * @return the product cache, for hit/miss statistics
+     */
+    public ProductCache getProductCache() {
+        return productCache;
+    }
+    
+    private void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
+    
+    public void closeConnection() {
+        closed = true;
+        if (reconnectThread != null) {
+            reconnectThread.interrupt();
+        }
+        if (writeBehind != null) {
+            // Give the flusher a moment; whatever is left is replayed next start
+            writeBehind.close(5000);
+            writeBehind = null;
+        }
+        synchronized (this) {
+            if (snapshotWriter != null) {
+                // A write in progress finishes; the file is replaced atomically either way
+                snapshotWriter.shutdown();
+            }
+        }
+        if (snapshotWriter != null) {
+            try {
+                snapshotWriter.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (replicas != null) {
+            replicas.close();
+        }
+        if (pool != null) {
+            pool.close();
+            System.out.println("Database connection pool closed.");
+        }
+    }
 }
\ No newline at end of file
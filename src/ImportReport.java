@@ -0,0 +1,96 @@
+/**
+ * ImportReport.java
+ * Outcome of a bulk catalog import or reprice
+ * Place this file in: src/ImportReport.java
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportReport {
+    // Rejected rows beyond this are counted but not described
+    public static final int MAX_MESSAGES = 100;
+
+    private final boolean success;
+    private final long rowsRead;
+    private long rowsWritten;
+    private final long rowsRejected;
+    private final long elapsedNanos;
+    private final ArrayList<String> messages;
+
+    /**
+     * Constructor for ImportReport
+     * @param success false if the run stopped early; rows committed before that stay
+     * @param rowsRead Data rows read from the file, header excluded
+     * @param rowsWritten Rows written to the database
+     * @param rowsRejected Rows that failed validation
+     * @param elapsedNanos Wall time of the whole run
+     * @param messages Rejected rows and other problems, at most MAX_MESSAGES
+     */
+    public ImportReport(boolean success, long rowsRead, long rowsWritten, long rowsRejected,
+                        long elapsedNanos, List<String> messages) {
+        this.success = success;
+        this.rowsRead = rowsRead;
+        this.rowsWritten = rowsWritten;
+        this.rowsRejected = rowsRejected;
+        this.elapsedNanos = elapsedNanos;
+        this.messages = new ArrayList<>(messages);
+    }
+
+    /**
+     * @param message Why nothing could be imported
+     */
+    public static ImportReport failed(String message) {
+        ArrayList<String> messages = new ArrayList<>();
+        messages.add(message);
+        return new ImportReport(false, 0, 0, 0, 0, messages);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsRead / (elapsedNanos / 1e9);
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Replace the written count, for imports whose final statement decides it
+     */
+    void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    void addMessage(String message) {
+        if (messages.size() < MAX_MESSAGES) {
+            messages.add(message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d rows read, %d written, %d rejected in %.1f s (%.0f rows/s)",
+            success ? "Completed" : "Stopped", rowsRead, rowsWritten, rowsRejected,
+            elapsedNanos / 1e9, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * IntIndexMap.java
+ * Open-addressing map from positive int keys to int values
+ * Place this file in: src/IntIndexMap.java
+ *
+ * Keys and values sit in two parallel int arrays, so a map of a million
+ * product IDs costs 16-32 MB and no objects, against roughly 55 MB of
+ * nodes and boxed Integers in a HashMap. Linear probing, at most half
+ * full, with backward-shift deletes instead of tombstones. Not thread-safe.
+ */
+
+public class IntIndexMap {
+    private static final int MIN_CAPACITY = 16;
+    // Key 0 marks an empty slot, so 0 itself cannot be stored
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Constructor for IntIndexMap
+     * @param expected Number of keys the map should hold without growing
+     */
+    public IntIndexMap(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @return the value for the key, or -1 if it is absent
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = slotOf(key, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key Non-zero key
+     * @param value Value to store, replacing any previous one
+     */
+    public void put(int key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 cannot be stored");
+        }
+        if (size * 2 >= keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * @return the removed value, or -1 if the key was absent
+     */
+    public int remove(int key) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot];
+
+        // Move back any later entry whose probe run passes through the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Fibonacci hashing; sequential IDs would otherwise fill one long run
+    private static int slotOf(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
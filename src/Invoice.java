@@ -12,10 +12,13 @@ public class Invoice {
     private String customerName;
     private String customerPhone;
     private LocalDateTime dateTime;
-    private double subtotal;
-    private double tax;
-    private double grandTotal;
+    private long subtotalMinor;
+    private long taxMinor;
+    private long grandTotalMinor;
     private ArrayList<BillItem> items;
+    // Unique per checkout, assigned before the first save attempt so a
+    // replayed save can be recognised; null for invoices read back by ID only
+    private String clientRef;
     
     /**
      * Constructor for Invoice
@@ -23,21 +26,21 @@ public class Invoice {
      * @param customerName Customer name
      * @param customerPhone Customer phone number
      * @param dateTime Date and time of invoice
-     * @param subtotal Subtotal before tax
-     * @param tax Tax amount
-     * @param grandTotal Total amount including tax
+     * @param subtotalMinor Subtotal before tax, in minor units (see Money)
+     * @param taxMinor Tax amount, in minor units
+     * @param grandTotalMinor Total amount including tax, in minor units
      * @param items List of bill items
      */
     public Invoice(int id, String customerName, String customerPhone, 
-                   LocalDateTime dateTime, double subtotal, double tax, 
-                   double grandTotal, ArrayList<BillItem> items) {
+                   LocalDateTime dateTime, long subtotalMinor, long taxMinor, 
+                   long grandTotalMinor, ArrayList<BillItem> items) {
         this.id = id;
         this.customerName = customerName;
         this.customerPhone = customerPhone;
         this.dateTime = dateTime;
-        this.subtotal = subtotal;
-        this.tax = tax;
-        this.grandTotal = grandTotal;
+        this.subtotalMinor = subtotalMinor;
+        this.taxMinor = taxMinor;
+        this.grandTotalMinor = grandTotalMinor;
         this.items = new ArrayList<BillItem>(items);
     }
     
@@ -58,22 +61,26 @@ public class Invoice {
         return dateTime; 
     }
     
-    public double getSubtotal() { 
-        return subtotal; 
+    public long getSubtotalMinor() { 
+        return subtotalMinor; 
     }
     
-    public double getTax() { 
-        return tax; 
+    public long getTaxMinor() { 
+        return taxMinor; 
     }
     
-    public double getGrandTotal() { 
-        return grandTotal; 
+    public long getGrandTotalMinor() { 
+        return grandTotalMinor; 
     }
     
     public ArrayList<BillItem> getItems() { 
         return items; 
     }
     
+    public String getClientRef() {
+        return clientRef;
+    }
+    
     // Setters
     public void setId(int id) { 
         this.id = id; 
@@ -91,22 +98,26 @@ public class Invoice {
         this.dateTime = dateTime;
     }
     
-    public void setSubtotal(double subtotal) {
-        this.subtotal = subtotal;
+    public void setSubtotalMinor(long subtotalMinor) {
+        this.subtotalMinor = subtotalMinor;
     }
     
-    public void setTax(double tax) {
-        this.tax = tax;
+    public void setTaxMinor(long taxMinor) {
+        this.taxMinor = taxMinor;
     }
     
-    public void setGrandTotal(double grandTotal) {
-        this.grandTotal = grandTotal;
+    public void setGrandTotalMinor(long grandTotalMinor) {
+        this.grandTotalMinor = grandTotalMinor;
     }
     
     public void setItems(ArrayList<BillItem> items) {
         this.items = items;
     }
     
+    public void setClientRef(String clientRef) {
+        this.clientRef = clientRef;
+    }
+    
     /**
      * Get the total number of items in this invoice
      * @return total item count
@@ -125,7 +136,7 @@ public class Invoice {
                 "id=" + id +
                 ", customerName='" + customerName + '\'' +
                 ", dateTime=" + dateTime +
-                ", grandTotal=" + grandTotal +
+                ", grandTotal=" + Money.format(grandTotalMinor) +
                 ", itemCount=" + items.size() +
                 '}';
     }
@@ -0,0 +1,100 @@
+/**
+ * InvoiceCodec.java
+ * Compact binary form of an Invoice, used by the local invoice journal
+ * Place this file in: src/InvoiceCodec.java
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+
+public final class InvoiceCodec {
+    // Bumped whenever the layout changes; old journals must still decode
+    private static final byte FORMAT_VERSION = 1;
+
+    private InvoiceCodec() {
+    }
+
+    /**
+     * @param invoice Invoice to encode, including its client reference
+     * @return the encoded bytes
+     */
+    public static byte[] encode(Invoice invoice) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + invoice.getItems().size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(invoice.getId());
+            writeNullable(out, invoice.getClientRef());
+            out.writeUTF(invoice.getCustomerName());
+            writeNullable(out, invoice.getCustomerPhone());
+            out.writeLong(invoice.getDateTime().toLocalDate().toEpochDay());
+            out.writeLong(invoice.getDateTime().toLocalTime().toNanoOfDay());
+            out.writeLong(invoice.getSubtotalMinor());
+            out.writeLong(invoice.getTaxMinor());
+            out.writeLong(invoice.getGrandTotalMinor());
+
+            out.writeInt(invoice.getItems().size());
+            for (BillItem item : invoice.getItems()) {
+                out.writeInt(item.getProductId());
+                out.writeUTF(item.getProductName());
+                out.writeLong(item.getPriceMinor());
+                out.writeInt(item.getQuantity());
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data Bytes produced by encode()
+     * @return the decoded invoice
+     * @throws IOException if the data is truncated or from an unknown format
+     */
+    public static Invoice decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown invoice format version " + version);
+        }
+
+        int id = in.readInt();
+        String clientRef = readNullable(in);
+        String customerName = in.readUTF();
+        String customerPhone = readNullable(in);
+        LocalDateTime dateTime = LocalDateTime.of(
+            LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+        long subtotal = in.readLong();
+        long tax = in.readLong();
+        long grandTotal = in.readLong();
+
+        int count = in.readInt();
+        ArrayList<BillItem> items = new ArrayList<BillItem>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new BillItem(in.readInt(), in.readUTF(), in.readLong(), in.readInt()));
+        }
+
+        Invoice invoice = new Invoice(id, customerName, customerPhone, dateTime,
+            subtotal, tax, grandTotal, items);
+        invoice.setClientRef(clientRef);
+        return invoice;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * InvoiceCursor.java
+ * Position in the invoice history, used for keyset pagination
+ * Place this file in: src/InvoiceCursor.java
+ */
+
+import java.time.LocalDateTime;
+
+public class InvoiceCursor {
+    private final LocalDateTime dateTime;
+    private final int id;
+    
+    /**
+     * Constructor for InvoiceCursor
+     * @param dateTime Date and time of the last invoice already seen
+     * @param id ID of the last invoice already seen
+     */
+    public InvoiceCursor(LocalDateTime dateTime, int id) {
+        this.dateTime = dateTime;
+        this.id = id;
+    }
+    
+    /**
+     * Cursor pointing just past the given invoice
+     * @param invoice Last invoice of a page
+     * @return cursor for the next page
+     */
+    public static InvoiceCursor after(Invoice invoice) {
+        return new InvoiceCursor(invoice.getDateTime(), invoice.getId());
+    }
+    
+    // Getters
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    @Override
+    public String toString() {
+        return "InvoiceCursor{" +
+                "dateTime=" + dateTime +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,363 @@
+/**
+ * InvoiceExporter.java
+ * Streams invoice history to CSV or JSON Lines, optionally gzipped
+ * Place this file in: src/InvoiceExporter.java
+ *
+ * The date range is cut into slices that are streamed from MySQL in
+ * parallel, each into its own part file; the parts are then appended to the
+ * output in date order with FileChannel.transferTo. Concatenated gzip
+ * members form a valid gzip file, so compressed parts join the same way.
+ * Each slice holds one invoice and one output buffer at a time, so heap use
+ * does not depend on the size of the history. When a slice fails, the
+ * queries of the others are cancelled rather than read to the end.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+public class InvoiceExporter {
+    public enum Format { CSV, JSONL }
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER =
+        "invoice_id,date_time,customer_name,customer_phone,subtotal,tax,grand_total," +
+        "product_id,product_name,price,quantity,total\n";
+
+    private final DatabaseManager dbManager;
+    private final Format format;
+    private final boolean gzip;
+    private final int slices;
+
+    private final AtomicLong invoiceCount = new AtomicLong();
+    private final AtomicLong itemCount = new AtomicLong();
+    private long bytesWritten = 0;
+
+    /**
+     * Constructor for InvoiceExporter
+     * @param dbManager Source of the invoices
+     * @param format CSV gives one row per line item; JSONL one invoice per line
+     * @param gzip true to compress the output
+     * @param slices Date slices streamed at the same time, each on its own connection
+     */
+    public InvoiceExporter(DatabaseManager dbManager, Format format, boolean gzip, int slices) {
+        this.dbManager = dbManager;
+        this.format = format;
+        this.gzip = gzip;
+        this.slices = Math.max(1, slices);
+    }
+
+    /**
+     * Export every invoice dated in [from, to)
+     * @param from First date_time to include, or null for the oldest invoice
+     * @param to Date_time to stop before, or null for everything after from
+     * @param output File to create or replace
+     * @return true if every slice was written
+     */
+    public boolean export(LocalDateTime from, LocalDateTime to, String output) {
+        LocalDateTime[] range = dbManager.getInvoiceDateRange();
+        if (range == null) {
+            // Empty history still gets a well-formed file
+            return writeParts(new ArrayList<File>(), output);
+        }
+        LocalDateTime lower = from != null ? from : range[0];
+        // The newest invoice must fall inside the last half-open slice
+        LocalDateTime upper = to != null ? to : range[1].plusSeconds(1);
+        if (!lower.isBefore(upper)) {
+            return writeParts(new ArrayList<File>(), output);
+        }
+
+        final QueryCancel cancel = new QueryCancel();
+        ArrayList<File> parts = new ArrayList<>();
+        ArrayList<Future<?>> running = new ArrayList<>();
+        ExecutorService executor = AsyncDatabaseManager.createExecutor("export");
+        try {
+            Duration span = Duration.between(lower, upper).dividedBy(slices);
+            for (int i = 0; i < slices; i++) {
+                final LocalDateTime sliceFrom = lower.plus(span.multipliedBy(i));
+                final LocalDateTime sliceTo = i == slices - 1 ? upper : lower.plus(span.multipliedBy(i + 1));
+                final File part = File.createTempFile("export-" + i + "-", ".part",
+                                                      new File(output).getAbsoluteFile().getParentFile());
+                parts.add(part);
+                running.add(executor.submit(() -> {
+                    if (!cancel.isCancelled() && !exportSlice(sliceFrom, sliceTo, part, cancel)) {
+                        // Stops the other slices' queries too
+                        cancel.cancel();
+                    }
+                }));
+            }
+            for (Future<?> slice : running) {
+                slice.get();
+            }
+            return !cancel.isCancelled() && writeParts(parts, output);
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            System.err.println("Error exporting invoices!");
+            e.printStackTrace();
+            return false;
+        } finally {
+            // After an error or interrupt, no slice is left streaming
+            cancel.cancel();
+            executor.shutdownNow();
+            for (File part : parts) {
+                part.delete();
+            }
+        }
+    }
+
+    private boolean exportSlice(LocalDateTime from, LocalDateTime to, File part, QueryCancel cancel) {
+        final IOException[] writeError = new IOException[1];
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING);
+             RecordWriter out = new RecordWriter(channel, gzip)) {
+            final StringBuilder record = new StringBuilder(1024);
+            boolean complete = dbManager.streamInvoices(from, to, new InvoiceVisitor() {
+                public boolean visit(Invoice invoice) {
+                    record.setLength(0);
+                    if (format == Format.CSV) {
+                        appendCsv(record, invoice);
+                    } else {
+                        appendJson(record, invoice);
+                    }
+                    try {
+                        out.write(record);
+                    } catch (IOException e) {
+                        writeError[0] = e;
+                        return false;
+                    }
+                    invoiceCount.incrementAndGet();
+                    itemCount.addAndGet(invoice.getItems().size());
+                    return true;
+                }
+            }, cancel);
+            if (writeError[0] != null) {
+                throw writeError[0];
+            }
+            return complete;
+        } catch (IOException e) {
+            System.err.println("Error writing export slice " + from + " - " + to);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Header (CSV only) followed by every part in date order
+    private boolean writeParts(List<File> parts, String output) {
+        Path target = new File(output).toPath();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (format == Format.CSV) {
+                try (RecordWriter header = new RecordWriter(out, gzip)) {
+                    header.write(CSV_HEADER);
+                }
+            }
+            for (File part : parts) {
+                try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += in.transferTo(copied, size - copied, out);
+                    }
+                }
+            }
+            bytesWritten = out.size();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing export file " + output);
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return false;
+        }
+    }
+
+    // Records
+
+    private static void appendCsv(StringBuilder sb, Invoice invoice) {
+        // Invoices without items still get one row, with empty item columns
+        if (invoice.getItems().isEmpty()) {
+            appendCsvInvoice(sb, invoice);
+            sb.append(",,,,,\n");
+            return;
+        }
+        for (BillItem item : invoice.getItems()) {
+            appendCsvInvoice(sb, invoice);
+            sb.append(item.getProductId()).append(',');
+            appendCsvField(sb, item.getProductName());
+            sb.append(',');
+            Money.appendPlain(sb, item.getPriceMinor());
+            sb.append(',').append(item.getQuantity()).append(',');
+            Money.appendPlain(sb, item.getTotalMinor());
+            sb.append('\n');
+        }
+    }
+
+    private static void appendCsvInvoice(StringBuilder sb, Invoice invoice) {
+        sb.append(invoice.getId()).append(',');
+        sb.append(DATE_TIME.format(invoice.getDateTime())).append(',');
+        appendCsvField(sb, invoice.getCustomerName());
+        sb.append(',');
+        appendCsvField(sb, invoice.getCustomerPhone());
+        sb.append(',');
+        Money.appendPlain(sb, invoice.getSubtotalMinor());
+        sb.append(',');
+        Money.appendPlain(sb, invoice.getTaxMinor());
+        sb.append(',');
+        Money.appendPlain(sb, invoice.getGrandTotalMinor());
+        sb.append(',');
+    }
+
+    private static void appendCsvField(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // Amounts are exact decimal strings so no float rounding creeps in.
+    // Also used for InvoiceWriteBehind's dead-letter file.
+    static void appendJson(StringBuilder sb, Invoice invoice) {
+        sb.append('{');
+        Json.appendName(sb, "id").append(invoice.getId()).append(',');
+        Json.appendName(sb, "dateTime");
+        Json.appendString(sb, DATE_TIME.format(invoice.getDateTime())).append(',');
+        Json.appendName(sb, "customerName");
+        Json.appendString(sb, invoice.getCustomerName()).append(',');
+        Json.appendName(sb, "customerPhone");
+        Json.appendString(sb, invoice.getCustomerPhone()).append(',');
+        appendJsonAmount(sb, "subtotal", invoice.getSubtotalMinor()).append(',');
+        appendJsonAmount(sb, "tax", invoice.getTaxMinor()).append(',');
+        appendJsonAmount(sb, "grandTotal", invoice.getGrandTotalMinor()).append(',');
+        Json.appendName(sb, "items").append('[');
+        List<BillItem> items = invoice.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            BillItem item = items.get(i);
+            if (i > 0) sb.append(',');
+            sb.append('{');
+            Json.appendName(sb, "productId").append(item.getProductId()).append(',');
+            Json.appendName(sb, "productName");
+            Json.appendString(sb, item.getProductName()).append(',');
+            appendJsonAmount(sb, "price", item.getPriceMinor()).append(',');
+            Json.appendName(sb, "quantity").append(item.getQuantity()).append(',');
+            appendJsonAmount(sb, "total", item.getTotalMinor());
+            sb.append('}');
+        }
+        sb.append("]}\n");
+    }
+
+    private static StringBuilder appendJsonAmount(StringBuilder sb, String name, long amount) {
+        Json.appendName(sb, name).append('"');
+        Money.appendPlain(sb, amount);
+        return sb.append('"');
+    }
+
+    // Statistics of the last export
+
+    public long getInvoiceCount() {
+        return invoiceCount.get();
+    }
+
+    public long getItemCount() {
+        return itemCount.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Encodes records into one reusable buffer and writes it to the channel
+     * when full, through gzip if asked. Closing flushes (and ends the gzip
+     * member) but leaves the channel open.
+     */
+    private static final class RecordWriter implements AutoCloseable {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private final WritableByteChannel target;
+        private final GZIPOutputStream gzipStream;
+
+        RecordWriter(FileChannel channel, boolean gzip) throws IOException {
+            if (gzip) {
+                gzipStream = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES) {
+                    @Override
+                    public void close() throws IOException {
+                        // Finish the member without closing the shared channel
+                        finish();
+                        flush();
+                    }
+                };
+                target = Channels.newChannel(gzipStream);
+            } else {
+                gzipStream = null;
+                target = channel;
+            }
+        }
+
+        void write(CharSequence record) throws IOException {
+            byte[] bytes = record.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+                return;
+            }
+            buffer.put(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                target.write(bytes);
+            }
+        }
+
+        public void close() throws IOException {
+            flush();
+            if (gzipStream != null) {
+                gzipStream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * InvoiceJournal.java
+ * Append-only, memory-mapped journal of records waiting to reach MySQL
+ * Place this file in: src/InvoiceJournal.java
+ *
+ * Layout: a 16-byte header (magic, unused, checkpoint offset) followed by
+ * records of [int length][int CRC32][payload]. A zero length marks the end.
+ * Records before the checkpoint are already in MySQL; once every record has
+ * been checkpointed the journal starts again from the top.
+ *
+ * Only one process may have a journal open: the file is locked for as long
+ * as it is, so two tills can never replay or reset each other's records.
+ */
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class InvoiceJournal {
+    private static final int MAGIC = 0x494E564A; // "INVJ"
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKPOINT_POSITION = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // Offset of the first record not yet in MySQL
+    private int checkpoint;
+    // Offset where the next record will be written
+    private int tail;
+    private int pendingCount;
+
+    // Appends are counted so concurrent callers can share one fsync
+    private long appendedCount = 0;
+    private long forcedCount = 0;
+    private final Object forceLock = new Object();
+
+    /**
+     * Open or create a journal and recover its pending records
+     * @param path Journal file
+     * @param capacity File size in bytes; records that do not fit are refused
+     * @throws IOException if the file cannot be opened, is open in another
+     *                     process, or belongs to something else
+     */
+    public InvoiceJournal(String path, int capacity) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        FileLock lock;
+        try {
+            lock = file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already open in this process
+            lock = null;
+        }
+        if (lock == null) {
+            file.close();
+            throw new IOException(path + " is in use by another billing process");
+        }
+        if (file.length() > capacity) {
+            // Keep an existing larger journal whole rather than cutting records off
+            capacity = (int) Math.min(file.length(), Integer.MAX_VALUE);
+        }
+        this.capacity = capacity;
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        int magic = buffer.getInt(0);
+        if (magic == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(CHECKPOINT_POSITION, HEADER_SIZE);
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.force();
+        } else if (magic != MAGIC) {
+            file.close();
+            throw new IOException(path + " is not an invoice journal");
+        }
+        recover();
+    }
+
+    // Scan forward from the checkpoint; the first torn or corrupt record ends the journal
+    private void recover() {
+        long saved = buffer.getLong(CHECKPOINT_POSITION);
+        checkpoint = saved >= HEADER_SIZE && saved <= capacity ? (int) saved : HEADER_SIZE;
+
+        int position = checkpoint;
+        int count = 0;
+        while (readRecord(position) != null) {
+            position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            count++;
+        }
+        tail = position;
+        pendingCount = count;
+        if (tail + 4 <= capacity) {
+            buffer.putInt(tail, 0);
+        }
+    }
+
+    // Payload of the record at position, or null if there is no valid record there
+    private byte[] readRecord(int position) {
+        if (position + RECORD_HEADER_SIZE > capacity) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return checksum(payload) == buffer.getInt(position + 4) ? payload : null;
+    }
+
+    /**
+     * Append a record and wait until it is on disk. Callers appending at the
+     * same time share a single fsync.
+     * @param payload Record contents
+     * @return false if the journal is full; nothing was written
+     * @throws IOException if the file could not be flushed
+     */
+    public boolean append(byte[] payload) throws IOException {
+        long sequence;
+        synchronized (this) {
+            int end = tail + RECORD_HEADER_SIZE + payload.length;
+            if (end > capacity) {
+                return false;
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(tail + RECORD_HEADER_SIZE);
+            view.put(payload);
+            buffer.putInt(tail + 4, checksum(payload));
+            buffer.putInt(tail, payload.length);
+            if (end + 4 <= capacity) {
+                buffer.putInt(end, 0);
+            }
+            tail = end;
+            pendingCount++;
+            sequence = ++appendedCount;
+            notifyAll();
+        }
+
+        synchronized (forceLock) {
+            if (forcedCount < sequence) {
+                long target;
+                synchronized (this) {
+                    target = appendedCount;
+                }
+                buffer.force();
+                forcedCount = target;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for pending records and return the oldest of them. Everything that
+     * arrived while the previous batch was being written comes back together.
+     * @param maxRecords Upper bound on the batch size
+     * @param waitMillis How long to wait when nothing is pending
+     * @return pending records in append order; empty if none arrived in time
+     */
+    public synchronized List<Entry> readPending(int maxRecords, long waitMillis)
+            throws InterruptedException {
+        if (pendingCount == 0 && waitMillis > 0) {
+            wait(waitMillis);
+        }
+
+        ArrayList<Entry> entries = new ArrayList<Entry>(Math.min(pendingCount, maxRecords));
+        int position = checkpoint;
+        while (entries.size() < maxRecords && position < tail) {
+            byte[] payload = readRecord(position);
+            position += RECORD_HEADER_SIZE + payload.length;
+            entries.add(new Entry(payload, position));
+        }
+        return entries;
+    }
+
+    /**
+     * Mark every record up to an entry as safely stored in MySQL
+     * @param entry Last entry of a batch returned by readPending
+     */
+    public synchronized void checkpoint(Entry entry) {
+        int position = checkpoint;
+        while (position < entry.end) {
+            position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            pendingCount--;
+        }
+        checkpoint = entry.end;
+
+        if (checkpoint == tail) {
+            // Fully drained - start over at the top so the file never fills up
+            buffer.putInt(HEADER_SIZE, 0);
+            checkpoint = HEADER_SIZE;
+            tail = HEADER_SIZE;
+        }
+        buffer.putLong(CHECKPOINT_POSITION, checkpoint);
+        buffer.force();
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Wake any thread waiting in readPending
+     */
+    public synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    public void close() throws IOException {
+        synchronized (forceLock) {
+            buffer.force();
+        }
+        // Also releases the lock
+        file.close();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * One pending record and the offset just past it
+     */
+    public static class Entry {
+        private final byte[] payload;
+        private final int end;
+
+        Entry(byte[] payload, int end) {
+            this.payload = payload;
+            this.end = end;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * InvoicePage.java
+ * One fixed-size page of invoice history
+ * Place this file in: src/InvoicePage.java
+ */
+
+import java.util.ArrayList;
+
+public class InvoicePage {
+    private final ArrayList<Invoice> invoices;
+    private final boolean hasMore;
+    
+    /**
+     * Constructor for InvoicePage
+     * @param invoices Invoices on this page, newest first
+     * @param hasMore Whether older invoices exist after this page
+     */
+    public InvoicePage(ArrayList<Invoice> invoices, boolean hasMore) {
+        this.invoices = invoices;
+        this.hasMore = hasMore;
+    }
+    
+    // Getters
+    public ArrayList<Invoice> getInvoices() {
+        return invoices;
+    }
+    
+    public boolean hasMore() {
+        return hasMore;
+    }
+    
+    /**
+     * Cursor to pass to DatabaseManager.getInvoicePage for the next page
+     * @return next cursor, or null if this is the last page
+     */
+    public InvoiceCursor getNextCursor() {
+        if (!hasMore || invoices.isEmpty()) {
+            return null;
+        }
+        return InvoiceCursor.after(invoices.get(invoices.size() - 1));
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * InvoiceVisitor.java
+ * Callback for walking invoice history one invoice at a time
+ * Place this file in: src/InvoiceVisitor.java
+ */
+
+public interface InvoiceVisitor {
+    /**
+     * Called once per invoice, with its items already loaded.
+     * The invoice is not retained afterwards, so large histories
+     * can be walked in constant memory.
+     * @param invoice The current invoice
+     * @return true to go on, false to stop the walk
+     */
+    boolean visit(Invoice invoice);
+}
@@ -0,0 +1,260 @@
+/**
+ * InvoiceWriteBehind.java
+ * Acknowledges invoices once they are journaled and group-commits them to MySQL
+ * on a background thread
+ * Place this file in: src/InvoiceWriteBehind.java
+ *
+ * A record MySQL refuses outright (a constraint violation, a value too
+ * long for its column) would otherwise be retried forever and hold up
+ * every invoice behind it. Such records, and any the journal can no longer
+ * decode, are moved to a dead-letter file of JSON lines, one per invoice
+ * with the error, for someone to fix and re-enter; the rest carry on.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InvoiceWriteBehind {
+    private static final String UNREADABLE = "unreadable journal record";
+
+    private final DatabaseManager dbManager;
+    private final InvoiceJournal journal;
+    private final int batchSize;
+    private final long retryMillis;
+    private final String deadLetterPath;
+    private final AtomicInteger deadLetterCount = new AtomicInteger();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for InvoiceWriteBehind. Invoices left in the journal by a
+     * previous run are replayed once start() is called.
+     * @param dbManager Database the invoices are committed to
+     * @param journal Journal to append to and drain
+     * @param batchSize Most invoices committed in one transaction
+     * @param retryMillis Pause after a failed commit, and the idle poll interval
+     * @param deadLetterPath File that records MySQL refuses are moved to
+     */
+    public InvoiceWriteBehind(DatabaseManager dbManager, InvoiceJournal journal,
+                              int batchSize, long retryMillis, String deadLetterPath) {
+        this.dbManager = dbManager;
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.retryMillis = retryMillis;
+        this.deadLetterPath = deadLetterPath;
+        deadLetterCount.set(countLines(deadLetterPath));
+        if (deadLetterCount.get() > 0) {
+            System.err.println(deadLetterCount.get() + " rejected invoice(s) in " + deadLetterPath +
+                               " need to be re-entered by hand!");
+        }
+        this.flusher = new Thread(new Runnable() {
+            public void run() {
+                flushLoop();
+            }
+        }, "invoice-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Start committing journaled invoices in the background
+     */
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Make an invoice durable locally. The caller must have set its client reference.
+     * @param invoice Invoice to journal
+     * @return true if journaled; false if the caller should save it directly
+     */
+    public boolean append(Invoice invoice) {
+        try {
+            return journal.append(InvoiceCodec.encode(invoice));
+        } catch (IOException e) {
+            System.err.println("Error writing invoice journal!");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return invoices journaled but not yet committed to MySQL
+     */
+    public int getPendingCount() {
+        return journal.getPendingCount();
+    }
+
+    /**
+     * @return invoices in the dead-letter file, from this run and earlier ones
+     */
+    public int getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    /**
+     * Decode every journaled invoice that has not reached MySQL yet
+     * @return pending invoices, oldest first
+     */
+    public ArrayList<Invoice> getPendingInvoices() {
+        ArrayList<Invoice> invoices = new ArrayList<Invoice>();
+        try {
+            for (InvoiceJournal.Entry entry : journal.readPending(Integer.MAX_VALUE, 0)) {
+                invoices.add(InvoiceCodec.decode(entry.getPayload()));
+            }
+        } catch (InterruptedException | IOException e) {
+            e.printStackTrace();
+        }
+        return invoices;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                // Nothing to gain from hammering a database known to be down
+                if (dbManager.isOffline()) {
+                    Thread.sleep(retryMillis);
+                    continue;
+                }
+
+                List<InvoiceJournal.Entry> entries = journal.readPending(batchSize, retryMillis);
+                if (entries.isEmpty()) {
+                    continue;
+                }
+
+                ArrayList<Invoice> invoices = new ArrayList<Invoice>(entries.size());
+                boolean unreadable = false;
+                for (InvoiceJournal.Entry entry : entries) {
+                    try {
+                        invoices.add(InvoiceCodec.decode(entry.getPayload()));
+                    } catch (IOException e) {
+                        // CRC-checked, so only a format this build can't read gets here
+                        invoices.add(null);
+                        unreadable = true;
+                    }
+                }
+
+                // Stock was already taken from the cache when each invoice was journaled
+                SaveResult result = unreadable ? SaveResult.rejected(UNREADABLE)
+                                               : dbManager.commitInvoices(invoices, true);
+                if (result.isSuccess()) {
+                    journal.checkpoint(entries.get(entries.size() - 1));
+                } else if (!result.isRejected() || !flushOneByOne(entries, invoices)) {
+                    Thread.sleep(retryMillis);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Commit a batch that was refused one invoice at a time, so only the
+     * records at fault go to the dead-letter file
+     * @return false if a commit failed for a passing reason and should be retried later
+     */
+    private boolean flushOneByOne(List<InvoiceJournal.Entry> entries, List<Invoice> invoices) {
+        for (int i = 0; i < entries.size(); i++) {
+            Invoice invoice = invoices.get(i);
+            SaveResult result = invoice == null ? SaveResult.rejected(UNREADABLE)
+                : dbManager.commitInvoices(Collections.singletonList(invoice), true);
+            if (result.isRejected()) {
+                if (!deadLetter(entries.get(i), invoice, result.getRejection())) {
+                    return false;
+                }
+            } else if (!result.isSuccess()) {
+                return false;
+            }
+            journal.checkpoint(entries.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Append one refused record to the dead-letter file and sync it, so it
+     * is never lost when the journal moves past it
+     * @param invoice The decoded invoice, or null if the record could not be decoded
+     * @return false if the file could not be written
+     */
+    private boolean deadLetter(InvoiceJournal.Entry entry, Invoice invoice, String reason) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append('{');
+        Json.appendName(sb, "rejectedAt");
+        Json.appendString(sb, LocalDateTime.now().withNano(0).toString()).append(',');
+        Json.appendName(sb, "error");
+        Json.appendString(sb, reason).append(',');
+        if (invoice != null) {
+            Json.appendName(sb, "clientRef");
+            Json.appendString(sb, invoice.getClientRef()).append(',');
+            Json.appendName(sb, "invoice");
+            InvoiceExporter.appendJson(sb, invoice);
+            // appendJson ends the line; this object continues
+            sb.setLength(sb.length() - 1);
+        } else {
+            Json.appendName(sb, "record");
+            Json.appendString(sb, Base64.getEncoder().encodeToString(entry.getPayload()));
+        }
+        sb.append("}\n");
+
+        try (FileOutputStream out = new FileOutputStream(deadLetterPath, true)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("Could not write dead-letter file " + deadLetterPath + "!");
+            e.printStackTrace();
+            return false;
+        }
+        int count = deadLetterCount.incrementAndGet();
+        System.err.println("Invoice " + (invoice != null ? invoice.getClientRef() : "(unreadable)") +
+                           " rejected by MySQL (" + reason + "); moved to " + deadLetterPath +
+                           ", " + count + " there in total");
+        return true;
+    }
+
+    private static int countLines(String path) {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        } catch (IOException e) {
+            // No file yet
+        }
+        return lines;
+    }
+
+    /**
+     * Stop the flusher and close the journal. Anything still pending stays in
+     * the journal and is replayed on the next start.
+     * @param waitMillis How long to let the flusher finish draining first
+     */
+    public void close(long waitMillis) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (journal.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        running = false;
+        journal.wakeUp();
+        try {
+            flusher.join(waitMillis);
+            journal.close();
+        } catch (InterruptedException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
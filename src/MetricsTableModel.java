@@ -0,0 +1,67 @@
+/**
+ * MetricsTableModel.java
+ * Table model showing a snapshot of every OperationMetrics
+ * Place this file in: src/MetricsTableModel.java
+ */
+
+import java.util.ArrayList;
+import javax.swing.table.AbstractTableModel;
+
+public class MetricsTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {
+        "Operation", "Calls", "Errors", "In flight", "Mean ms", "p50 ms", "p99 ms", "p99.9 ms", "Max ms"
+    };
+    private static final Class<?>[] COLUMN_TYPES = {
+        String.class, Long.class, Long.class, Integer.class,
+        Double.class, Double.class, Double.class, Double.class, Double.class
+    };
+
+    // Values are copied on refresh so repaints never walk the histograms
+    private Object[][] rows = new Object[0][];
+
+    /**
+     * Re-read every operation's counters and histogram
+     */
+    public void refresh() {
+        ArrayList<OperationMetrics> all = OperationMetrics.getAll();
+        Object[][] fresh = new Object[all.size()][];
+        for (int i = 0; i < fresh.length; i++) {
+            OperationMetrics m = all.get(i);
+            fresh[i] = new Object[] {
+                m.getComponent() + "." + m.getName(), m.getCalls(), m.getErrors(), m.getInFlight(),
+                m.getMeanMillis(), m.getP50Millis(), m.getP99Millis(), m.getP999Millis(), m.getMaxMillis()
+            };
+        }
+
+        boolean sameRows = fresh.length == rows.length;
+        rows = fresh;
+        // Updating in place keeps the user's selection and sort
+        if (sameRows && fresh.length > 0) {
+            fireTableRowsUpdated(0, fresh.length - 1);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_TYPES[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+        return rows[row][column];
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Money.java
+ * Helpers for amounts held as long minor units (1 = RS0.01)
+ * Place this file in: src/Money.java
+ */
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public final class Money {
+    public static final String CURRENCY = "RS";
+    private static final int SCALE = 2;
+    private static final long MINOR_PER_MAJOR = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Line total
+     * @param unitPrice Price per unit in minor units
+     * @param quantity Number of units
+     * @return unitPrice * quantity, failing on overflow rather than wrapping
+     */
+    public static long times(long unitPrice, int quantity) {
+        return Math.multiplyExact(unitPrice, (long) quantity);
+    }
+
+    /**
+     * Percentage of an amount, rounded half away from zero to the nearest minor unit
+     * @param amount Amount in minor units
+     * @param basisPoints Rate in hundredths of a percent, e.g. 1000 for 10%
+     * @return the rounded share of amount
+     */
+    public static long percentOf(long amount, int basisPoints) {
+        long scaled = Math.multiplyExact(amount, (long) basisPoints);
+        long half = scaled >= 0 ? 5000 : -5000;
+        return (scaled + half) / 10000;
+    }
+
+    /**
+     * Convert a DECIMAL column value
+     * @param value Amount with any scale, or null
+     * @return minor units, rounded half up; 0 for null
+     */
+    public static long fromDecimal(BigDecimal value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * @param amount Amount in minor units
+     * @return the same amount as a DECIMAL-compatible value with two decimals
+     */
+    public static BigDecimal toDecimal(long amount) {
+        return BigDecimal.valueOf(amount, SCALE);
+    }
+
+    /**
+     * Parse text typed by a user, such as "12", "12.5" or "RS12.50"
+     * @param text Amount in major units
+     * @return minor units
+     * @throws NumberFormatException if the text is not a valid amount
+     */
+    public static long parse(String text) {
+        String s = text.trim();
+        if (s.regionMatches(true, 0, CURRENCY, 0, CURRENCY.length())) {
+            s = s.substring(CURRENCY.length()).trim();
+        }
+        boolean negative = s.startsWith("-");
+        if (negative) {
+            s = s.substring(1);
+        }
+
+        long major = 0;
+        long minor = 0;
+        int fractionDigits = -1;
+        boolean sawDigit = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                sawDigit = true;
+                if (fractionDigits < 0) {
+                    major = Math.addExact(Math.multiplyExact(major, 10), c - '0');
+                } else if (fractionDigits < SCALE) {
+                    minor = minor * 10 + (c - '0');
+                    fractionDigits++;
+                } else {
+                    throw new NumberFormatException("Too many decimals: " + text);
+                }
+            } else {
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+        }
+        if (!sawDigit) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        for (int i = Math.max(fractionDigits, 0); i < SCALE; i++) {
+            minor *= 10;
+        }
+
+        long amount = Math.addExact(Math.multiplyExact(major, MINOR_PER_MAJOR), minor);
+        return negative ? -amount : amount;
+    }
+
+    /**
+     * @param amount Amount in minor units
+     * @return e.g. "RS12.50"
+     */
+    public static String format(long amount) {
+        StringBuilder sb = new StringBuilder(16);
+        if (amount < 0) {
+            sb.append('-');
+        }
+        sb.append(CURRENCY);
+        appendPlain(sb, Math.abs(amount));
+        return sb.toString();
+    }
+
+    /**
+     * @param amount Amount in minor units
+     * @return e.g. "12.50", without the currency symbol
+     */
+    public static String toPlainString(long amount) {
+        StringBuilder sb = new StringBuilder(16);
+        if (amount < 0) {
+            sb.append('-');
+        }
+        appendPlain(sb, Math.abs(amount));
+        return sb.toString();
+    }
+
+    /**
+     * Append an amount as "12.50" without allocating intermediate strings
+     * @param sb Target buffer
+     * @param amount Non-negative amount in minor units
+     */
+    public static void appendPlain(StringBuilder sb, long amount) {
+        long minor = amount % MINOR_PER_MAJOR;
+        sb.append(amount / MINOR_PER_MAJOR).append('.');
+        if (minor < 10) {
+            sb.append('0');
+        }
+        sb.append(minor);
+    }
+}
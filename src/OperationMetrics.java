@@ -0,0 +1,163 @@
+/**
+ * OperationMetrics.java
+ * Call, error, in-flight and latency statistics for one named operation
+ * Place this file in: src/OperationMetrics.java
+ *
+ * Usage:
+ *   OperationMetrics metrics = OperationMetrics.get("DatabaseManager", "saveInvoice");
+ *   long started = metrics.begin();
+ *   try { ... } catch (SQLException e) { metrics.failed(); ... }
+ *   finally { metrics.end(started); }
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class OperationMetrics implements OperationMetricsMXBean {
+    private static final String JMX_DOMAIN = "BillingSystem";
+
+    // One instance per operation for the whole process, so several
+    // DatabaseManagers in one JVM report together
+    private static final ConcurrentHashMap<String, OperationMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String component;
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private OperationMetrics(String component, String name) {
+        this.component = component;
+        this.name = name;
+    }
+
+    /**
+     * Find or create the metrics for an operation, registering them with the
+     * platform MBean server the first time
+     * @param component Owning class, e.g. "DatabaseManager"
+     * @param name Operation, e.g. "saveInvoice"
+     */
+    public static OperationMetrics get(String component, String name) {
+        String key = component + "." + name;
+        OperationMetrics metrics = REGISTRY.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+
+        OperationMetrics created = new OperationMetrics(component, name);
+        metrics = REGISTRY.putIfAbsent(key, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        created.register();
+        return created;
+    }
+
+    /**
+     * @return every operation seen so far, by component and then name
+     */
+    public static ArrayList<OperationMetrics> getAll() {
+        ArrayList<OperationMetrics> all = new ArrayList<>(REGISTRY.values());
+        Collections.sort(all, new Comparator<OperationMetrics>() {
+            public int compare(OperationMetrics a, OperationMetrics b) {
+                int byComponent = a.component.compareTo(b.component);
+                return byComponent != 0 ? byComponent : a.name.compareTo(b.name);
+            }
+        });
+        return all;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + component + ",name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            // Metrics still work in-process; only the JMX view is missing
+            System.err.println("Could not register JMX metrics for " + component + "." + name);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return start time to pass to end()
+     */
+    public long begin() {
+        calls.increment();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void end(long started) {
+        latency.record(System.nanoTime() - started);
+        inFlight.decrementAndGet();
+    }
+
+    public void failed() {
+        errors.increment();
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    public double getP50Millis() {
+        return latency.getPercentile(50) / 1e6;
+    }
+
+    public double getP99Millis() {
+        return latency.getPercentile(99) / 1e6;
+    }
+
+    public double getP999Millis() {
+        return latency.getPercentile(99.9) / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s calls=%d errors=%d inFlight=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms",
+            component, name, getCalls(), getErrors(), getInFlight(),
+            getP50Millis(), getP99Millis(), getP999Millis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * OperationMetricsMXBean.java
+ * JMX view of one operation's OperationMetrics
+ * Place this file in: src/OperationMetricsMXBean.java
+ *
+ * Registered as BillingSystem:type=<component>,name=<operation>, e.g.
+ * BillingSystem:type=DatabaseManager,name=saveInvoice; browse with jconsole.
+ */
+
+public interface OperationMetricsMXBean {
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    int getInFlight();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    /**
+     * Clear counters and latencies, e.g. before a load test; in-flight is kept
+     */
+    void reset();
+}
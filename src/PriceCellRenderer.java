@@ -0,0 +1,24 @@
+/**
+ * PriceCellRenderer.java
+ * Formats minor-unit price cells as currency only when they are painted
+ * Place this file in: src/PriceCellRenderer.java
+ */
+
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+
+public class PriceCellRenderer extends DefaultTableCellRenderer {
+
+    public PriceCellRenderer() {
+        setHorizontalAlignment(SwingConstants.RIGHT);
+    }
+
+    @Override
+    protected void setValue(Object value) {
+        if (value instanceof Long) {
+            setText(Money.format((Long) value));
+        } else {
+            super.setValue(value);
+        }
+    }
+}
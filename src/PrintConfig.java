@@ -0,0 +1,87 @@
+/**
+ * PrintConfig.java
+ * Settings of the receipt printer
+ * Place this file in: src/PrintConfig.java
+ */
+
+import java.util.Properties;
+
+public class PrintConfig {
+    private final String path;
+    private final ReceiptRenderer.Format format;
+    private final boolean autoPrint;
+    private final int retryAttempts;
+    private final long retryMillis;
+
+    /**
+     * Constructor for PrintConfig
+     * @param path File or raw device to print to, or blank for the default printer
+     * @param format Receipt format the printer understands
+     * @param autoPrint Whether every receipt is printed at checkout
+     * @param retryAttempts Tries per receipt before the spooler reports the printer
+     * @param retryMillis Pause between tries
+     */
+    public PrintConfig(String path, ReceiptRenderer.Format format, boolean autoPrint,
+                       int retryAttempts, long retryMillis) {
+        this.path = path;
+        this.format = format;
+        this.autoPrint = autoPrint;
+        this.retryAttempts = retryAttempts;
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * Read the printer.* settings; missing ones, or a missing file, get the defaults
+     */
+    public static PrintConfig load() {
+        Properties props = null;
+        try {
+            props = ConfigFile.load();
+        } catch (Exception e) {
+            System.err.println("Failed to load printer settings; using defaults");
+            e.printStackTrace();
+        }
+        if (props == null) {
+            props = new Properties();
+        }
+        ReceiptRenderer.Format format = props.getProperty("printer.format", "text").trim()
+            .equalsIgnoreCase("escpos") ? ReceiptRenderer.Format.ESC_POS : ReceiptRenderer.Format.TEXT;
+        try {
+            return new PrintConfig(
+                props.getProperty("printer.path", "").trim(),
+                format,
+                Boolean.parseBoolean(props.getProperty("printer.auto", "false").trim()),
+                Integer.parseInt(props.getProperty("printer.retry.attempts", "5").trim()),
+                Long.parseLong(props.getProperty("printer.retry.ms", "2000").trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Bad printer.retry.* setting; using the defaults");
+            e.printStackTrace();
+            return new PrintConfig(props.getProperty("printer.path", "").trim(), format,
+                Boolean.parseBoolean(props.getProperty("printer.auto", "false").trim()), 5, 2000);
+        }
+    }
+
+    /**
+     * Start a spooler for the configured receipt printer: printer.path names
+     * a file or raw device, or is blank for the system's default printer
+     */
+    public PrintSpooler createPrintSpooler() {
+        ReceiptPrinter printer = path.isEmpty()
+            ? ReceiptPrinter.toDefaultPrintService() : ReceiptPrinter.toFile(path);
+        return new PrintSpooler(printer, retryAttempts, retryMillis);
+    }
+
+    /**
+     * @return ESC_POS when printer.format is escpos, otherwise TEXT
+     */
+    public ReceiptRenderer.Format getReceiptFormat() {
+        return format;
+    }
+
+    /**
+     * @return true if every receipt is printed at checkout (printer.auto)
+     */
+    public boolean isAutoPrint() {
+        return autoPrint;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * PrintSpooler.java
+ * Background print queue so checkout never waits on the printer
+ * Place this file in: src/PrintSpooler.java
+ *
+ * Receipts are printed one at a time, in the order submitted, by a single
+ * daemon thread. A receipt that fails (printer offline, out of paper) is
+ * retried in place, so later receipts never come out ahead of it; after
+ * the last attempt it is dropped and counted as failed.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PrintSpooler {
+    // A till that has been offline this long has bigger problems than receipts
+    private static final int MAX_QUEUED = 100;
+
+    private final ReceiptPrinter printer;
+    private final int maxAttempts;
+    private final long retryMillis;
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final AtomicInteger printing = new AtomicInteger();
+    private final AtomicInteger printed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Thread worker;
+    private volatile String lastError;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for PrintSpooler; the worker starts immediately
+     * @param printer Destination for receipts
+     * @param maxAttempts Tries per receipt before it is dropped, at least 1
+     * @param retryMillis Pause between tries
+     */
+    public PrintSpooler(ReceiptPrinter printer, int maxAttempts, long retryMillis) {
+        this.printer = printer;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryMillis = retryMillis;
+        worker = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "print-spooler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queue a receipt and return at once
+     * @return false if the spooler is closed or the queue is full
+     */
+    public boolean submit(byte[] receipt) {
+        if (closed) {
+            return false;
+        }
+        if (!queue.offer(receipt)) {
+            System.err.println("Print queue full; receipt not printed");
+            return false;
+        }
+        return true;
+    }
+
+    private void drain() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                byte[] receipt = queue.poll(retryMillis, TimeUnit.MILLISECONDS);
+                if (receipt == null) {
+                    continue;
+                }
+                printing.set(1);
+                try {
+                    printWithRetry(receipt);
+                } finally {
+                    printing.set(0);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed with receipts still queued
+        }
+    }
+
+    private void printWithRetry(byte[] receipt) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                printer.print(receipt);
+                lastError = null;
+                printed.incrementAndGet();
+                return;
+            } catch (IOException e) {
+                lastError = e.getMessage();
+                if (attempt >= maxAttempts) {
+                    System.err.println("Receipt dropped after " + attempt + " attempts on " + printer + "!");
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                    return;
+                }
+                Thread.sleep(retryMillis);
+            }
+        }
+    }
+
+    /**
+     * @return receipts queued or being printed
+     */
+    public int getPendingCount() {
+        return queue.size() + printing.get();
+    }
+
+    public int getPrintedCount() {
+        return printed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return why the last attempt failed, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stop taking receipts and give queued ones time to print
+     * @param waitMillis How long to wait for the queue to drain
+     * @return true if everything queued was printed or dropped in time
+     */
+    public boolean close(long waitMillis) {
+        closed = true;
+        try {
+            worker.join(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+            return false;
+        }
+        return true;
+    }
+}
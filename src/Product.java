@@ -7,21 +7,35 @@
 public class Product {
     private int id;
     private String name;
-    private double price;
+    private long priceMinor;
     private int stock;
+    private String sku;
+    
+    /**
+     * Constructor for Product without a SKU
+     * @param id Product ID
+     * @param name Product name
+     * @param priceMinor Product price in minor units (see Money)
+     * @param stock Stock quantity
+     */
+    public Product(int id, String name, long priceMinor, int stock) {
+        this(id, name, priceMinor, stock, null);
+    }
     
     /**
      * Constructor for Product
      * @param id Product ID
      * @param name Product name
-     * @param price Product price
+     * @param priceMinor Product price in minor units (see Money)
      * @param stock Stock quantity
+     * @param sku Barcode or SKU, unique across products; null if none
      */
-    public Product(int id, String name, double price, int stock) {
+    public Product(int id, String name, long priceMinor, int stock, String sku) {
         this.id = id;
         this.name = name;
-        this.price = price;
+        this.priceMinor = priceMinor;
         this.stock = stock;
+        this.sku = sku;
     }
     
     // Getters
@@ -33,14 +47,18 @@ public class Product {
         return name; 
     }
     
-    public double getPrice() { 
-        return price; 
+    public long getPriceMinor() { 
+        return priceMinor; 
     }
     
     public int getStock() { 
         return stock; 
     }
     
+    public String getSku() {
+        return sku;
+    }
+    
     // Setters
     public void setId(int id) {
         this.id = id;
@@ -50,21 +68,26 @@ public class Product {
         this.name = name;
     }
     
-    public void setPrice(double price) {
-        this.price = price;
+    public void setPriceMinor(long priceMinor) {
+        this.priceMinor = priceMinor;
     }
     
     public void setStock(int stock) {
         this.stock = stock;
     }
     
+    public void setSku(String sku) {
+        this.sku = sku;
+    }
+    
     @Override
     public String toString() {
         return "Product{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
-                ", price=" + price +
+                ", price=" + Money.format(priceMinor) +
                 ", stock=" + stock +
+                (sku != null ? ", sku='" + sku + '\'' : "") +
                 '}';
     }
 }
\ No newline at end of file
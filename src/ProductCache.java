@@ -0,0 +1,299 @@
+/**
+ * ProductCache.java
+ * In-memory copy of the products table, kept current by DatabaseManager writes
+ * Place this file in: src/ProductCache.java
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProductCache {
+    private final long ttlNanos;
+    // Columnar copy of the table; products handed out are fresh views of it
+    private CatalogStore store = new CatalogStore(0);
+    // Rebuilt lazily when names or membership change; stock writes keep it
+    private int[] sortedIds;
+    // Rebuilt lazily when names change; stock-only writes keep it
+    private ProductSearchIndex searchIndex;
+    private boolean loaded = false;
+    private long loadedAt;
+    // Bumped on every write; a reload begun before the last put, remove or
+    // invalidate is dropped, since its rows may predate them
+    private long version = 0;
+    private long structuralVersion = 0;
+    // Version of the last stock write per product, relative to stockBase, so
+    // a reload keeps stock that changed while it ran instead of being dropped
+    private IntIndexMap stockWrites = new IntIndexMap(0);
+    private long stockBase = 0;
+    // Set while MySQL is unreachable: contents never expire and are the only catalog
+    private boolean pinned = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor for ProductCache
+     * @param ttlSeconds How long a full load stays valid; 0 or less disables caching
+     */
+    public ProductCache(long ttlSeconds) {
+        this.ttlNanos = ttlSeconds * 1000000000L;
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * All products sorted by name, if the cache holds a fresh copy.
+     * Each call builds new Product views, so callers may keep or change them.
+     * @return a new list of products, or null if the caller must reload
+     */
+    public synchronized ArrayList<Product> getAll() {
+        if (!isFresh()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return sorted();
+    }
+
+    /**
+     * Like getAll(), as a snapshot read by row, so the product table never
+     * needs a Product object per row
+     * @return the rows, or null if the caller must reload
+     */
+    public synchronized ProductRows getAllRows() {
+        if (!isFresh()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return store.rows(sortedIds());
+    }
+
+    private int[] sortedIds() {
+        if (sortedIds == null) {
+            sortedIds = store.idsSortedByName();
+        }
+        return sortedIds;
+    }
+
+    private ArrayList<Product> sorted() {
+        int[] ids = sortedIds();
+        ArrayList<Product> products = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            products.add(store.get(id));
+        }
+        return products;
+    }
+
+    /**
+     * Substring search over product names, ignoring case, served from memory
+     * @param query Search text
+     * @return matching products sorted by name, or null if the caller must reload
+     */
+    public synchronized ArrayList<Product> search(String query) {
+        if (!isFresh()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        int[] ids = searchIndex().search(query);
+        ArrayList<Product> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(store.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Like search(), as a snapshot read by row
+     * @return matching rows sorted by name, or null if the caller must reload
+     */
+    public synchronized ProductRows searchRows(String query) {
+        if (!isFresh()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return store.rows(searchIndex().search(query));
+    }
+
+    private ProductSearchIndex searchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new ProductSearchIndex(store, sortedIds());
+        }
+        return searchIndex;
+    }
+
+    /**
+     * @param productId Product ID
+     * @return the cached product, or null if unknown or the cache is stale
+     */
+    public synchronized Product get(int productId) {
+        return isFresh() ? store.get(productId) : null;
+    }
+
+    /**
+     * @param sku Scanned barcode or SKU
+     * @return the cached product, or null if unknown or the cache is stale
+     */
+    public synchronized Product getBySku(String sku) {
+        return isFresh() ? store.getBySku(sku) : null;
+    }
+
+    /**
+     * @return number of products held, fresh or not
+     */
+    public synchronized int size() {
+        return store.size();
+    }
+
+    /**
+     * @return true if reads are being served from memory
+     */
+    public synchronized boolean isFresh() {
+        if (!loaded) {
+            return false;
+        }
+        return pinned || (isEnabled() && System.nanoTime() - loadedAt < ttlNanos);
+    }
+    
+    /**
+     * Serve the current contents regardless of age, even with caching
+     * disabled. Used for the offline catalog; unpinning drops the contents.
+     * @param pinned true while the database is unreachable
+     */
+    public synchronized void setPinned(boolean pinned) {
+        if (this.pinned && !pinned) {
+            this.pinned = false;
+            invalidate();
+        }
+        this.pinned = pinned;
+    }
+
+    /**
+     * Mark the start of a reload from the database
+     * @return token to pass to replaceAll
+     */
+    public synchronized long beginLoad() {
+        return version;
+    }
+
+    /**
+     * Install a full catalog read from the database. Ignored if a product was
+     * put, removed or the cache invalidated after beginLoad(), since the
+     * catalog may already be outdated. Stock changes do not block it, so
+     * checkouts during a slow reload cannot keep the cache stale: products
+     * whose stock changed after beginLoad() keep the cached stock, which
+     * already includes the change the loaded row may or may not show.
+     * @param products Every product in the table; the cache takes ownership
+     * @param loadToken Value returned by beginLoad() before the query ran
+     */
+    public synchronized void replaceAll(CatalogStore products, long loadToken) {
+        if ((!isEnabled() && !pinned) || loadToken < structuralVersion) {
+            return;
+        }
+        if (loaded && version > loadToken) {
+            for (int row = 0; row < products.size(); row++) {
+                int productId = products.getId(row);
+                int written = stockWrites.get(productId);
+                if (written >= 0 && stockBase + written > loadToken) {
+                    int current = store.rowOf(productId);
+                    if (current >= 0) {
+                        products.setStock(productId, store.getStock(current));
+                    }
+                }
+            }
+        }
+        store = products;
+        sortedIds = null;
+        searchIndex = null;
+        loaded = true;
+        loadedAt = System.nanoTime();
+        structuralChange();
+    }
+
+    /**
+     * Install a full product list; see replaceAll(CatalogStore, long)
+     */
+    public synchronized void replaceAll(List<Product> products, long loadToken) {
+        replaceAll(CatalogStore.of(products), loadToken);
+    }
+
+    /**
+     * Store a product that was inserted or updated in the database
+     */
+    public synchronized void put(Product product) {
+        if (store.put(product.getId(), product.getName(), product.getPriceMinor(),
+                      product.getStock(), product.getSku())) {
+            sortedIds = null;
+            searchIndex = null;
+        }
+        structuralChange();
+    }
+
+    public synchronized void remove(int productId) {
+        if (store.remove(productId)) {
+            sortedIds = null;
+            searchIndex = null;
+        }
+        structuralChange();
+    }
+
+    // Stock is updated in place; order and search index stay valid
+
+    public synchronized void setStock(int productId, int stock) {
+        if (store.setStock(productId, stock)) {
+            stockChange(productId);
+        }
+    }
+
+    public synchronized void adjustStock(int productId, int delta) {
+        if (store.adjustStock(productId, delta)) {
+            stockChange(productId);
+        }
+    }
+
+    private void stockChange(int productId) {
+        version++;
+        stockWrites.put(productId, (int) (version - stockBase));
+    }
+
+    // Reloads begun before now are dropped, so older stock stamps can go
+    private void structuralChange() {
+        version++;
+        structuralVersion = version;
+        stockWrites = new IntIndexMap(0);
+        stockBase = version;
+    }
+
+    /**
+     * Drop everything; the next read goes to the database
+     */
+    public synchronized void invalidate() {
+        store = new CatalogStore(0);
+        sortedIds = null;
+        searchIndex = null;
+        loaded = false;
+        structuralChange();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProductCache{" +
+                "size=" + store.size() +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                '}';
+    }
+}
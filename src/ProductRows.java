@@ -0,0 +1,151 @@
+/**
+ * ProductRows.java
+ * Read-only, row-indexed snapshot of a product list, for tables and the
+ * offline catalog file
+ * Place this file in: src/ProductRows.java
+ *
+ * Holds the listed products as columns copied out of a CatalogStore: IDs,
+ * prices and stock in primitive arrays, names and SKUs as spans of the
+ * store's byte arena. Taking a snapshot copies a few arrays; no Product or
+ * String is built until a row is actually read. The arena is shared, not
+ * copied: the store only ever appends to an arena or replaces it, so the
+ * spans stay valid after the store changes.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class ProductRows {
+    private final int size;
+    private final int[] ids;
+    private final long[] prices;
+    private final int[] stocks;
+    private final byte[] arena;
+    private final int[] nameStarts;
+    private final int[] nameLengths;
+    // Length -1 means no SKU
+    private final int[] skuStarts;
+    private final int[] skuLengths;
+
+    ProductRows(int size, int[] ids, long[] prices, int[] stocks, byte[] arena,
+                int[] nameStarts, int[] nameLengths, int[] skuStarts, int[] skuLengths) {
+        this.size = size;
+        this.ids = ids;
+        this.prices = prices;
+        this.stocks = stocks;
+        this.arena = arena;
+        this.nameStarts = nameStarts;
+        this.nameLengths = nameLengths;
+        this.skuStarts = skuStarts;
+        this.skuLengths = skuLengths;
+    }
+
+    /**
+     * Snapshot of products that did not come from a store, e.g. a search
+     * answered by MySQL while the cache is off
+     */
+    public static ProductRows of(List<Product> products) {
+        CatalogStore store = new CatalogStore(products.size());
+        int[] order = new int[products.size()];
+        for (int i = 0; i < order.length; i++) {
+            Product p = products.get(i);
+            store.put(p);
+            order[i] = p.getId();
+        }
+        return store.rows(order);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public long getPriceMinor(int row) {
+        return prices[row];
+    }
+
+    public int getStock(int row) {
+        return stocks[row];
+    }
+
+    public String getName(int row) {
+        return new String(arena, nameStarts[row], nameLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the SKU, or null if the product has none
+     */
+    public String getSku(int row) {
+        return skuLengths[row] < 0 ? null
+            : new String(arena, skuStarts[row], skuLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a new Product with the row's values
+     */
+    public Product product(int row) {
+        return new Product(ids[row], getName(row), prices[row], stocks[row], getSku(row));
+    }
+
+    /**
+     * CRC32 over every row's values, with the row count in the high bits:
+     * equal checksums mean the snapshots are all but certainly the same
+     */
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] fixed = new byte[24];
+        for (int row = 0; row < size; row++) {
+            putInt(fixed, 0, ids[row]);
+            putInt(fixed, 4, stocks[row]);
+            putInt(fixed, 8, (int) (prices[row] >>> 32));
+            putInt(fixed, 12, (int) prices[row]);
+            // Lengths keep bytes from moving between the name and the SKU
+            // unnoticed; -1 tells no SKU from an empty one
+            putInt(fixed, 16, nameLengths[row]);
+            putInt(fixed, 20, skuLengths[row]);
+            crc.update(fixed, 0, fixed.length);
+            crc.update(arena, nameStarts[row], nameLengths[row]);
+            if (skuLengths[row] >= 0) {
+                crc.update(arena, skuStarts[row], skuLengths[row]);
+            }
+        }
+        return ((long) size << 32) | crc.getValue();
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * @return true if the row shows the same ID, name, price and stock as
+     *         the other snapshot's row; names are compared as bytes
+     */
+    public boolean sameValues(int row, ProductRows other, int otherRow) {
+        if (ids[row] != other.ids[otherRow] || prices[row] != other.prices[otherRow]
+                || stocks[row] != other.stocks[otherRow]) {
+            return false;
+        }
+        int length = nameLengths[row];
+        if (length != other.nameLengths[otherRow]) {
+            return false;
+        }
+        int start = nameStarts[row];
+        int otherStart = other.nameStarts[otherRow];
+        if (arena == other.arena && start == otherStart) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[start + i] != other.arena[otherStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
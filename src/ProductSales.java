@@ -0,0 +1,53 @@
+/**
+ * ProductSales.java
+ * All-time sales of one product, read from the rollup tables
+ * Place this file in: src/ProductSales.java
+ */
+
+public class ProductSales {
+    private final int productId;
+    private final String productName;
+    private final long quantitySold;
+    private final long revenueMinor;
+    
+    /**
+     * Constructor for ProductSales
+     * @param productId Product ID
+     * @param productName Product name as last sold
+     * @param quantitySold Units sold
+     * @param revenueMinor Sum of line totals, in minor units (see Money)
+     */
+    public ProductSales(int productId, String productName, long quantitySold, long revenueMinor) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantitySold = quantitySold;
+        this.revenueMinor = revenueMinor;
+    }
+    
+    // Getters
+    public int getProductId() {
+        return productId;
+    }
+    
+    public String getProductName() {
+        return productName;
+    }
+    
+    public long getQuantitySold() {
+        return quantitySold;
+    }
+    
+    public long getRevenueMinor() {
+        return revenueMinor;
+    }
+    
+    @Override
+    public String toString() {
+        return "ProductSales{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", quantitySold=" + quantitySold +
+                ", revenue=" + Money.format(revenueMinor) +
+                '}';
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * ProductSearchIndex.java
+ * Trigram index over product names for fast substring search
+ * Place this file in: src/ProductSearchIndex.java
+ *
+ * Postings are one int array of positions, each trigram owning a run of
+ * it; trigrams are found through an open-addressing table of packed long
+ * keys, so the index holds no boxed keys or per-trigram objects.
+ */
+
+import java.util.Locale;
+
+public class ProductSearchIndex {
+    private static final int GRAM = 3;
+    private static final int[] NO_POSTINGS = new int[0];
+    private static final int MIN_CAPACITY = 16;
+
+    // Product IDs and case-folded names, in the order results are returned
+    private final int[] ids;
+    private final String[] foldedNames;
+    // Trigram -> its number + 1 (0 marks an empty slot); linear probing, at most half full
+    private long[] gramKeys;
+    private int[] gramNumbers;
+    private int gramCount = 0;
+    // Positions in ids[] of every name containing trigram g, ascending, are
+    // positions[starts[g]] up to positions[starts[g + 1]]
+    private final int[] starts;
+    private final int[] positions;
+
+    /**
+     * Build the index from the store's rows, without a Product per row
+     * @param store Catalog to index
+     * @param productIds IDs of products in the store, in the order results are returned
+     */
+    public ProductSearchIndex(CatalogStore store, int[] productIds) {
+        int size = productIds.length;
+        ids = productIds;
+        foldedNames = new String[size];
+        gramKeys = new long[MIN_CAPACITY];
+        gramNumbers = new int[MIN_CAPACITY];
+
+        // First pass numbers the trigrams and counts postings per trigram,
+        // so the positions are allocated once
+        int[] counts = new int[MIN_CAPACITY];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            String name = fold(store.getName(store.rowOf(ids[i])));
+            foldedNames[i] = name;
+            for (int start = 0; start + GRAM <= name.length(); start++) {
+                long key = gramKey(name, start);
+                if (seenEarlier(name, start, key)) continue;
+                int gram = addGram(key);
+                if (gram == counts.length) counts = grow(counts);
+                counts[gram]++;
+                total++;
+            }
+        }
+
+        starts = new int[gramCount + 1];
+        for (int gram = 0; gram < gramCount; gram++) {
+            starts[gram + 1] = starts[gram] + counts[gram];
+        }
+        // counts becomes each trigram's fill cursor
+        System.arraycopy(starts, 0, counts, 0, gramCount);
+        positions = new int[total];
+        for (int i = 0; i < size; i++) {
+            String name = foldedNames[i];
+            for (int start = 0; start + GRAM <= name.length(); start++) {
+                long key = gramKey(name, start);
+                if (seenEarlier(name, start, key)) continue;
+                positions[counts[findGram(key)]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Find products whose name contains the query, ignoring case
+     * @param query Text typed by the cashier
+     * @return matching product IDs in index order
+     */
+    public int[] search(String query) {
+        String q = fold(query.trim());
+        if (q.isEmpty()) {
+            return ids.clone();
+        }
+
+        int[] matches = new int[16];
+        int count = 0;
+
+        if (q.length() < GRAM) {
+            // Too short to have a trigram - scan the folded names directly
+            for (int i = 0; i < foldedNames.length; i++) {
+                if (foldedNames[i].contains(q)) {
+                    if (count == matches.length) matches = grow(matches);
+                    matches[count++] = ids[i];
+                }
+            }
+            return trim(matches, count);
+        }
+
+        // Candidates come from the rarest trigram, then each is verified
+        int rarest = -1;
+        for (int start = 0; start + GRAM <= q.length(); start++) {
+            int gram = findGram(gramKey(q, start));
+            if (gram < 0) {
+                return NO_POSTINGS;
+            }
+            if (rarest < 0 || postingCount(gram) < postingCount(rarest)) {
+                rarest = gram;
+            }
+        }
+
+        for (int p = starts[rarest]; p < starts[rarest + 1]; p++) {
+            int position = positions[p];
+            if (foldedNames[position].contains(q)) {
+                if (count == matches.length) matches = grow(matches);
+                matches[count++] = ids[position];
+            }
+        }
+        return trim(matches, count);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private int postingCount(int gram) {
+        return starts[gram + 1] - starts[gram];
+    }
+
+    // Number of the trigram, or -1 if no name contains it
+    private int findGram(long key) {
+        int mask = gramKeys.length - 1;
+        for (int slot = slotOf(key, mask); gramNumbers[slot] != 0; slot = (slot + 1) & mask) {
+            if (gramKeys[slot] == key) {
+                return gramNumbers[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Number of the trigram, numbering it if it is new
+    private int addGram(long key) {
+        if (gramCount * 2 >= gramKeys.length) {
+            growGrams();
+        }
+        int mask = gramKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (gramNumbers[slot] != 0) {
+            if (gramKeys[slot] == key) {
+                return gramNumbers[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        gramKeys[slot] = key;
+        gramNumbers[slot] = ++gramCount;
+        return gramCount - 1;
+    }
+
+    private void growGrams() {
+        long[] oldKeys = gramKeys;
+        int[] oldNumbers = gramNumbers;
+        gramKeys = new long[oldKeys.length * 2];
+        gramNumbers = new int[oldKeys.length * 2];
+        int mask = gramKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldNumbers[i] != 0) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (gramNumbers[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                gramKeys[slot] = oldKeys[i];
+                gramNumbers[slot] = oldNumbers[i];
+            }
+        }
+    }
+
+    // Fibonacci hashing of the packed chars
+    private static int slotOf(long key, int mask) {
+        int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    // Three UTF-16 chars packed into one key
+    private static long gramKey(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    // True if the same trigram already occurs earlier in the name,
+    // so a name is listed at most once per trigram
+    private static boolean seenEarlier(String name, int start, long key) {
+        for (int earlier = 0; earlier < start; earlier++) {
+            if (gramKey(name, earlier) == key) return true;
+        }
+        return false;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    private static int[] trim(int[] array, int length) {
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+}
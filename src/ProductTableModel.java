@@ -0,0 +1,85 @@
+/**
+ * ProductTableModel.java
+ * Table model that reads a ProductRows snapshot by row
+ * Place this file in: src/ProductTableModel.java
+ */
+
+import java.util.Collections;
+import javax.swing.table.AbstractTableModel;
+
+public class ProductTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"ID", "Product Name", "Price", "Stock"};
+    private static final Class<?>[] COLUMN_TYPES = {Integer.class, String.class, Long.class, Integer.class};
+
+    private ProductRows rows = ProductRows.of(Collections.<Product>emptyList());
+
+    /**
+     * Show a new product list. When the rows are the same products in the
+     * same order, only the rows whose values changed are repainted.
+     * @param newRows Products to display
+     */
+    public void setRows(ProductRows newRows) {
+        ProductRows old = rows;
+        rows = newRows;
+
+        if (old.size() != newRows.size() || !sameIds(old, newRows)) {
+            fireTableDataChanged();
+            return;
+        }
+
+        // Snapshots are copies, so every row is compared by value; fire one
+        // event per run of consecutive changed rows
+        int runStart = -1;
+        for (int row = 0; row <= newRows.size(); row++) {
+            boolean changed = row < newRows.size() && !old.sameValues(row, newRows, row);
+            if (changed && runStart < 0) {
+                runStart = row;
+            } else if (!changed && runStart >= 0) {
+                fireTableRowsUpdated(runStart, row - 1);
+                runStart = -1;
+            }
+        }
+    }
+
+    private static boolean sameIds(ProductRows a, ProductRows b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (a.getId(i) != b.getId(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param row Row index in the model
+     * @return a new Product with the values shown in that row
+     */
+    public Product getProductAt(int row) {
+        return rows.product(row);
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_TYPES[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case 0: return rows.getId(row);
+            case 1: return rows.getName(row);
+            case 2: return rows.getPriceMinor(row);
+            default: return rows.getStock(row);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * QueryCancel.java
+ * Lets one thread stop streaming queries that other threads are reading
+ * Place this file in: src/QueryCancel.java
+ *
+ * A streaming result set cannot simply be abandoned: closing it makes the
+ * driver read, and throw away, every row the server still has to send.
+ * cancel() therefore calls Statement.cancel() on each registered statement,
+ * which has MySQL kill the query (KILL QUERY on a separate connection), so
+ * the reader's next row fails at once and closing is cheap.
+ */
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+public class QueryCancel {
+    private final Set<Statement> running = new HashSet<>();
+    private volatile boolean cancelled = false;
+
+    /**
+     * Register a statement about to stream its results
+     * @return false if already cancelled; the statement should not be run
+     */
+    public synchronized boolean register(Statement statement) {
+        if (cancelled) {
+            return false;
+        }
+        running.add(statement);
+        return true;
+    }
+
+    public synchronized void unregister(Statement statement) {
+        running.remove(statement);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop every registered query; statements registered later are refused
+     */
+    public void cancel() {
+        Statement[] statements;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            statements = running.toArray(new Statement[0]);
+        }
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                System.err.println("Could not cancel a streaming query");
+                e.printStackTrace();
+            }
+        }
+    }
+}
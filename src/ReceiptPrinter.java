@@ -0,0 +1,69 @@
+/**
+ * ReceiptPrinter.java
+ * Where spooled receipts are sent
+ * Place this file in: src/ReceiptPrinter.java
+ */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.PrintServiceLookup;
+import javax.print.SimpleDoc;
+
+public interface ReceiptPrinter {
+    /**
+     * Send one whole receipt; may block until the printer has taken it
+     * @throws IOException if the printer is missing or rejects the job; the
+     *         spooler retries
+     */
+    void print(byte[] receipt) throws IOException;
+
+    /**
+     * Append receipts to a file or write them to a raw printer device
+     * (e.g. /dev/usb/lp0 or COM3), which is also how receipts are checked
+     * without a printer
+     */
+    static ReceiptPrinter toFile(final String path) {
+        return new ReceiptPrinter() {
+            public void print(byte[] receipt) throws IOException {
+                try (FileOutputStream out = new FileOutputStream(path, true)) {
+                    out.write(receipt);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return path;
+            }
+        };
+    }
+
+    /**
+     * Send receipts as raw bytes to the system's default print service
+     */
+    static ReceiptPrinter toDefaultPrintService() {
+        return new ReceiptPrinter() {
+            public void print(byte[] receipt) throws IOException {
+                // Looked up per job so a printer plugged in later is found
+                PrintService service = PrintServiceLookup.lookupDefaultPrintService();
+                if (service == null) {
+                    throw new IOException("No default printer");
+                }
+                DocPrintJob job = service.createPrintJob();
+                try {
+                    job.print(new SimpleDoc(receipt, DocFlavor.BYTE_ARRAY.AUTOSENSE, null), null);
+                } catch (PrintException e) {
+                    throw new IOException("Printer " + service.getName() + " rejected the receipt", e);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "default printer";
+            }
+        };
+    }
+}
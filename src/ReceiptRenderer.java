@@ -0,0 +1,231 @@
+/**
+ * ReceiptRenderer.java
+ * Lays out invoice receipts as plain text or ESC/POS printer bytes
+ * Place this file in: src/ReceiptRenderer.java
+ *
+ * The layout is fixed at 48 columns (font A on an 80 mm thermal printer).
+ * Rules, headings and the tax label are built once per renderer and the
+ * text and byte buffers are reused between receipts, so rendering a
+ * receipt allocates little beyond its result. A renderer is not
+ * thread-safe; give each thread its own.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+public class ReceiptRenderer {
+    public enum Format {
+        TEXT,
+        ESC_POS
+    }
+
+    public static final int WIDTH = 48;
+
+    // Item row: name, quantity, "RS" unit price, "RS" line total
+    private static final int NAME_WIDTH = 25;
+    private static final int QTY_WIDTH = 5;
+    private static final int PRICE_WIDTH = 7;
+    private static final int TOTAL_WIDTH = 9;
+    // Totals rows right-align their label in front of the total column
+    private static final int LABEL_WIDTH = NAME_WIDTH + 1 + QTY_WIDTH + 1 + 2 + PRICE_WIDTH + 1;
+
+    private static final String DOUBLE_RULE = repeat('=', WIDTH) + "\n";
+    private static final String RULE = repeat('-', WIDTH) + "\n";
+    private static final String TITLE = "                  INVOICE                       \n";
+    private static final String COLUMNS =
+        "ITEM                        QTY    PRICE      TOTAL\n";
+    private static final String FOOTER = "\n          Thank you for your business!\n";
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // ESC/POS commands
+    private static final byte[] INIT = {0x1B, '@'};
+    private static final byte[] BOLD_ON = {0x1B, 'E', 1};
+    private static final byte[] BOLD_OFF = {0x1B, 'E', 0};
+    private static final byte[] DOUBLE_HEIGHT_ON = {0x1D, '!', 0x01};
+    private static final byte[] DOUBLE_HEIGHT_OFF = {0x1D, '!', 0x00};
+    // Feed 4 lines so the footer clears the cutter, then partial cut
+    private static final byte[] FEED_AND_CUT = {0x1B, 'd', 4, 0x1D, 'V', 1};
+
+    private final String taxLabel;
+
+    // Reused between receipts
+    private final StringBuilder text = new StringBuilder(4096);
+    private final StringBuilder cell = new StringBuilder(32);
+    private byte[] bytes = new byte[4096];
+    private int size = 0;
+    private int flushed = 0;
+    private Format format;
+
+    /**
+     * Constructor for ReceiptRenderer
+     * @param taxBasisPoints Tax rate shown on the receipt, e.g. 1000 for 10%
+     */
+    public ReceiptRenderer(int taxBasisPoints) {
+        String rate = BigDecimal.valueOf(taxBasisPoints, 2).stripTrailingZeros().toPlainString();
+        this.taxLabel = "Tax (" + rate + "%):";
+    }
+
+    /**
+     * @return the receipt as text, one line per row
+     */
+    public String renderText(Invoice invoice) {
+        layout(invoice, Format.TEXT);
+        return text.toString();
+    }
+
+    /**
+     * @return the receipt in the given format; text is UTF-8
+     */
+    public byte[] render(Invoice invoice, Format format) {
+        if (format == Format.TEXT) {
+            return renderText(invoice).getBytes(StandardCharsets.UTF_8);
+        }
+        layout(invoice, format);
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Write the receipt straight from the reused buffers, e.g. to a file or
+     * printer device
+     */
+    public void render(Invoice invoice, Format format, OutputStream out) throws IOException {
+        if (format == Format.TEXT) {
+            out.write(renderText(invoice).getBytes(StandardCharsets.UTF_8));
+        } else {
+            layout(invoice, format);
+            out.write(bytes, 0, size);
+        }
+    }
+
+    private void layout(Invoice invoice, Format format) {
+        this.format = format;
+        text.setLength(0);
+        size = 0;
+        flushed = 0;
+
+        command(INIT);
+        text.append(DOUBLE_RULE);
+        command(BOLD_ON);
+        text.append(TITLE);
+        command(BOLD_OFF);
+        text.append(DOUBLE_RULE).append('\n');
+        // Write-behind invoices get their number once the flusher has stored them
+        text.append("Invoice #: ");
+        if (invoice.getId() > 0) {
+            text.append(invoice.getId());
+        } else {
+            text.append("Pending");
+        }
+        text.append('\n');
+        if (invoice.getClientRef() != null) {
+            text.append("Ref: ").append(invoice.getClientRef()).append('\n');
+        }
+        text.append("Date: ");
+        DATE_FORMAT.formatTo(invoice.getDateTime(), text);
+        text.append('\n');
+        text.append("Customer: ").append(invoice.getCustomerName()).append('\n');
+        text.append("Phone: ").append(invoice.getCustomerPhone()).append("\n\n");
+        text.append(RULE).append(COLUMNS).append(RULE);
+
+        for (BillItem item : invoice.getItems()) {
+            String name = item.getProductName();
+            int shown = Math.min(NAME_WIDTH, name.length());
+            text.append(name, 0, shown);
+            pad(NAME_WIDTH - shown);
+            text.append(' ');
+            cell.setLength(0);
+            cell.append(item.getQuantity());
+            rightAlign(QTY_WIDTH);
+            text.append(" RS");
+            amount(item.getPriceMinor(), PRICE_WIDTH);
+            text.append(" RS");
+            amount(item.getTotalMinor(), TOTAL_WIDTH);
+            text.append('\n');
+        }
+
+        text.append(RULE);
+        total("Subtotal:", invoice.getSubtotalMinor());
+        total(taxLabel, invoice.getTaxMinor());
+        text.append(DOUBLE_RULE);
+        command(BOLD_ON);
+        command(DOUBLE_HEIGHT_ON);
+        total("GRAND TOTAL:", invoice.getGrandTotalMinor());
+        command(DOUBLE_HEIGHT_OFF);
+        command(BOLD_OFF);
+        text.append(DOUBLE_RULE);
+        text.append(FOOTER);
+        command(FEED_AND_CUT);
+        flushText();
+    }
+
+    private void total(String label, long amount) {
+        pad(LABEL_WIDTH - label.length());
+        text.append(label).append(" RS");
+        amount(amount, TOTAL_WIDTH);
+        text.append('\n');
+    }
+
+    private void amount(long amount, int width) {
+        cell.setLength(0);
+        if (amount < 0) {
+            cell.append('-');
+        }
+        Money.appendPlain(cell, Math.abs(amount));
+        rightAlign(width);
+    }
+
+    // Values wider than their column push the row out, as %Ns would
+    private void rightAlign(int width) {
+        pad(width - cell.length());
+        text.append(cell);
+    }
+
+    private void pad(int count) {
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+        }
+    }
+
+    // Printer commands go between runs of text; plain text has none
+    private void command(byte[] command) {
+        if (format != Format.ESC_POS) {
+            return;
+        }
+        flushText();
+        ensureCapacity(command.length);
+        System.arraycopy(command, 0, bytes, size, command.length);
+        size += command.length;
+    }
+
+    // Printers default to an ASCII-compatible code page; anything outside
+    // printable ASCII is sent as '?' rather than as stray UTF-8 bytes
+    private void flushText() {
+        if (format != Format.ESC_POS) {
+            return;
+        }
+        int length = text.length();
+        ensureCapacity(length - flushed);
+        for (int i = flushed; i < length; i++) {
+            char c = text.charAt(i);
+            bytes[size++] = (byte) ((c >= 0x20 && c < 0x7F) || c == '\n' ? c : '?');
+        }
+        flushed = length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * ReplicaRouter.java
+ * Sends read-only report queries to MySQL read replicas that are keeping up
+ * Place this file in: src/ReplicaRouter.java
+ *
+ * Each replica gets a small ConnectionPool of its own. A daemon thread asks
+ * every replica for its replication status every few seconds and records
+ * how far behind the primary it is; a replica that is stopped, broken or
+ * further behind than the configured limit is skipped until it catches up.
+ * getConnection() hands out the usable replicas in turn and returns null
+ * when there are none, so the caller falls back to the primary.
+ *
+ * The reported lag (Seconds_Behind_Source) is only a health signal: it
+ * compares the replica's SQL thread with its relay log, reads 0 while the
+ * IO thread is behind or reconnecting, and says nothing exact about what
+ * the primary has committed. Reads that must see a given write therefore
+ * pass that write's GTID set, and a replica is used only once
+ * GTID_SUBSET() confirms it has applied all of it.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReplicaRouter {
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long checkMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private Thread checker;
+    private volatile boolean closed = false;
+
+    /**
+     * One replica and what the last check found
+     */
+    private static class Replica {
+        // The URL without its settings, for messages
+        final String name;
+        final ConnectionPool pool;
+        // Lag in milliseconds, or -1 if the replica is not replicating or unreachable
+        volatile long lagMillis = -1;
+        volatile String lastError = "not checked yet";
+
+        Replica(String url, ConnectionPool pool) {
+            int query = url.indexOf('?');
+            this.name = query < 0 ? url : url.substring(0, query);
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * Constructor for ReplicaRouter; call start() to begin checking lag
+     * @param urls JDBC URLs of the replicas
+     * @param user Database user; needs REPLICATION CLIENT to read the lag
+     * @param password Database password
+     * @param poolSize Maximum connections per replica
+     * @param borrowTimeoutMillis How long to wait for a replica connection
+     * @param validationTimeoutSeconds Timeout used when checking an idle connection
+     * @param maxLagSeconds Replicas further behind than this are not used
+     * @param checkMillis Pause between lag checks
+     */
+    public ReplicaRouter(List<String> urls, String user, String password, int poolSize,
+                         long borrowTimeoutMillis, int validationTimeoutSeconds,
+                         long maxLagSeconds, long checkMillis) {
+        for (String url : urls) {
+            replicas.add(new Replica(url, new ConnectionPool(url, user, password, 0, poolSize,
+                borrowTimeoutMillis, validationTimeoutSeconds)));
+        }
+        this.maxLagMillis = maxLagSeconds * 1000;
+        this.checkMillis = Math.max(100, checkMillis);
+    }
+
+    /**
+     * Check every replica once, then keep checking in the background
+     */
+    public void start() {
+        checkAll();
+        checker = new Thread(new Runnable() {
+            public void run() {
+                while (!closed) {
+                    try {
+                        Thread.sleep(checkMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    checkAll();
+                }
+            }
+        }, "replica-lag-checker");
+        checker.setDaemon(true);
+        checker.start();
+    }
+
+    /**
+     * Borrow a connection to a healthy replica that has applied the given transactions
+     * @param requiredGtids GTID set read from the primary after the caller's
+     *                      last write, or null if there is nothing to wait for
+     * @return a replica connection, or null to use the primary instead
+     */
+    public Connection getConnection(String requiredGtids) {
+        int count = replicas.size();
+        int first = Math.floorMod(next.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((first + i) % count);
+            long lag = replica.lagMillis;
+            if (lag < 0 || lag > maxLagMillis) {
+                continue;
+            }
+            Connection conn = null;
+            try {
+                conn = replica.pool.getConnection();
+                if (requiredGtids == null || hasApplied(conn, requiredGtids)) {
+                    return conn;
+                }
+                // Not there yet; another replica may be
+                conn.close();
+            } catch (SQLException e) {
+                closeQuietly(conn);
+                // Skipped until the next check finds it working again
+                markDown(replica, String.valueOf(e.getMessage()));
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasApplied(Connection conn, String gtids) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT GTID_SUBSET(?, @@GLOBAL.gtid_executed)")) {
+            pstmt.setString(1, gtids);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void checkAll() {
+        for (Replica replica : replicas) {
+            check(replica);
+        }
+    }
+
+    private void check(Replica replica) {
+        try (Connection conn = replica.pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            long lagSeconds = readLagSeconds(stmt);
+            if (lagSeconds < 0) {
+                markDown(replica, "replication is not running");
+                return;
+            }
+            replica.lagMillis = lagSeconds * 1000;
+            replica.lastError = null;
+        } catch (SQLException e) {
+            markDown(replica, String.valueOf(e.getMessage()));
+        }
+    }
+
+    // MySQL 8.0.22+ says REPLICA/Source; older servers only know SLAVE/Master.
+    // Returns -1 if the server is not a replica or its SQL thread is stopped.
+    private static long readLagSeconds(Statement stmt) throws SQLException {
+        ResultSet rs;
+        String column;
+        try {
+            rs = stmt.executeQuery("SHOW REPLICA STATUS");
+            column = "Seconds_Behind_Source";
+        } catch (SQLException e) {
+            rs = stmt.executeQuery("SHOW SLAVE STATUS");
+            column = "Seconds_Behind_Master";
+        }
+        try {
+            if (!rs.next()) {
+                return -1;
+            }
+            long lag = rs.getLong(column);
+            return rs.wasNull() ? -1 : lag;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private void markDown(Replica replica, String reason) {
+        // Driver messages run to several lines; the first says what went wrong
+        int newline = reason.indexOf('\n');
+        if (newline >= 0) {
+            reason = reason.substring(0, newline).trim();
+        }
+        // Logged when the reason changes, not on every check
+        if (!reason.equals(replica.lastError)) {
+            System.err.println("Read replica " + replica.name + " not used: " + reason);
+        }
+        replica.lagMillis = -1;
+        replica.lastError = reason;
+    }
+
+    /**
+     * @return one line per replica with its lag or why it is not used
+     */
+    public List<String> getStatus() {
+        List<String> lines = new ArrayList<>();
+        for (Replica replica : replicas) {
+            long lag = replica.lagMillis;
+            String state;
+            if (lag < 0) {
+                state = "DOWN (" + replica.lastError + ")";
+            } else if (lag > maxLagMillis) {
+                state = "LAGGING " + lag / 1000 + "s";
+            } else {
+                state = "OK, " + lag / 1000 + "s behind";
+            }
+            lines.add(replica.name + "  " + state +
+                      "  [active " + replica.pool.getActiveCount() + "/" + replica.pool.getMaxSize() + "]");
+        }
+        return lines;
+    }
+
+    public void close() {
+        closed = true;
+        if (checker != null) {
+            checker.interrupt();
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * RowMapper.java
+ * Builds an object from consecutive columns of the current result set row
+ * Place this file in: src/RowMapper.java
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface RowMapper<T> {
+    /**
+     * @param rs Result set positioned on a row
+     * @param column Index of the first column to read; the rest follow in
+     *               the order of the matching *_COLUMNS projection
+     * @return the mapped object
+     */
+    T map(ResultSet rs, int column) throws SQLException;
+}
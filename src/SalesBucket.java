@@ -0,0 +1,55 @@
+/**
+ * SalesBucket.java
+ * Sales totals for one day or one hour, read from the rollup tables
+ * Place this file in: src/SalesBucket.java
+ */
+
+import java.time.LocalDateTime;
+
+public class SalesBucket {
+    private final LocalDateTime start;
+    private final int invoiceCount;
+    private final long itemsSold;
+    private final long grandTotalMinor;
+    
+    /**
+     * Constructor for SalesBucket
+     * @param start Start of the day or hour
+     * @param invoiceCount Number of invoices in the bucket
+     * @param itemsSold Units sold in the bucket
+     * @param grandTotalMinor Sum of grand totals, in minor units (see Money)
+     */
+    public SalesBucket(LocalDateTime start, int invoiceCount, long itemsSold, long grandTotalMinor) {
+        this.start = start;
+        this.invoiceCount = invoiceCount;
+        this.itemsSold = itemsSold;
+        this.grandTotalMinor = grandTotalMinor;
+    }
+    
+    // Getters
+    public LocalDateTime getStart() {
+        return start;
+    }
+    
+    public int getInvoiceCount() {
+        return invoiceCount;
+    }
+    
+    public long getItemsSold() {
+        return itemsSold;
+    }
+    
+    public long getGrandTotalMinor() {
+        return grandTotalMinor;
+    }
+    
+    @Override
+    public String toString() {
+        return "SalesBucket{" +
+                "start=" + start +
+                ", invoiceCount=" + invoiceCount +
+                ", itemsSold=" + itemsSold +
+                ", grandTotal=" + Money.format(grandTotalMinor) +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * SaveResult.java
+ * Outcome of saving an invoice, including which products ran short
+ * Place this file in: src/SaveResult.java
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+public class SaveResult {
+    public enum Status {
+        // Committed to MySQL
+        SAVED,
+        // Durable in the local journal, committed to MySQL later
+        QUEUED,
+        // Rolled back because at least one product did not have enough stock
+        OUT_OF_STOCK,
+        // Rolled back because of a database error
+        FAILED
+    }
+
+    private static final SaveResult SAVED = new SaveResult(Status.SAVED, Collections.<Integer>emptyList());
+    private static final SaveResult QUEUED = new SaveResult(Status.QUEUED, Collections.<Integer>emptyList());
+    private static final SaveResult FAILED = new SaveResult(Status.FAILED, Collections.<Integer>emptyList());
+
+    private final Status status;
+    private final List<Integer> shortProductIds;
+    // Set on FAILED results that retrying cannot fix
+    private final String rejection;
+
+    private SaveResult(Status status, List<Integer> shortProductIds) {
+        this(status, shortProductIds, null);
+    }
+
+    private SaveResult(Status status, List<Integer> shortProductIds, String rejection) {
+        this.status = status;
+        this.shortProductIds = shortProductIds;
+        this.rejection = rejection;
+    }
+
+    public static SaveResult saved() {
+        return SAVED;
+    }
+
+    public static SaveResult queued() {
+        return QUEUED;
+    }
+
+    public static SaveResult failed() {
+        return FAILED;
+    }
+
+    /**
+     * A failure caused by the invoice itself, such as a constraint violation
+     * or a value too long for its column; saving it again fails the same way
+     * @param reason What MySQL refused
+     */
+    public static SaveResult rejected(String reason) {
+        return new SaveResult(Status.FAILED, Collections.<Integer>emptyList(), reason);
+    }
+
+    /**
+     * @param productIds Products whose stock was lower than the quantity sold
+     */
+    public static SaveResult outOfStock(List<Integer> productIds) {
+        return new SaveResult(Status.OUT_OF_STOCK, Collections.unmodifiableList(productIds));
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the invoice is safely stored, in MySQL or the journal
+     */
+    public boolean isSuccess() {
+        return status == Status.SAVED || status == Status.QUEUED;
+    }
+
+    /**
+     * @return products that ran short, in ascending ID order; empty unless OUT_OF_STOCK
+     */
+    public List<Integer> getShortProductIds() {
+        return shortProductIds;
+    }
+
+    /**
+     * @return true if the save failed for a reason that retrying cannot fix
+     */
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    /**
+     * @return what MySQL refused, or null unless isRejected()
+     */
+    public String getRejection() {
+        return rejection;
+    }
+
+    @Override
+    public String toString() {
+        return "SaveResult{" +
+                "status=" + status +
+                ", shortProductIds=" + shortProductIds +
+                (rejection != null ? ", rejection=" + rejection : "") +
+                '}';
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * SchemaMigrator.java
+ * Applies ordered, idempotent schema migrations tracked in schema_version
+ * Place this file in: src/SchemaMigrator.java
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+public class SchemaMigrator {
+    // Serializes terminals that start at the same time against one database
+    private static final String LOCK_NAME = "billing_system_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final ArrayList<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator() {
+        migration(1, "Base tables",
+            createTable(
+                "CREATE TABLE IF NOT EXISTS products (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, " +
+                "price DECIMAL(10, 2) NOT NULL, " +
+                "stock INT NOT NULL, " +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"),
+            createTable(
+                "CREATE TABLE IF NOT EXISTS invoices (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "customer_name VARCHAR(255) NOT NULL, " +
+                "customer_phone VARCHAR(20), " +
+                "date_time DATETIME NOT NULL, " +
+                "subtotal DECIMAL(10, 2) NOT NULL, " +
+                "tax DECIMAL(10, 2) NOT NULL, " +
+                "grand_total DECIMAL(10, 2) NOT NULL, " +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"),
+            createTable(
+                "CREATE TABLE IF NOT EXISTS invoice_items (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "invoice_id INT NOT NULL, " +
+                "product_id INT NOT NULL, " +
+                "product_name VARCHAR(255) NOT NULL, " +
+                "price DECIMAL(10, 2) NOT NULL, " +
+                "quantity INT NOT NULL, " +
+                "total DECIMAL(10, 2) NOT NULL, " +
+                "FOREIGN KEY (invoice_id) REFERENCES invoices(id) ON DELETE CASCADE, " +
+                "INDEX idx_invoice_id (invoice_id)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"));
+
+        // Indexes sql/schema.sql always had but the old runtime DDL did not
+        migration(2, "Performance indexes",
+            addIndex("products", "idx_name", "name"),
+            addIndex("invoices", "idx_date_time", "date_time"),
+            addIndex("invoices", "idx_customer_name", "customer_name"),
+            addIndex("invoice_items", "idx_product_id", "product_id"));
+
+        migration(3, "Sales rollup tables",
+            createTable(
+                "CREATE TABLE IF NOT EXISTS sales_daily (" +
+                "sale_date DATE PRIMARY KEY, " +
+                "invoice_count INT NOT NULL, " +
+                "items_sold BIGINT NOT NULL, " +
+                "subtotal DECIMAL(14, 2) NOT NULL, " +
+                "tax DECIMAL(14, 2) NOT NULL, " +
+                "grand_total DECIMAL(14, 2) NOT NULL" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"),
+            createTable(
+                "CREATE TABLE IF NOT EXISTS sales_hourly (" +
+                "sale_hour DATETIME PRIMARY KEY, " +
+                "invoice_count INT NOT NULL, " +
+                "items_sold BIGINT NOT NULL, " +
+                "grand_total DECIMAL(14, 2) NOT NULL" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"),
+            createTable(
+                "CREATE TABLE IF NOT EXISTS product_sales (" +
+                "product_id INT PRIMARY KEY, " +
+                "product_name VARCHAR(255) NOT NULL, " +
+                "quantity_sold BIGINT NOT NULL, " +
+                "revenue DECIMAL(14, 2) NOT NULL, " +
+                "INDEX idx_quantity_sold (quantity_sold)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"));
+
+        // Covering indexes, so rollup-rebuild queries never touch invoice_items rows.
+        // They lead with the same columns as idx_invoice_id and idx_product_id,
+        // which only cost every item insert from here on; idx_invoice_quantity
+        // now backs the invoice_id foreign key
+        migration(4, "Covering indexes for reports",
+            addIndex("invoice_items", "idx_invoice_quantity", "invoice_id, quantity"),
+            addIndex("invoice_items", "idx_product_sales", "product_id, quantity, total"),
+            dropIndex("invoice_items", "idx_invoice_id"),
+            dropIndex("invoice_items", "idx_product_id"));
+
+        // Lets a replayed journal batch recognise invoices that were already committed
+        migration(5, "Invoice client references",
+            addColumn("invoices", "client_ref", "VARCHAR(36) NULL"),
+            addUniqueIndex("invoices", "uq_client_ref", "client_ref"));
+
+        // Barcode lookups for scanner lanes; NULL for products without one
+        migration(6, "Product SKUs",
+            addColumn("products", "sku", "VARCHAR(32) NULL"),
+            addUniqueIndex("products", "uq_sku", "sku"));
+    }
+
+    /**
+     * Bring the schema up to the latest version
+     * @param conn Connection to the application database
+     * @return number of migrations applied
+     * @throws SQLException if a migration fails; earlier ones stay applied
+     */
+    public int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INT PRIMARY KEY, " +
+                "description VARCHAR(255) NOT NULL, " +
+                "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+
+        acquireLock(conn);
+        try {
+            int current = getCurrentVersion(conn);
+            int applied = 0;
+            for (Migration migration : migrations) {
+                if (migration.version <= current) continue;
+
+                System.out.println("Applying schema migration " + migration.version +
+                                   ": " + migration.description);
+                // MySQL commits DDL implicitly, so every step is written to be safe to re-run
+                for (Step step : migration.steps) {
+                    step.apply(conn);
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.executeUpdate();
+                }
+                applied++;
+            }
+            return applied;
+        } finally {
+            releaseLock(conn);
+        }
+    }
+
+    /**
+     * @return the highest migration version this build knows about
+     */
+    public int getLatestVersion() {
+        return migrations.get(migrations.size() - 1).version;
+    }
+
+    private int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another terminal to finish migrating");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            // The lock is released anyway when the session ends
+        }
+    }
+
+    private void migration(int version, String description, Step... steps) {
+        migrations.add(new Migration(version, description, steps));
+    }
+
+    // Step factories - each one checks before it changes anything
+
+    private static Step createTable(final String sql) {
+        return new Step() {
+            public void apply(Connection conn) throws SQLException {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(sql);
+                }
+            }
+        };
+    }
+
+    private static Step addIndex(String table, String index, String columns) {
+        return index(table, index, "INDEX", columns);
+    }
+
+    private static Step addUniqueIndex(String table, String index, String columns) {
+        return index(table, index, "UNIQUE INDEX", columns);
+    }
+
+    private static Step index(final String table, final String index, final String kind,
+                              final String columns) {
+        return new Step() {
+            public void apply(Connection conn) throws SQLException {
+                if (exists(conn,
+                        "SELECT 1 FROM information_schema.statistics " +
+                        "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?",
+                        table, index)) {
+                    return;
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " ADD " + kind + " " + index + " (" + columns + ")");
+                }
+            }
+        };
+    }
+
+    private static Step dropIndex(final String table, final String index) {
+        return new Step() {
+            public void apply(Connection conn) throws SQLException {
+                if (!exists(conn,
+                        "SELECT 1 FROM information_schema.statistics " +
+                        "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?",
+                        table, index)) {
+                    return;
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " DROP INDEX " + index);
+                }
+            }
+        };
+    }
+
+    private static Step addColumn(final String table, final String column, final String definition) {
+        return new Step() {
+            public void apply(Connection conn) throws SQLException {
+                if (exists(conn,
+                        "SELECT 1 FROM information_schema.columns " +
+                        "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?",
+                        table, column)) {
+                    return;
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+                }
+            }
+        };
+    }
+
+    private static boolean exists(Connection conn, String sql, String table, String name)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final Step[] steps;
+
+        Migration(int version, String description, Step[] steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * ServerConfig.java
+ * Settings of the embedded HTTP/JSON billing API
+ * Place this file in: src/ServerConfig.java
+ */
+
+import java.util.Properties;
+
+public class ServerConfig {
+    private final int port;
+    private final String bindAddress;
+    private final long cartIdleMillis;
+
+    /**
+     * Constructor for ServerConfig
+     * @param port TCP port, or 0 if the API is disabled
+     * @param bindAddress Interface to listen on
+     * @param cartIdleMillis How long an untouched cart is kept
+     */
+    public ServerConfig(int port, String bindAddress, long cartIdleMillis) {
+        this.port = port;
+        this.bindAddress = bindAddress;
+        this.cartIdleMillis = cartIdleMillis;
+    }
+
+    /**
+     * Read the server.* settings; missing ones, or a missing file, get the defaults
+     */
+    public static ServerConfig load() {
+        Properties props = null;
+        try {
+            props = ConfigFile.load();
+        } catch (Exception e) {
+            System.err.println("Failed to load server settings; using defaults");
+            e.printStackTrace();
+        }
+        if (props == null) {
+            props = new Properties();
+        }
+        try {
+            return new ServerConfig(
+                Integer.parseInt(props.getProperty("server.port", "0").trim()),
+                props.getProperty("server.bind", BillingServer.LOOPBACK).trim(),
+                Long.parseLong(props.getProperty("server.cart.idle.minutes", "30").trim()) * 60000);
+        } catch (NumberFormatException e) {
+            System.err.println("Bad server.* setting; the billing API is disabled");
+            e.printStackTrace();
+            return new ServerConfig(0, BillingServer.LOOPBACK, 30 * 60000);
+        }
+    }
+
+    /**
+     * @return port for the embedded HTTP API (server.port), or 0 if it is disabled
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return interface the API listens on (server.bind); loopback unless configured
+     */
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    /**
+     * @return how long a remote terminal's cart survives without requests
+     */
+    public long getCartIdleMillis() {
+        return cartIdleMillis;
+    }
+}
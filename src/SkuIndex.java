@@ -0,0 +1,148 @@
+/**
+ * SkuIndex.java
+ * Open-addressing hash index from SKU/barcode to product ID
+ * Place this file in: src/SkuIndex.java
+ *
+ * Keys are 64-bit hashes of the SKU and values are product IDs, both in
+ * primitive arrays, so a lookup hashes the scanned code once, probes a few
+ * adjacent slots and asks the owner to confirm one candidate; nothing is
+ * boxed or allocated and the index holds no strings. The table is kept at
+ * most half full and deletes shift later entries back, so probes stay
+ * short without tombstones. Not thread-safe.
+ */
+
+public class SkuIndex {
+    private static final int MIN_CAPACITY = 16;
+    // 0 marks an empty slot; real hashes are never 0
+    private static final long EMPTY = 0;
+
+    /**
+     * Where the SKUs actually live; used to tell apart codes whose hashes collide
+     */
+    public interface Skus {
+        boolean hasSku(int productId, String sku);
+    }
+
+    private final Skus skus;
+    private long[] hashes;
+    private int[] productIds;
+    private int size = 0;
+
+    /**
+     * Constructor for SkuIndex
+     * @param expected Number of SKUs the index should hold without growing
+     * @param skus Owner of the SKU strings
+     */
+    public SkuIndex(int expected, Skus skus) {
+        this.skus = skus;
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        hashes = new long[capacity];
+        productIds = new int[capacity];
+    }
+
+    /**
+     * @param sku Scanned code, compared exactly (leading zeros count)
+     * @return the ID of the product with this SKU, or -1
+     */
+    public int get(String sku) {
+        long hash = hash(sku);
+        int mask = hashes.length - 1;
+        for (int slot = (int) hash & mask; hashes[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && skus.hasSku(productIds[slot], sku)) {
+                return productIds[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a SKU, or point it at another product. The owner must already
+     * report the SKU for this product.
+     */
+    public void put(String sku, int productId) {
+        if (size * 2 >= hashes.length) {
+            grow();
+        }
+        long hash = hash(sku);
+        int mask = hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY) {
+            if (hashes[slot] == hash
+                    && (productIds[slot] == productId || skus.hasSku(productIds[slot], sku))) {
+                productIds[slot] = productId;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        productIds[slot] = productId;
+        size++;
+    }
+
+    /**
+     * Drop a SKU while its owner still reports it for this product
+     * @param sku SKU to drop; unknown SKUs are ignored
+     */
+    public void remove(String sku, int productId) {
+        long hash = hash(sku);
+        int mask = hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (hashes[slot] != hash || productIds[slot] != productId) {
+            if (hashes[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Move back any later entry whose probe run passes through the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; hashes[next] != EMPTY; next = (next + 1) & mask) {
+            int home = (int) hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                hashes[hole] = hashes[next];
+                productIds[hole] = productIds[next];
+                hole = next;
+            }
+        }
+        hashes[hole] = EMPTY;
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        int[] oldIds = productIds;
+        hashes = new long[oldHashes.length * 2];
+        productIds = new int[oldHashes.length * 2];
+        int mask = hashes.length - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != EMPTY) {
+                int slot = (int) oldHashes[i] & mask;
+                while (hashes[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                productIds[slot] = oldIds[i];
+            }
+        }
+    }
+
+    // FNV-1a, then a finalizer so sequential barcodes spread over the low bits
+    private static long hash(String sku) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < sku.length(); i++) {
+            h ^= sku.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1 : h;
+    }
+}
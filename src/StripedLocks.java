@@ -0,0 +1,73 @@
+/**
+ * StripedLocks.java
+ * A fixed set of locks shared out by product ID, so threads in this JVM
+ * queue here instead of on InnoDB row locks for the same product
+ * Place this file in: src/StripedLocks.java
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * Constructor for StripedLocks
+     * @param stripes Number of locks, rounded up to a power of two (at most 2^30)
+     */
+    public StripedLocks(int stripes) {
+        // Rounding up from stripes - 1 turns 1 into 2, so 1 is its own case
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(Math.min(stripes - 1, 1 << 29)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Take the locks covering every given ID. Stripes are always taken in
+     * ascending order, so two callers can never deadlock each other.
+     * @param ids Product IDs
+     * @return the stripes held, to pass to unlock()
+     */
+    public int[] lock(Collection<Integer> ids) {
+        int[] stripes = new int[ids.size()];
+        int count = 0;
+        for (int id : ids) {
+            stripes[count++] = stripeOf(id);
+        }
+        Arrays.sort(stripes);
+
+        // Drop repeats - two IDs may share a stripe
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || stripes[unique - 1] != stripes[i]) {
+                stripes[unique++] = stripes[i];
+            }
+        }
+        int[] held = Arrays.copyOf(stripes, unique);
+
+        for (int stripe : held) {
+            locks[stripe].lock();
+        }
+        return held;
+    }
+
+    /**
+     * @param held Value returned by lock()
+     */
+    public void unlock(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            locks[held[i]].unlock();
+        }
+    }
+
+    // Spreads sequential IDs across stripes
+    private int stripeOf(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,42 @@
+@echo off
+REM Billing System - Test Script for Windows
+REM Usage: test.bat [CheckClass]
+REM Runs every test\*Check.java, or only the one named. No MySQL server is
+REM needed: Connector/J is left off the classpath on purpose, and checks that
+REM save invoices bring their own in-memory stand-in for it.
+
+REM Check if compiled files exist
+if not exist "bin" (
+    echo Error: Compiled files not found!
+    echo Please run compile.bat first
+    exit /b 1
+)
+
+if not exist "test-bin" mkdir test-bin
+
+echo Compiling checks...
+javac -encoding UTF-8 -cp bin -d test-bin test\*.java
+if %errorlevel% neq 0 (
+    echo Check compilation failed!
+    exit /b 1
+)
+
+if not "%1"=="" (
+    java -cp "test-bin;bin" %1
+    exit /b %errorlevel%
+)
+
+set FAILED=0
+for %%f in (test\*Check.java) do (
+    echo.
+    echo == %%~nf
+    java -cp "test-bin;bin" %%~nf
+    if errorlevel 1 set FAILED=1
+)
+
+echo.
+if "%FAILED%"=="1" (
+    echo Some checks FAILED
+    exit /b 1
+)
+echo All checks passed
@@ -0,0 +1,179 @@
+/**
+ * BillingServiceCheck.java
+ * Remote carts as the HTTP API drives them: a cart is claimed by exactly one
+ * checkout even when two terminals race for it, a refused or abandoned
+ * checkout gives it back, a repeated checkout returns the same invoice and
+ * takes the stock once, and idle carts expire
+ * Place this file in: test/BillingServiceCheck.java
+ *
+ * Runs against FakeStockDatabase; run it without Connector/J on the classpath.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BillingServiceCheck {
+    private static final int PRODUCT_ID = 1;
+    private static final int TAX_BASIS_POINTS = 1000;
+    private static final long IDLE_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        FakeStockDatabase db = FakeStockDatabase.install();
+        System.setProperty("billing.config", writeConfig().getPath());
+        // Connector/J is not on the classpath, so this reports the driver
+        // missing and skips connecting; saves still borrow from the pool
+        DatabaseManager dbManager = new DatabaseManager(false);
+        try {
+            BillingService service = new BillingService(dbManager, TAX_BASIS_POINTS, IDLE_MILLIS);
+            claimAndRelease(service, db);
+            racingTerminals(service, db);
+            repeatedCheckout(service, db);
+            idleExpiry(service, db);
+        } finally {
+            dbManager.closeConnection();
+            db.uninstall();
+        }
+        System.out.println("OK: billing service");
+    }
+
+    private static void claimAndRelease(BillingService service, FakeStockDatabase db) {
+        db.setStock(PRODUCT_ID, 1);
+        String cartId = service.openCart();
+        Cart cart = service.getCart(cartId);
+        Checks.check(service.addToCart(cart, product(5), 2) >= 0, "add to an open cart");
+
+        Checks.check(service.claimCart(cartId) == cart, "claim of an open cart");
+        Checks.checkEquals(null, service.getCart(cartId), "open cart lookup while claimed");
+        Checks.checkEquals(null, service.claimCart(cartId), "second claim of a claimed cart");
+        Checks.check(service.isCheckingOut(cartId), "claimed cart is checking out");
+
+        // Abandoned before saving, e.g. the cart turned out empty
+        service.releaseCart(cartId, cart);
+        Checks.check(service.getCart(cartId) == cart, "released cart is open again");
+        Checks.check(!service.isCheckingOut(cartId), "released cart is not checking out");
+
+        // The catalog said 5, the database has 1: refused, and the cart reopens
+        Checks.check(service.claimCart(cartId) == cart, "claim of a released cart");
+        SaveResult result = service.checkout(cartId, cart, service.createInvoice(cart, "", ""));
+        Checks.checkEquals(SaveResult.Status.OUT_OF_STOCK, result.getStatus(), "checkout of 2 with 1 in stock");
+        Checks.check(service.getCart(cartId) == cart, "refused cart is open again");
+        Checks.check(!service.isCheckingOut(cartId), "refused cart is not checking out");
+        Checks.checkEquals(null, service.getCheckedOutInvoice(cartId), "invoice of a refused cart");
+        Checks.checkEquals(1, db.getStock(PRODUCT_ID), "stock after a refused checkout");
+        service.closeCart(cartId);
+    }
+
+    // Two terminals send the same checkout at once, cart after cart
+    private static void racingTerminals(final BillingService service, FakeStockDatabase db)
+            throws InterruptedException {
+        int rounds = 200;
+        db.setStock(PRODUCT_ID, rounds);
+        for (int round = 0; round < rounds; round++) {
+            final String cartId = service.openCart();
+            service.addToCart(service.getCart(cartId), product(rounds), 1);
+
+            final AtomicInteger claimed = new AtomicInteger();
+            final AtomicInteger saved = new AtomicInteger();
+            final CountDownLatch go = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(2);
+            for (int terminal = 0; terminal < 2; terminal++) {
+                new Thread(() -> {
+                    try {
+                        go.await();
+                        Cart cart = service.claimCart(cartId);
+                        if (cart != null) {
+                            claimed.incrementAndGet();
+                            Invoice invoice = service.createInvoice(cart, "Race", "");
+                            if (service.checkout(cartId, cart, invoice).isSuccess()) {
+                                saved.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }).start();
+            }
+            go.countDown();
+            done.await();
+            Checks.checkEquals(1, claimed.get(), "round " + round + ": terminals that claimed the cart");
+            Checks.checkEquals(1, saved.get(), "round " + round + ": checkouts saved");
+            Checks.check(service.getCheckedOutInvoice(cartId) != null, "round " + round + ": invoice kept for retries");
+        }
+        Checks.checkEquals(rounds, db.getCommittedInvoices(), "invoices committed by racing terminals");
+        Checks.checkEquals(0, db.getStock(PRODUCT_ID), "stock left after racing terminals");
+        Checks.checkEquals(0, service.getOpenCartCount(), "open carts after racing terminals");
+    }
+
+    private static void repeatedCheckout(BillingService service, FakeStockDatabase db) {
+        db.setStock(PRODUCT_ID, 10);
+        String cartId = service.openCart();
+        Cart cart = service.getCart(cartId);
+        service.addToCart(cart, product(10), 3);
+        service.claimCart(cartId);
+        Invoice first = service.createInvoice(cart, "Retry", "");
+        Checks.checkEquals(SaveResult.Status.SAVED, service.checkout(cartId, cart, first).getStatus(),
+                           "first checkout");
+        Checks.check(first.getId() > 0, "first checkout got an invoice number");
+        Checks.checkEquals(db.getInvoiceId(cartId), first.getId(), "invoice stored under the cart ID");
+
+        // The terminal never saw the answer and sends the same checkout again
+        Checks.checkEquals(null, service.claimCart(cartId), "claim of a checked-out cart");
+        Checks.check(service.getCheckedOutInvoice(cartId) == first, "retry finds the first invoice");
+
+        // The same save reaching the database again, e.g. replayed after a lost reply
+        Invoice again = service.createInvoice(cart, "Retry", "");
+        Checks.checkEquals(SaveResult.Status.SAVED, service.checkout(cartId, cart, again).getStatus(),
+                           "repeated checkout");
+        Checks.checkEquals(first.getId(), again.getId(), "invoice number of the repeated checkout");
+        Checks.checkEquals(1, db.getCommittedInvoices(), "invoices committed for one cart");
+        Checks.checkEquals(7, db.getStock(PRODUCT_ID), "stock after a checkout saved twice");
+    }
+
+    private static void idleExpiry(BillingService service, FakeStockDatabase db) throws Exception {
+        db.setStock(PRODUCT_ID, 10);
+        String idle = service.openCart();
+        String busy = service.openCart();
+        String done = service.openCart();
+        Cart doneCart = service.getCart(done);
+        service.addToCart(doneCart, product(10), 1);
+        service.claimCart(done);
+        service.checkout(done, doneCart, service.createInvoice(doneCart, "", ""));
+
+        Thread.sleep(IDLE_MILLIS / 2);
+        Checks.check(service.getCart(busy) != null, "cart in use before the idle period");
+        Thread.sleep(IDLE_MILLIS * 3 / 4);
+
+        // Opening a cart sweeps, at most every quarter period: idle is now
+        // 1.25 periods old, busy only 0.75
+        service.openCart();
+        Checks.checkEquals(null, service.getCart(idle), "cart left idle for longer than the idle period");
+        Checks.check(service.getCart(busy) != null, "cart used within the idle period was dropped");
+        Checks.checkEquals(null, service.getCheckedOutInvoice(done), "checked-out cart kept past the idle period");
+        Checks.checkEquals(null, service.claimCart(idle), "claim of an expired cart");
+    }
+
+    private static Product product(int stock) {
+        return new Product(PRODUCT_ID, "Last Item", 100, stock);
+    }
+
+    private static File writeConfig() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("pool.max.size", "8");
+        props.setProperty("pool.timeout.ms", "60000");
+        props.setProperty("invoice.writeBehind", "false");
+        props.setProperty("offline.enabled", "false");
+        File file = File.createTempFile("billing-service-", ".properties");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, "BillingServiceCheck");
+        }
+        return file;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * CatalogStoreCheck.java
+ * Removing a product moves the last row into its place and keeps both
+ * indexes pointing at the right rows; renames that trigger arena compaction
+ * keep every name and SKU intact, and snapshots taken before still read
+ * their old values
+ * Place this file in: test/CatalogStoreCheck.java
+ */
+
+import java.lang.reflect.Field;
+
+public class CatalogStoreCheck {
+
+    public static void main(String[] args) throws Exception {
+        swapRemove();
+        compaction();
+        System.out.println("OK: catalog store");
+    }
+
+    private static void swapRemove() {
+        CatalogStore store = new CatalogStore(0);
+        for (int id = 1; id <= 5; id++) {
+            store.put(id, "Product " + id, id * 100L, id, "SKU-" + id);
+        }
+        // Non-ASCII names take the encoded path through the arena
+        store.put(6, "Café crème", 600, 6, null);
+
+        int removedRow = store.rowOf(2);
+        Checks.check(store.remove(2), "remove of a stored product");
+        Checks.check(!store.remove(2), "second remove of the same product");
+        Checks.checkEquals(5, store.size(), "size after remove");
+        Checks.checkEquals(-1, store.rowOf(2), "row of the removed product");
+        Checks.checkEquals(null, store.getBySku("SKU-2"), "lookup of the removed SKU");
+        Checks.checkEquals(removedRow, store.rowOf(6), "row of the last product, moved into the gap");
+        checkProduct(store, 6, "Café crème", 600, 6, null);
+        for (int id : new int[] {1, 3, 4, 5}) {
+            checkProduct(store, id, "Product " + id, id * 100L, id, "SKU-" + id);
+            Checks.checkEquals(id, store.getBySku("SKU-" + id).getId(), "product for SKU-" + id);
+        }
+
+        // Removing the last row moves nothing
+        int lastRow = store.size() - 1;
+        int lastId = store.getId(lastRow);
+        store.remove(lastId);
+        Checks.checkEquals(lastRow, store.size(), "size after removing the last row");
+        Checks.checkEquals(-1, store.rowOf(lastId), "row of the removed last product");
+
+        // A SKU moves with its product and frees the old code
+        store.put(1, "Product 1", 100, 1, "SKU-NEW");
+        Checks.checkEquals(null, store.getBySku("SKU-1"), "lookup of a replaced SKU");
+        Checks.checkEquals(1, store.getBySku("SKU-NEW").getId(), "lookup of the new SKU");
+    }
+
+    private static void compaction() throws Exception {
+        CatalogStore store = new CatalogStore(0);
+        int products = 200;
+        for (int id = 1; id <= products; id++) {
+            store.put(id, name(id, 0), id, id, "SKU-" + id);
+        }
+        ProductRows before = store.rows();
+
+        // Each round leaves 200 dead names of about 100 bytes behind
+        int rounds = 20;
+        for (int round = 1; round <= rounds; round++) {
+            for (int id = 1; id <= products; id++) {
+                Checks.check(store.put(id, name(id, round), id, id, "SKU-" + id), "rename reported");
+            }
+        }
+        // Without compaction every name ever written would still be there
+        int written = products * (rounds + 1) * 100;
+        Checks.check(arenaUsed(store) < written / 2,
+                     "arena holds " + arenaUsed(store) + " of " + written + " bytes written; never compacted");
+
+        for (int id = 1; id <= products; id++) {
+            checkProduct(store, id, name(id, rounds), id, id, "SKU-" + id);
+            Checks.checkEquals(id, store.getBySku("SKU-" + id).getId(), "product for SKU-" + id);
+        }
+        for (int row = 0; row < before.size(); row++) {
+            int id = before.getId(row);
+            Checks.checkEquals(name(id, 0), before.getName(row), "snapshot name of product " + id);
+            Checks.checkEquals("SKU-" + id, before.getSku(row), "snapshot SKU of product " + id);
+        }
+    }
+
+    private static String name(int id, int round) {
+        StringBuilder name = new StringBuilder("Product " + id + " round " + round + " ");
+        while (name.length() < 100) {
+            name.append('x');
+        }
+        return name.toString();
+    }
+
+    private static void checkProduct(CatalogStore store, int id, String name, long priceMinor,
+                                     int stock, String sku) {
+        Product p = store.get(id);
+        Checks.check(p != null, "product " + id + " is missing");
+        Checks.checkEquals(id, p.getId(), "ID of product " + id);
+        Checks.checkEquals(name, p.getName(), "name of product " + id);
+        Checks.checkEquals(priceMinor, p.getPriceMinor(), "price of product " + id);
+        Checks.checkEquals(stock, p.getStock(), "stock of product " + id);
+        Checks.checkEquals(sku, p.getSku(), "SKU of product " + id);
+    }
+
+    // Compaction has no public trace; look at the arena itself
+    private static int arenaUsed(CatalogStore store) throws Exception {
+        Field field = CatalogStore.class.getDeclaredField("arenaUsed");
+        field.setAccessible(true);
+        return field.getInt(store);
+    }
+}
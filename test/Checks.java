@@ -0,0 +1,23 @@
+/**
+ * Checks.java
+ * Assertions for the test\*Check programs, which run without JUnit or -ea
+ * Place this file in: test/Checks.java
+ */
+
+public final class Checks {
+
+    private Checks() {
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+}
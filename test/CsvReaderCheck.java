@@ -0,0 +1,92 @@
+/**
+ * CsvReaderCheck.java
+ * Quoted fields keep their commas, doubled quotes and line breaks; LF and
+ * CRLF both end records, blank lines are skipped, line numbers count the
+ * breaks inside quotes, and an unclosed quote is an error
+ * Place this file in: test/CsvReaderCheck.java
+ *
+ * Every input is read twice: whole, and through a Reader that hands over
+ * one char per call, so each record also crosses buffer refills.
+ */
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvReaderCheck {
+
+    public static void main(String[] args) throws Exception {
+        for (boolean trickle : new boolean[] {false, true}) {
+            check(trickle, "a,b,c\nd,e,f\n",
+                  new String[][] {{"a", "b", "c"}, {"d", "e", "f"}}, 1, 2);
+            check(trickle, "\"x, y\",\"say \"\"hi\"\"\",plain\r\n",
+                  new String[][] {{"x, y", "say \"hi\"", "plain"}}, 1);
+            check(trickle, "\"two\r\nlines\",z\r\nnext,\"three\nmore\nlines\"\nlast",
+                  new String[][] {{"two\r\nlines", "z"}, {"next", "three\nmore\nlines"}, {"last"}}, 1, 3, 6);
+            check(trickle, ",,\n\"\",\"\"\"\"\n",
+                  new String[][] {{"", "", ""}, {"", "\""}}, 1, 2);
+            check(trickle, "\n\r\n\nid,price\n\n\r\n7,1.50\r\n\r\n",
+                  new String[][] {{"id", "price"}, {"7", "1.50"}}, 4, 7);
+            // A quote inside an unquoted field is just a character
+            check(trickle, "5\" disk,ab\"c\n",
+                  new String[][] {{"5\" disk", "ab\"c"}}, 1);
+            check(trickle, "", new String[0][]);
+
+            CsvReader reader = reader(trickle, "ok\n\"never closed,\nmore\n");
+            Checks.checkEquals(Arrays.asList("ok"), Arrays.asList(reader.next()), "record before the bad one");
+            try {
+                reader.next();
+                throw new AssertionError("an unclosed quote was accepted");
+            } catch (IOException expected) {
+                Checks.check(expected.getMessage().contains("line 2"),
+                             "unclosed quote reported as: " + expected.getMessage());
+            }
+        }
+        System.out.println("OK: CSV reader");
+    }
+
+    private static void check(boolean trickle, String input, String[][] expected, long... lines)
+            throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        List<Long> recordLines = new ArrayList<>();
+        try (CsvReader reader = reader(trickle, input)) {
+            String[] record;
+            while ((record = reader.next()) != null) {
+                records.add(Arrays.asList(record));
+                recordLines.add(reader.getLineNumber());
+            }
+        }
+        List<List<String>> wanted = new ArrayList<>();
+        for (String[] record : expected) {
+            wanted.add(Arrays.asList(record));
+        }
+        List<Long> wantedLines = new ArrayList<>();
+        for (long line : lines) {
+            wantedLines.add(line);
+        }
+        String what = (trickle ? "one char at a time, " : "") + "records of " + printable(input);
+        Checks.checkEquals(wanted, records, what);
+        Checks.checkEquals(wantedLines, recordLines, "start lines of " + what);
+    }
+
+    private static CsvReader reader(boolean trickle, String input) {
+        Reader in = new StringReader(input);
+        if (trickle) {
+            in = new FilterReader(in) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    return super.read(buffer, offset, Math.min(length, 1));
+                }
+            };
+        }
+        return new CsvReader(in);
+    }
+
+    private static String printable(String input) {
+        return "\"" + input.replace("\r", "\\r").replace("\n", "\\n") + "\"";
+    }
+}
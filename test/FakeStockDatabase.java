@@ -0,0 +1,382 @@
+/**
+ * FakeStockDatabase.java
+ * Just enough of a MySQL server, in memory, for a checkout to run against
+ * Place this file in: test/FakeStockDatabase.java
+ *
+ * Registers itself as the JDBC driver for jdbc:mysql: URLs, so checks using
+ * it run without Connector/J on the classpath. It understands the
+ * statements DatabaseManager.commitInvoices() issues and nothing else;
+ * anything unexpected fails loudly. An UPDATE of a stock row takes that
+ * row's lock and holds it until commit or rollback, as InnoDB does, so
+ * concurrent checkouts interleave the way they would against MySQL and
+ * "stock >= ?" is evaluated by whichever transaction holds the row.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+public class FakeStockDatabase implements Driver {
+    // Same default as MySQL's innodb_lock_wait_timeout
+    private static final long LOCK_WAIT_SECONDS = 50;
+
+    private final Map<Integer, Integer> stock = new ConcurrentHashMap<>();
+    private final Map<Integer, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    private final AtomicInteger nextInvoiceId = new AtomicInteger(1);
+    private final AtomicInteger committedInvoices = new AtomicInteger();
+    private final AtomicInteger lowestStock = new AtomicInteger(Integer.MAX_VALUE);
+    // Committed invoices by client reference, unique as uq_client_ref makes them
+    private final Map<String, Integer> invoiceByClientRef = new ConcurrentHashMap<>();
+
+    /**
+     * Create a fake database and make it the driver for jdbc:mysql: URLs
+     */
+    public static FakeStockDatabase install() throws SQLException {
+        FakeStockDatabase db = new FakeStockDatabase();
+        DriverManager.registerDriver(db);
+        return db;
+    }
+
+    public void uninstall() throws SQLException {
+        DriverManager.deregisterDriver(this);
+    }
+
+    public void setStock(int productId, int units) {
+        stock.put(productId, units);
+        lowestStock.set(Integer.MAX_VALUE);
+        committedInvoices.set(0);
+    }
+
+    public int getStock(int productId) {
+        return stock.get(productId);
+    }
+
+    /**
+     * @return lowest stock any product reached since setStock(), even inside
+     *         a transaction that was later rolled back
+     */
+    public int getLowestStock() {
+        return lowestStock.get();
+    }
+
+    public int getCommittedInvoices() {
+        return committedInvoices.get();
+    }
+
+    /**
+     * @return ID of the committed invoice with this client reference, or null
+     */
+    public Integer getInvoiceId(String clientRef) {
+        return invoiceByClientRef.get(clientRef);
+    }
+
+    // Driver
+
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {Connection.class}, new Session());
+    }
+
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith("jdbc:mysql:");
+    }
+
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    public int getMajorVersion() {
+        return 8;
+    }
+
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /**
+     * One connection and its open transaction
+     */
+    private final class Session implements InvocationHandler {
+        private boolean autoCommit = true;
+        private boolean closed = false;
+        private final List<Runnable> undo = new ArrayList<>();
+        private final List<ReentrantLock> held = new ArrayList<>();
+        private int pendingInvoices = 0;
+        private final Map<String, Integer> pendingClientRefs = new HashMap<>();
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class}, new Statement(this, (String) args[0]));
+                case "setAutoCommit":
+                    boolean on = (Boolean) args[0];
+                    if (on && !autoCommit) {
+                        commit();
+                    }
+                    autoCommit = on;
+                    return null;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "commit":
+                    commit();
+                    return null;
+                case "rollback":
+                    rollback();
+                    return null;
+                case "isValid":
+                    return !closed;
+                case "isClosed":
+                    return closed;
+                case "close":
+                    rollback();
+                    closed = true;
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "FakeStockDatabase connection";
+                default:
+                    throw new SQLFeatureNotSupportedException("Connection." + method.getName());
+            }
+        }
+
+        void lockRow(int productId) throws SQLException {
+            ReentrantLock lock = rowLocks.computeIfAbsent(productId, id -> new ReentrantLock());
+            if (lock.isHeldByCurrentThread()) {
+                return;
+            }
+            try {
+                if (!lock.tryLock(LOCK_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new SQLException("Lock wait timeout exceeded", "HY000", 1205);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a row lock", e);
+            }
+            held.add(lock);
+        }
+
+        void changed(Runnable reverse) {
+            undo.add(reverse);
+            if (autoCommit) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            committedInvoices.addAndGet(pendingInvoices);
+            invoiceByClientRef.putAll(pendingClientRefs);
+            end();
+        }
+
+        private void rollback() {
+            for (int i = undo.size() - 1; i >= 0; i--) {
+                undo.get(i).run();
+            }
+            end();
+        }
+
+        private void end() {
+            undo.clear();
+            pendingInvoices = 0;
+            pendingClientRefs.clear();
+            for (ReentrantLock lock : held) {
+                lock.unlock();
+            }
+            held.clear();
+        }
+    }
+
+    /**
+     * A prepared statement; parameters are kept by index until executed
+     */
+    private final class Statement implements InvocationHandler {
+        private final Session session;
+        private final String sql;
+        private Map<Integer, Object> params = new HashMap<>();
+        private final List<Map<Integer, Object>> batch = new ArrayList<>();
+        private int generatedKey = 0;
+
+        Statement(Session session, String sql) {
+            this.session = session;
+            this.sql = sql;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                params.put((Integer) args[0], args[1]);
+                return null;
+            }
+            switch (name) {
+                case "addBatch":
+                    batch.add(params);
+                    params = new HashMap<>();
+                    return null;
+                case "executeBatch":
+                    int[] counts = new int[batch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = execute(batch.get(i));
+                    }
+                    batch.clear();
+                    return counts;
+                case "executeUpdate":
+                    return execute(params);
+                case "executeQuery":
+                    return query(params);
+                case "getGeneratedKeys":
+                    return resultSet(Arrays.asList(new Object[][] {{generatedKey}}));
+                case "clearParameters":
+                    params.clear();
+                    return null;
+                case "close":
+                case "setFetchSize":
+                case "setQueryTimeout":
+                    return null;
+                case "isClosed":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new SQLFeatureNotSupportedException("PreparedStatement." + name + " for " + sql);
+            }
+        }
+
+        private int execute(Map<Integer, Object> p) throws SQLException {
+            if (sql.startsWith("UPDATE products SET stock = stock - ? WHERE id = ?")) {
+                final int quantity = (Integer) p.get(1);
+                final int productId = (Integer) p.get(2);
+                session.lockRow(productId);
+                Integer current = stock.get(productId);
+                if (current == null) {
+                    return 0;
+                }
+                if (sql.endsWith("AND stock >= ?") && current < (Integer) p.get(3)) {
+                    return 0;
+                }
+                int left = current - quantity;
+                stock.put(productId, left);
+                lowestStock.accumulateAndGet(left, Math::min);
+                session.changed(() -> stock.merge(productId, quantity, Integer::sum));
+                return 1;
+            }
+            if (sql.startsWith("INSERT INTO invoices ")) {
+                String clientRef = (String) p.get(7);
+                if (clientRef != null && (invoiceByClientRef.containsKey(clientRef)
+                        || session.pendingClientRefs.containsKey(clientRef))) {
+                    throw new SQLIntegrityConstraintViolationException(
+                        "Duplicate entry '" + clientRef + "' for key 'uq_client_ref'", "23000", 1062);
+                }
+                generatedKey = nextInvoiceId.getAndIncrement();
+                session.pendingInvoices++;
+                if (clientRef != null) {
+                    session.pendingClientRefs.put(clientRef, generatedKey);
+                }
+                session.changed(() -> { });
+                return 1;
+            }
+            if (sql.startsWith("INSERT INTO invoice_items ") || sql.startsWith("INSERT INTO sales_daily ")
+                    || sql.startsWith("INSERT INTO sales_hourly ") || sql.startsWith("INSERT INTO product_sales ")) {
+                return 1;
+            }
+            throw new SQLException("FakeStockDatabase does not understand: " + sql);
+        }
+
+        private ResultSet query(Map<Integer, Object> p) throws SQLException {
+            if (sql.startsWith("SELECT client_ref, id FROM invoices WHERE client_ref IN")) {
+                List<Object[]> rows = new ArrayList<>();
+                for (int i = 1; p.containsKey(i); i++) {
+                    Integer invoiceId = invoiceByClientRef.get((String) p.get(i));
+                    if (invoiceId != null) {
+                        rows.add(new Object[] {p.get(i), invoiceId});
+                    }
+                }
+                return resultSet(rows);
+            }
+            if (sql.startsWith("SELECT id, stock FROM products WHERE id IN")) {
+                List<Object[]> rows = new ArrayList<>();
+                for (int i = 1; p.containsKey(i); i++) {
+                    Integer productId = (Integer) p.get(i);
+                    Integer units = stock.get(productId);
+                    if (units != null) {
+                        rows.add(new Object[] {productId, units});
+                    }
+                }
+                return resultSet(rows);
+            }
+            throw new SQLException("FakeStockDatabase does not understand: " + sql);
+        }
+    }
+
+    private static ResultSet resultSet(final List<Object[]> rows) {
+        InvocationHandler handler = new InvocationHandler() {
+            private int row = -1;
+            private boolean wasNull = false;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "next":
+                        return ++row < rows.size();
+                    case "getInt":
+                        Object value = rows.get(row)[(Integer) args[0] - 1];
+                        wasNull = value == null;
+                        return value == null ? 0 : ((Number) value).intValue();
+                    case "getString":
+                        Object text = rows.get(row)[(Integer) args[0] - 1];
+                        wasNull = text == null;
+                        return text == null ? null : text.toString();
+                    case "wasNull":
+                        return wasNull;
+                    case "close":
+                        return null;
+                    case "isClosed":
+                        return false;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new SQLFeatureNotSupportedException("ResultSet." + method.getName());
+                }
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(FakeStockDatabase.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, handler);
+    }
+}
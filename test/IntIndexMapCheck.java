@@ -0,0 +1,71 @@
+/**
+ * IntIndexMapCheck.java
+ * Removing a key leaves every other key findable: backward-shift deletes
+ * close the gap in a probe run without tombstones, including runs that wrap
+ * around the end of the table
+ * Place this file in: test/IntIndexMapCheck.java
+ *
+ * Replays a long random mix of puts and removes against a HashMap, over few
+ * enough keys that probe runs collide and wrap all the time.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntIndexMapCheck {
+
+    public static void main(String[] args) {
+        IntIndexMap map = new IntIndexMap(4);
+        Checks.checkEquals(-1, map.get(7), "get of a key never stored");
+        Checks.checkEquals(-1, map.remove(7), "remove of a key never stored");
+        try {
+            map.put(0, 1);
+            throw new AssertionError("put(0, ...) was accepted; 0 marks an empty slot");
+        } catch (IllegalArgumentException expected) {
+            // 0 cannot be stored
+        }
+
+        // Grows from 16 slots up to 128 and churns there
+        for (int keys : new int[] {6, 24, 60}) {
+            replay(new Random(keys), keys, 200000);
+        }
+
+        // Remove everything in a different order than it went in
+        IntIndexMap all = new IntIndexMap(0);
+        for (int key = 1; key <= 1000; key++) {
+            all.put(key * 7919, key);
+        }
+        for (int key = 1000; key >= 1; key -= 2) {
+            Checks.checkEquals(key, all.remove(key * 7919), "remove of key " + key * 7919);
+        }
+        for (int key = 1; key <= 1000; key++) {
+            Checks.checkEquals(key % 2 == 1 ? key : -1, all.get(key * 7919), "get of key " + key * 7919);
+        }
+        Checks.checkEquals(500, all.size(), "size after removing half");
+        System.out.println("OK: int index map");
+    }
+
+    private static void replay(Random random, int keys, int steps) {
+        IntIndexMap map = new IntIndexMap(0);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int step = 0; step < steps; step++) {
+            int key = 1 + random.nextInt(keys);
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                Checks.checkEquals(old == null ? -1 : old, map.remove(key),
+                                   "step " + step + ": remove(" + key + ")");
+            } else {
+                int value = random.nextInt(1000);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            Checks.checkEquals(expected.size(), map.size(), "step " + step + ": size");
+            // Every key, present or not, after each change
+            for (int k = 1; k <= keys; k++) {
+                Integer value = expected.get(k);
+                Checks.checkEquals(value == null ? -1 : value, map.get(k), "step " + step + ": get(" + k + ")");
+            }
+        }
+    }
+}
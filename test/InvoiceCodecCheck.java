@@ -0,0 +1,70 @@
+/**
+ * InvoiceCodecCheck.java
+ * Invoices come back from the journal's binary form exactly as they went in,
+ * with and without the optional fields, and damaged data is refused
+ * Place this file in: test/InvoiceCodecCheck.java
+ */
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class InvoiceCodecCheck {
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<BillItem> items = new ArrayList<>();
+        items.add(new BillItem(42, "Café au lait", 350, 2));
+        items.add(new BillItem(7, "Bread", 1000000000000L, 1));
+        items.add(new BillItem(Integer.MAX_VALUE, "", 0, 3));
+        // Totals past 2^31 minor units, and the last nanosecond of a leap day
+        Invoice full = new Invoice(1234, "Zoë Müller", "+91 98765 43210",
+            LocalDateTime.of(2024, 2, 29, 23, 59, 59, 999999999),
+            1000000000700L, 70, 1000000000770L, items);
+        full.setClientRef("3f2b8c1e-5a7d-4e2f-9b1a-0c6d8e4f2a11");
+        roundTrip(full);
+
+        // No phone, no client reference, no items, not yet given an ID
+        Invoice bare = new Invoice(0, "Walk-in", null, LocalDateTime.of(1970, 1, 1, 0, 0),
+            0, 0, 0, new ArrayList<BillItem>());
+        roundTrip(bare);
+
+        byte[] data = InvoiceCodec.encode(full);
+        refused(Arrays.copyOf(data, data.length - 1), "truncated data");
+        byte[] future = data.clone();
+        future[0]++;
+        refused(future, "an unknown format version");
+        System.out.println("OK: invoice codec");
+    }
+
+    private static void roundTrip(Invoice invoice) throws IOException {
+        Invoice copy = InvoiceCodec.decode(InvoiceCodec.encode(invoice));
+        String what = "invoice " + invoice.getId() + " after a round trip: ";
+        Checks.checkEquals(invoice.getId(), copy.getId(), what + "ID");
+        Checks.checkEquals(invoice.getClientRef(), copy.getClientRef(), what + "client reference");
+        Checks.checkEquals(invoice.getCustomerName(), copy.getCustomerName(), what + "customer name");
+        Checks.checkEquals(invoice.getCustomerPhone(), copy.getCustomerPhone(), what + "customer phone");
+        Checks.checkEquals(invoice.getDateTime(), copy.getDateTime(), what + "date and time");
+        Checks.checkEquals(invoice.getSubtotalMinor(), copy.getSubtotalMinor(), what + "subtotal");
+        Checks.checkEquals(invoice.getTaxMinor(), copy.getTaxMinor(), what + "tax");
+        Checks.checkEquals(invoice.getGrandTotalMinor(), copy.getGrandTotalMinor(), what + "grand total");
+        Checks.checkEquals(invoice.getItems().size(), copy.getItems().size(), what + "item count");
+        for (int i = 0; i < invoice.getItems().size(); i++) {
+            BillItem item = invoice.getItems().get(i);
+            BillItem itemCopy = copy.getItems().get(i);
+            Checks.checkEquals(item.getProductId(), itemCopy.getProductId(), what + "item " + i + " product ID");
+            Checks.checkEquals(item.getProductName(), itemCopy.getProductName(), what + "item " + i + " name");
+            Checks.checkEquals(item.getPriceMinor(), itemCopy.getPriceMinor(), what + "item " + i + " price");
+            Checks.checkEquals(item.getQuantity(), itemCopy.getQuantity(), what + "item " + i + " quantity");
+        }
+    }
+
+    private static void refused(byte[] data, String what) {
+        try {
+            InvoiceCodec.decode(data);
+        } catch (IOException expected) {
+            return;
+        }
+        throw new AssertionError("decode accepted " + what);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * InvoiceJournalCheck.java
+ * Records survive a reopen; recovery stops at the first record whose CRC
+ * does not match or whose tail never reached the disk, and the next append
+ * overwrites it; checkpointed records are not handed out again
+ * Place this file in: test/InvoiceJournalCheck.java
+ *
+ * Damages the journal file directly between opens, the way a crash or a
+ * bad sector would leave it; writes only, since a file still mapped cannot
+ * be truncated on Windows.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InvoiceJournalCheck {
+    private static final int CAPACITY = 4096;
+    // Layout from InvoiceJournal: 16-byte header, then [length][CRC32][payload]
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    public static void main(String[] args) throws Exception {
+        reopen();
+        corruptRecord();
+        tornTail();
+        checkpoint();
+        singleOpener();
+        System.out.println("OK: invoice journal");
+    }
+
+    private static void reopen() throws Exception {
+        File path = newJournal();
+        InvoiceJournal journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        append(journal, "first", "second", "third");
+        journal.close();
+
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "after a clean reopen", "first", "second", "third");
+        journal.close();
+    }
+
+    private static void corruptRecord() throws Exception {
+        File path = newJournal();
+        InvoiceJournal journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        append(journal, "first", "second", "third");
+        journal.close();
+
+        // Flip one payload byte of "second"; "third" is behind it and lost too
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            long at = HEADER_SIZE + RECORD_HEADER_SIZE + "first".length() + RECORD_HEADER_SIZE + 2;
+            raw.seek(at);
+            int b = raw.read();
+            raw.seek(at);
+            raw.write(b ^ 0x01);
+        }
+
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "after a corrupt record", "first");
+        append(journal, "fourth");
+        journal.close();
+
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "after appending over a corrupt record", "first", "fourth");
+        journal.close();
+    }
+
+    private static void tornTail() throws Exception {
+        File path = newJournal();
+        InvoiceJournal journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        append(journal, "first", "a longer second record");
+        journal.close();
+
+        // The last record's length and CRC reached the disk, the end of its
+        // payload did not; the file is preallocated, so those bytes read as 0
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            raw.seek(HEADER_SIZE + RECORD_HEADER_SIZE + "first".length() + RECORD_HEADER_SIZE + 10);
+            raw.write(new byte["a longer second record".length() - 10]);
+        }
+
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "after a torn tail", "first");
+        journal.close();
+
+        // A length running past the end of the file is just as torn
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            raw.seek(HEADER_SIZE + RECORD_HEADER_SIZE + "first".length());
+            raw.writeInt(CAPACITY);
+        }
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "after a length past the end", "first");
+        journal.close();
+    }
+
+    private static void checkpoint() throws Exception {
+        File path = newJournal();
+        InvoiceJournal journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        append(journal, "first", "second", "third");
+        List<InvoiceJournal.Entry> batch = journal.readPending(2, 0);
+        journal.checkpoint(batch.get(1));
+        checkPending(journal, "after checkpointing two", "third");
+        journal.close();
+
+        journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        checkPending(journal, "reopened after checkpointing two", "third");
+        journal.checkpoint(journal.readPending(10, 0).get(0));
+        Checks.checkEquals(0, journal.getPendingCount(), "pending count once drained");
+
+        // Drained, the journal starts again at the top: a record filling all
+        // of it fits again
+        byte[] whole = new byte[CAPACITY - HEADER_SIZE - RECORD_HEADER_SIZE];
+        Checks.check(journal.append(whole), "a record filling the drained journal was refused");
+        Checks.check(!journal.append(new byte[1]), "an append to a full journal was accepted");
+        journal.close();
+    }
+
+    private static void singleOpener() throws Exception {
+        File path = newJournal();
+        InvoiceJournal journal = new InvoiceJournal(path.getPath(), CAPACITY);
+        try {
+            new InvoiceJournal(path.getPath(), CAPACITY).close();
+            throw new AssertionError("a journal already open was opened again");
+        } catch (IOException expected) {
+            // In use
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static File newJournal() throws IOException {
+        File path = File.createTempFile("journal-check-", ".dat");
+        path.delete();
+        path.deleteOnExit();
+        return path;
+    }
+
+    private static void append(InvoiceJournal journal, String... records) throws IOException {
+        for (String record : records) {
+            Checks.check(journal.append(record.getBytes(StandardCharsets.UTF_8)), "append of " + record);
+        }
+    }
+
+    private static void checkPending(InvoiceJournal journal, String when, String... expected)
+            throws InterruptedException {
+        List<String> pending = new ArrayList<>();
+        for (InvoiceJournal.Entry entry : journal.readPending(100, 0)) {
+            pending.add(new String(entry.getPayload(), StandardCharsets.UTF_8));
+        }
+        Checks.checkEquals(Arrays.asList(expected), pending, "records pending " + when);
+        Checks.checkEquals(expected.length, journal.getPendingCount(), "pending count " + when);
+    }
+}
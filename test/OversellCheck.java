@@ -0,0 +1,127 @@
+/**
+ * OversellCheck.java
+ * Many tills check out the last units of one product at the same moment:
+ * exactly the units in stock are sold, stock ends at what is left and never
+ * goes below zero, and every other checkout is refused as out of stock;
+ * asking for write-behind without allowing oversell changes none of that
+ * Place this file in: test/OversellCheck.java
+ *
+ * Runs DatabaseManager.saveInvoice() against FakeStockDatabase, so it needs
+ * no MySQL server; run it without Connector/J on the classpath. It checks
+ * how the checkout uses the conditional stock UPDATE and the row locks, not
+ * MySQL itself - StockContentionBenchmark does the same against a real one.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OversellCheck {
+    private static final int PRODUCT_ID = 1;
+    private static final int THREADS = 32;
+
+    public static void main(String[] args) throws Exception {
+        FakeStockDatabase db = FakeStockDatabase.install();
+        try {
+            // With the in-process stripes, and with only the conditional UPDATE
+            for (int stripes : new int[] {64, 1, 0}) {
+                race(db, stripes, 5, 1, false);
+                // 7 units, 2 per checkout: 3 sold and 1 left over
+                race(db, stripes, 7, 2, false);
+            }
+            race(db, 64, 5, 1, true);
+        } finally {
+            db.uninstall();
+        }
+        System.out.println("OK: no oversell");
+    }
+
+    private static void race(FakeStockDatabase db, int stripes, int units, int perCheckout,
+                             boolean writeBehind) throws Exception {
+        System.setProperty("billing.config", writeConfig(stripes, writeBehind).getPath());
+        // Connector/J is not on the classpath, so this reports the driver
+        // missing and skips connecting; saves still borrow from the pool.
+        // Only a manager that saves invoices opens the journal.
+        final DatabaseManager dbManager = new DatabaseManager(writeBehind);
+        db.setStock(PRODUCT_ID, units);
+
+        final AtomicInteger saved = new AtomicInteger();
+        final AtomicInteger refused = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                try {
+                    go.await();
+                    SaveResult result = dbManager.saveInvoice(createInvoice(perCheckout));
+                    if (result.isSuccess()) {
+                        saved.incrementAndGet();
+                    } else if (result.getStatus() == SaveResult.Status.OUT_OF_STOCK) {
+                        refused.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        go.countDown();
+        done.await();
+        dbManager.closeConnection();
+
+        String run = "stripes=" + stripes + ", stock " + units + ", " + perCheckout + " per checkout" +
+                     (writeBehind ? ", write-behind asked for" : "");
+        int sellable = units / perCheckout;
+        Checks.checkEquals(0, failed.get(), run + ": failed saves");
+        Checks.checkEquals(sellable, saved.get(), run + ": checkouts saved");
+        Checks.checkEquals(THREADS - sellable, refused.get(), run + ": checkouts refused");
+        Checks.checkEquals(sellable, db.getCommittedInvoices(), run + ": invoices committed");
+        Checks.checkEquals(units - sellable * perCheckout, db.getStock(PRODUCT_ID), run + ": stock left");
+        Checks.check(db.getLowestStock() >= 0, run + ": stock went negative (" + db.getLowestStock() + ")");
+        System.out.println(run + ": " + saved.get() + " saved, " + refused.get() + " refused");
+    }
+
+    private static Invoice createInvoice(int quantity) {
+        ArrayList<BillItem> items = new ArrayList<>();
+        items.add(new BillItem(PRODUCT_ID, "Last Item", 100, quantity));
+        long subtotal = 100L * quantity;
+        long tax = Money.percentOf(subtotal, 1000);
+        Invoice invoice = new Invoice(0, "Oversell", "", LocalDateTime.now(),
+                                      subtotal, tax, subtotal + tax, items);
+        invoice.setClientRef(UUID.randomUUID().toString());
+        return invoice;
+    }
+
+    private static File writeConfig(int stripes, boolean writeBehind) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("stock.lock.stripes", String.valueOf(stripes));
+        props.setProperty("pool.max.size", String.valueOf(THREADS));
+        props.setProperty("pool.timeout.ms", "60000");
+        props.setProperty("invoice.writeBehind", String.valueOf(writeBehind));
+        if (writeBehind) {
+            File journal = File.createTempFile("oversell-", ".journal");
+            journal.deleteOnExit();
+            new File(journal.getPath() + ".rejected.jsonl").deleteOnExit();
+            props.setProperty("journal.path", journal.getPath());
+            props.setProperty("journal.size.mb", "1");
+        }
+        props.setProperty("offline.enabled", "false");
+        File file = File.createTempFile("oversell-", ".properties");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, "OversellCheck");
+        }
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * ProductCacheCheck.java
+ * A reload that ran while checkouts changed stock is still installed and
+ * keeps the stock they wrote; one that ran while a product was added,
+ * changed or removed is dropped
+ * Place this file in: test/ProductCacheCheck.java
+ */
+
+public class ProductCacheCheck {
+
+    public static void main(String[] args) {
+        ProductCache cache = new ProductCache(60);
+        cache.replaceAll(catalog(10, 10), cache.beginLoad());
+        Checks.check(cache.isFresh(), "cache fresh after the first load");
+
+        // Checkouts during the reload: the cache's stock already has them,
+        // the loaded rows may not
+        long token = cache.beginLoad();
+        cache.adjustStock(1, -3);
+        cache.setStock(2, 4);
+        cache.replaceAll(catalog(20, 10), token);
+        Checks.checkEquals("Loaded 20 #1", cache.get(1).getName(), "reload installed despite stock writes");
+        Checks.checkEquals(7, cache.get(1).getStock(), "stock adjusted during the reload");
+        Checks.checkEquals(4, cache.get(2).getStock(), "stock set during the reload");
+        Checks.checkEquals(20, cache.get(3).getStock(), "stock untouched during the reload comes from the load");
+
+        // Stock written before the reload began is what the load read
+        cache.adjustStock(3, -1);
+        token = cache.beginLoad();
+        cache.replaceAll(catalog(30, 10), token);
+        Checks.checkEquals(30, cache.get(3).getStock(), "stock written before the reload began");
+        Checks.checkEquals(30, cache.get(1).getStock(), "stock written before an earlier reload");
+
+        // Structural writes still win over a reload begun before them
+        token = cache.beginLoad();
+        cache.put(new Product(5, "Renamed", 500, 5, null));
+        cache.replaceAll(catalog(40, 10), token);
+        Checks.checkEquals("Renamed", cache.get(5).getName(), "product put during the reload");
+        Checks.checkEquals(30, cache.get(4).getStock(), "reload begun before a put was dropped");
+
+        token = cache.beginLoad();
+        cache.remove(6);
+        cache.replaceAll(catalog(50, 10), token);
+        Checks.checkEquals(null, cache.get(6), "product removed during the reload");
+
+        token = cache.beginLoad();
+        cache.invalidate();
+        cache.replaceAll(catalog(60, 10), token);
+        Checks.check(!cache.isFresh(), "reload begun before invalidate() was installed");
+        System.out.println("OK: product cache");
+    }
+
+    private static CatalogStore catalog(int stock, int products) {
+        CatalogStore store = new CatalogStore(products);
+        for (int id = 1; id <= products; id++) {
+            store.put(id, "Loaded " + stock + " #" + id, id * 100L, stock, null);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * ProductSearchIndexCheck.java
+ * The trigram index finds exactly the names a case-folded contains() scan
+ * finds, in the order it was given, for short, long, missing and repeated
+ * trigrams and names outside ASCII
+ * Place this file in: test/ProductSearchIndexCheck.java
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public class ProductSearchIndexCheck {
+    private static final String[] WORDS = {
+        "Tea", "Green", "tea", "Crème", "brûlée", "Ça", "ÇA", "aaaa", "ababab", "Cable", "USB", "x\u0000y", "Zoë"
+    };
+
+    public static void main(String[] args) {
+        Checks.checkEquals("[]", Arrays.toString(new ProductSearchIndex(new CatalogStore(0), new int[0])
+                               .search("tea")), "search of an empty catalog");
+
+        Random random = new Random(7);
+        CatalogStore store = new CatalogStore(0);
+        int products = 3000;
+        for (int id = 1; id <= products; id++) {
+            StringBuilder name = new StringBuilder();
+            for (int w = random.nextInt(4); w >= 0; w--) {
+                name.append(WORDS[random.nextInt(WORDS.length)]).append(w > 0 ? " " : "");
+            }
+            store.put(id, name.toString(), 100, 1, null);
+        }
+        // Results come back in the given order, not the store's
+        int[] order = new int[products];
+        for (int i = 0; i < products; i++) {
+            order[i] = products - i;
+        }
+        ProductSearchIndex index = new ProductSearchIndex(store, order);
+        Checks.checkEquals(products, index.size(), "products indexed");
+
+        String[] queries = {
+            "", "  ", "t", "TE", "tea", "TEA ", "green tea", "aaa", "aaaa", "aaaaa", "bab", "ababa",
+            "crème", "CRÈME BRÛLÉE", "ça", "zoë", "x\u0000y", "\u0000", "usb cable", "qqq", "teaa", "a t"
+        };
+        for (String query : queries) {
+            Checks.checkEquals(Arrays.toString(scan(store, order, query)), Arrays.toString(index.search(query)),
+                               "matches of \"" + query + "\"");
+        }
+        System.out.println("OK: product search index");
+    }
+
+    private static int[] scan(CatalogStore store, int[] order, String query) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        ArrayList<Integer> matches = new ArrayList<>();
+        for (int id : order) {
+            if (store.getName(store.rowOf(id)).toLowerCase(Locale.ROOT).contains(q)) {
+                matches.add(id);
+            }
+        }
+        int[] result = new int[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * ReceiptRendererCheck.java
+ * Receipts keep the columns the String.format layout gave them: names cut
+ * or padded to 25, right-aligned quantities and amounts that push the row
+ * out when too wide, totals aligned under the total column; ESC/POS output
+ * is the same text between printer commands, ASCII only
+ * Place this file in: test/ReceiptRendererCheck.java
+ *
+ * Expected rows are built with the format strings the renderer replaced.
+ */
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class ReceiptRendererCheck {
+    private static final String DOUBLE_RULE = "================================================";
+    private static final String RULE = "------------------------------------------------";
+
+    public static void main(String[] args) {
+        ArrayList<BillItem> items = new ArrayList<>();
+        items.add(new BillItem(1, "Tea", 5, 1));
+        items.add(new BillItem(2, "Exactly twenty-five chars", 1000, 12));
+        items.add(new BillItem(3, "A product name far too long for its column", 123456, 999));
+        // Wider than the price and total columns
+        items.add(new BillItem(4, "Crème brûlée", 1234567890, 100000));
+        Invoice invoice = new Invoice(1042, "Zoë", "555-0100",
+            LocalDateTime.of(2024, 3, 5, 7, 8, 9), 12345678900L, 1234567890L, 13580246790L, items);
+        invoice.setClientRef("ref-1");
+
+        ReceiptRenderer renderer = new ReceiptRenderer(1000);
+        checkLines(expected(invoice, "Tax (10%):"), renderer.renderText(invoice), "receipt text");
+
+        // A write-behind invoice before it has an ID, with an odd tax rate
+        ArrayList<BillItem> one = new ArrayList<>();
+        one.add(new BillItem(9, "Water", 99, 2));
+        Invoice pending = new Invoice(0, "Walk-in", "", LocalDateTime.of(2024, 12, 31, 23, 59, 59),
+            198, 16, 214, one);
+        ReceiptRenderer oddRate = new ReceiptRenderer(825);
+        checkLines(expected(pending, "Tax (8.25%):"), oddRate.renderText(pending), "pending receipt text");
+
+        // Reused buffers: a shorter receipt after a longer one is not left with its tail
+        checkLines(expected(pending, "Tax (10%):"), renderer.renderText(pending),
+                   "second receipt from the same renderer");
+
+        byte[] escPos = renderer.render(invoice, ReceiptRenderer.Format.ESC_POS);
+        Checks.checkEquals(Arrays.toString(new byte[] {0x1B, '@'}),
+                           Arrays.toString(Arrays.copyOf(escPos, 2)), "ESC/POS receipt start");
+        Checks.checkEquals(Arrays.toString(new byte[] {0x1B, 'd', 4, 0x1D, 'V', 1}),
+                           Arrays.toString(Arrays.copyOfRange(escPos, escPos.length - 6, escPos.length)),
+                           "ESC/POS receipt end");
+        String asciiText = expected(invoice, "Tax (10%):").replaceAll("[^\\x20-\\x7E\\n]", "?");
+        checkLines(asciiText, withoutCommands(escPos), "ESC/POS receipt text");
+        checkLines(expected(invoice, "Tax (10%):"),
+                   new String(renderer.render(invoice, ReceiptRenderer.Format.TEXT), StandardCharsets.UTF_8),
+                   "TEXT receipt bytes");
+        System.out.println("OK: receipt renderer");
+    }
+
+    // Name the first line that differs rather than printing both receipts
+    private static void checkLines(String expected, String actual, String what) {
+        String[] wanted = expected.split("\n", -1);
+        String[] got = actual.split("\n", -1);
+        for (int i = 0; i < Math.min(wanted.length, got.length); i++) {
+            Checks.checkEquals(wanted[i], got[i], what + ", line " + (i + 1));
+        }
+        Checks.checkEquals(wanted.length, got.length, what + ", line count");
+    }
+
+    private static String expected(Invoice invoice, String taxLabel) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(DOUBLE_RULE).append('\n');
+        sb.append("                  INVOICE                       \n");
+        sb.append(DOUBLE_RULE).append("\n\n");
+        sb.append("Invoice #: ").append(invoice.getId() > 0 ? String.valueOf(invoice.getId()) : "Pending").append('\n');
+        if (invoice.getClientRef() != null) {
+            sb.append("Ref: ").append(invoice.getClientRef()).append('\n');
+        }
+        sb.append("Date: ").append(invoice.getDateTime()
+            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append('\n');
+        sb.append("Customer: ").append(invoice.getCustomerName()).append('\n');
+        sb.append("Phone: ").append(invoice.getCustomerPhone()).append("\n\n");
+        sb.append(RULE).append('\n');
+        sb.append(String.format(Locale.ROOT, "%-25s %5s %8s %10s\n", "ITEM", "QTY", "PRICE", "TOTAL"));
+        sb.append(RULE).append('\n');
+        for (BillItem item : invoice.getItems()) {
+            String name = item.getProductName();
+            sb.append(String.format(Locale.ROOT, "%-25s %5d RS%7.2f RS%9.2f\n",
+                name.substring(0, Math.min(25, name.length())), item.getQuantity(),
+                major(item.getPriceMinor()), major(item.getTotalMinor())));
+        }
+        sb.append(RULE).append('\n');
+        sb.append(String.format(Locale.ROOT, "%42s RS%9.2f\n", "Subtotal:", major(invoice.getSubtotalMinor())));
+        sb.append(String.format(Locale.ROOT, "%42s RS%9.2f\n", taxLabel, major(invoice.getTaxMinor())));
+        sb.append(DOUBLE_RULE).append('\n');
+        sb.append(String.format(Locale.ROOT, "%42s RS%9.2f\n", "GRAND TOTAL:", major(invoice.getGrandTotalMinor())));
+        sb.append(DOUBLE_RULE).append('\n');
+        sb.append("\n          Thank you for your business!\n");
+        return sb.toString();
+    }
+
+    private static BigDecimal major(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+
+    // Every command the renderer sends is ESC @, or ESC/GS with one argument byte
+    private static String withoutCommands(byte[] escPos) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < escPos.length; i++) {
+            if (escPos[i] == 0x1B && escPos[i + 1] == '@') {
+                i++;
+            } else if (escPos[i] == 0x1B || escPos[i] == 0x1D) {
+                i += 2;
+            } else {
+                text.append((char) escPos[i]);
+            }
+        }
+        return text.toString();
+    }
+}
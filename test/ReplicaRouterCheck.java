@@ -0,0 +1,352 @@
+/**
+ * ReplicaRouterCheck.java
+ * Reads go only to replicas that are up and at most db.replica.max.lag.seconds
+ * behind, and only once GTID_SUBSET() says they have the caller's last write;
+ * with none left the router returns null and the caller uses the primary
+ * Place this file in: test/ReplicaRouterCheck.java
+ *
+ * Each replica is a stub JDBC connection whose SHOW REPLICA STATUS answer,
+ * GTID_SUBSET() answer and reachability the check sets directly. The router
+ * checks lag every 100ms in the background, so a changed answer is waited for.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+public class ReplicaRouterCheck {
+    private static final long MAX_LAG_SECONDS = 5;
+    private static final String GTIDS = "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-42";
+
+    public static void main(String[] args) throws Exception {
+        StubDriver driver = new StubDriver();
+        DriverManager.registerDriver(driver);
+
+        Stub fresh = driver.add("fresh", true, 0L);
+        // At the limit still counts as keeping up
+        Stub old = driver.add("old", false, MAX_LAG_SECONDS);
+        Stub behind = driver.add("behind", true, 60L);
+        // SQL thread stopped: the lag column is NULL
+        Stub stopped = driver.add("stopped", true, null);
+        // A server that is not a replica returns no status row at all
+        Stub notReplica = driver.add("primary", true, 0L);
+        notReplica.statusRow = false;
+        Stub unreachable = driver.add("unreachable", true, 0L);
+        unreachable.reachable = false;
+
+        List<String> urls = new ArrayList<>();
+        for (String name : Arrays.asList("fresh", "old", "behind", "stopped", "primary", "unreachable")) {
+            urls.add("jdbc:stub:" + name + "?user=reports");
+        }
+        ReplicaRouter router = new ReplicaRouter(urls, "u", "p", 2, 1000, 1, MAX_LAG_SECONDS, 100);
+        try {
+            router.start();
+            checkStatus(router, "fresh", "OK, 0s behind");
+            checkStatus(router, "old", "OK, 5s behind");
+            checkStatus(router, "behind", "LAGGING 60s");
+            checkStatus(router, "stopped", "DOWN (replication is not running)");
+            checkStatus(router, "primary", "DOWN (replication is not running)");
+            // Only the first line of a driver message
+            checkStatus(router, "unreachable", "DOWN (Communications link failure)");
+
+            // No write to wait for: the healthy replicas in turn
+            Checks.checkEquals(new HashSet<>(Arrays.asList("fresh", "old")), borrowed(router, null, 6),
+                               "replicas used with nothing to wait for");
+            String first = borrowOne(router, null);
+            Checks.check(!first.equals(borrowOne(router, null)), "two reads in a row went to " + first);
+
+            // GTID gate: only a replica that has the write, with the write's set as asked
+            fresh.applied = false;
+            Checks.checkEquals(new HashSet<>(Arrays.asList("old")), borrowed(router, GTIDS, 6),
+                               "replicas used for a write only old has applied");
+            Checks.checkEquals(GTIDS, old.askedGtids, "GTID set passed to GTID_SUBSET()");
+            old.applied = false;
+            Checks.checkEquals(null, router.getConnection(GTIDS), "connection when no replica has the write");
+            // Not having the write yet is not a failure, and its connections went back
+            checkStatus(router, "fresh", "OK, 0s behind  [active 0/2]");
+            checkStatus(router, "old", "OK, 5s behind  [active 0/2]");
+            fresh.applied = true;
+            old.applied = true;
+
+            // A replica that fails while borrowed is skipped from then on
+            fresh.reachable = false;
+            Checks.checkEquals(new HashSet<>(Arrays.asList("old")), borrowed(router, GTIDS, 6),
+                               "replicas used after fresh failed");
+            checkStatus(router, "fresh", "DOWN (Communications link failure)");
+
+            // Lag checks bring replicas back as they catch up
+            fresh.reachable = true;
+            behind.lagSeconds = MAX_LAG_SECONDS - 1;
+            stopped.lagSeconds = 0L;
+            awaitStatus(router, "fresh", "OK, 0s behind");
+            awaitStatus(router, "behind", "OK, 4s behind");
+            awaitStatus(router, "stopped", "OK, 0s behind");
+            Checks.checkEquals(new HashSet<>(Arrays.asList("fresh", "old", "behind", "stopped")),
+                               borrowed(router, null, 12), "replicas used after catching up");
+
+            // ...and drop them as they fall behind or stop
+            for (Stub stub : Arrays.asList(fresh, old, behind)) {
+                stub.lagSeconds = MAX_LAG_SECONDS + 1;
+            }
+            stopped.lagSeconds = null;
+            awaitStatus(router, "fresh", "LAGGING 6s");
+            awaitStatus(router, "old", "LAGGING 6s");
+            awaitStatus(router, "behind", "LAGGING 6s");
+            awaitStatus(router, "stopped", "DOWN (replication is not running)");
+            Checks.checkEquals(null, router.getConnection(null), "connection when every replica is behind");
+        } finally {
+            router.close();
+            DriverManager.deregisterDriver(driver);
+        }
+        System.out.println("OK: replica router");
+    }
+
+    private static Set<String> borrowed(ReplicaRouter router, String gtids, int reads) throws SQLException {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < reads; i++) {
+            names.add(borrowOne(router, gtids));
+        }
+        return names;
+    }
+
+    private static String borrowOne(ReplicaRouter router, String gtids) throws SQLException {
+        try (Connection conn = router.getConnection(gtids)) {
+            Checks.check(conn != null, "no replica for a read that one could serve");
+            return conn.getCatalog();
+        }
+    }
+
+    private static void checkStatus(ReplicaRouter router, String name, String state) {
+        String line = statusOf(router, name);
+        Checks.check(line.startsWith("jdbc:stub:" + name + "  " + state), "status of " + name + ": " + line);
+    }
+
+    private static void awaitStatus(ReplicaRouter router, String name, String state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!statusOf(router, name).startsWith("jdbc:stub:" + name + "  " + state)
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        checkStatus(router, name, state);
+    }
+
+    private static String statusOf(ReplicaRouter router, String name) {
+        for (String line : router.getStatus()) {
+            if (line.startsWith("jdbc:stub:" + name + " ")) {
+                return line;
+            }
+        }
+        throw new AssertionError("no status line for " + name + " in " + router.getStatus());
+    }
+
+    /**
+     * What one stub replica answers
+     */
+    private static final class Stub {
+        final String name;
+        // MySQL 8.0.22+ syntax, or only SHOW SLAVE STATUS
+        final boolean replicaSyntax;
+        // Seconds_Behind_Source, or null for NULL
+        volatile Long lagSeconds;
+        volatile boolean statusRow = true;
+        volatile boolean reachable = true;
+        // What GTID_SUBSET() returns
+        volatile boolean applied = true;
+        volatile String askedGtids;
+
+        Stub(String name, boolean replicaSyntax, Long lagSeconds) {
+            this.name = name;
+            this.replicaSyntax = replicaSyntax;
+            this.lagSeconds = lagSeconds;
+        }
+
+        void checkReachable() throws SQLException {
+            if (!reachable) {
+                throw new SQLException("Communications link failure\n\nThe last packet sent successfully "
+                                       + "to the server was 0 milliseconds ago.");
+            }
+        }
+    }
+
+    /**
+     * Driver for jdbc:stub:NAME URLs
+     */
+    private static final class StubDriver implements Driver {
+        private final Map<String, Stub> stubs = new ConcurrentHashMap<>();
+
+        Stub add(String name, boolean replicaSyntax, Long lagSeconds) {
+            Stub stub = new Stub(name, replicaSyntax, lagSeconds);
+            stubs.put(name, stub);
+            return stub;
+        }
+
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            int query = url.indexOf('?');
+            final Stub stub = stubs.get(url.substring("jdbc:stub:".length(), query < 0 ? url.length() : query));
+            stub.checkReachable();
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean closed = false;
+
+                public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return statement(stub, null);
+                        case "prepareStatement":
+                            return statement(stub, (String) args[0]);
+                        case "getCatalog":
+                            return stub.name;
+                        case "isValid":
+                            return stub.reachable;
+                        case "getAutoCommit":
+                            return true;
+                        case "setAutoCommit":
+                            return null;
+                        case "isClosed":
+                            return closed;
+                        case "close":
+                            closed = true;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new SQLFeatureNotSupportedException("Connection." + method.getName());
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(ReplicaRouterCheck.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+        }
+
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith("jdbc:stub:");
+        }
+
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        public int getMajorVersion() {
+            return 8;
+        }
+
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    // A Statement, or with sql set a PreparedStatement for that query
+    private static Object statement(final Stub stub, final String sql) {
+        InvocationHandler handler = new InvocationHandler() {
+            private String gtids;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "executeQuery":
+                        stub.checkReachable();
+                        return sql == null ? status(stub, (String) args[0]) : gtidSubset(stub, sql, gtids);
+                    case "setString":
+                        Checks.checkEquals(1, args[0], "GTID_SUBSET() parameter index");
+                        gtids = (String) args[1];
+                        return null;
+                    case "close":
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new SQLFeatureNotSupportedException("Statement." + method.getName());
+                }
+            }
+        };
+        return Proxy.newProxyInstance(ReplicaRouterCheck.class.getClassLoader(),
+            new Class<?>[] {sql == null ? Statement.class : PreparedStatement.class}, handler);
+    }
+
+    private static ResultSet status(Stub stub, String sql) throws SQLException {
+        String column;
+        if (sql.equals("SHOW REPLICA STATUS") && stub.replicaSyntax) {
+            column = "Seconds_Behind_Source";
+        } else if (sql.equals("SHOW SLAVE STATUS")) {
+            column = "Seconds_Behind_Master";
+        } else {
+            throw new SQLException("You have an error in your SQL syntax near '" + sql + "'");
+        }
+        return resultSet(stub.statusRow, column, stub.lagSeconds);
+    }
+
+    private static ResultSet gtidSubset(Stub stub, String sql, String gtids) throws SQLException {
+        Checks.checkEquals("SELECT GTID_SUBSET(?, @@GLOBAL.gtid_executed)", sql, "GTID gate query");
+        stub.askedGtids = gtids;
+        return resultSet(true, null, stub.applied ? 1L : 0L);
+    }
+
+    // Zero or one row with a single value, read by column name or by index 1
+    private static ResultSet resultSet(final boolean hasRow, final String column, final Long value) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean before = true;
+            private boolean wasNull = false;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "next":
+                        boolean onRow = before && hasRow;
+                        before = false;
+                        return onRow;
+                    case "getLong":
+                    case "getInt":
+                        Object key = args[0];
+                        if (column == null ? !key.equals(1) : !key.equals(column)) {
+                            throw new SQLException("Column '" + key + "' not found");
+                        }
+                        wasNull = value == null;
+                        long number = value == null ? 0 : value;
+                        return method.getName().equals("getInt") ? (Object) (int) number : (Object) number;
+                    case "wasNull":
+                        return wasNull;
+                    case "close":
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new SQLFeatureNotSupportedException("ResultSet." + method.getName());
+                }
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(ReplicaRouterCheck.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, handler);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * StripedLocksCheck.java
+ * Stripe counts round up to a power of two, 1 stays 1, and lock() hands
+ * back each stripe once, in ascending order
+ * Place this file in: test/StripedLocksCheck.java
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class StripedLocksCheck {
+
+    public static void main(String[] args) {
+        int[][] expected = {{1, 1}, {2, 2}, {3, 4}, {4, 4}, {5, 8}, {64, 64}, {65, 128}, {0, 1}, {-3, 1}};
+        for (int[] pair : expected) {
+            Checks.checkEquals(pair[1], stripesUsed(new StripedLocks(pair[0])),
+                               "stripes for new StripedLocks(" + pair[0] + ")");
+        }
+
+        StripedLocks locks = new StripedLocks(8);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            ids.add(id);
+            ids.add(id);
+        }
+        Collections.shuffle(ids);
+        int[] held = locks.lock(ids);
+        try {
+            Checks.checkEquals(8, held.length, "stripes held for 100 IDs over 8 stripes");
+            for (int i = 1; i < held.length; i++) {
+                Checks.check(held[i - 1] < held[i], "stripes not ascending: " + Arrays.toString(held));
+            }
+        } finally {
+            locks.unlock(held);
+        }
+        System.out.println("OK: striped locks");
+    }
+
+    // Distinct stripes that 10,000 IDs land on - every stripe, for these sizes
+    private static int stripesUsed(StripedLocks locks) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 10000; id++) {
+            ids.add(id);
+        }
+        int[] held = locks.lock(ids);
+        locks.unlock(held);
+        return held.length;
+    }
+}